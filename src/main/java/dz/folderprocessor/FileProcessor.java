@@ -1,20 +1,21 @@
 package dz.folderprocessor;
 
-import dz.folderprocessor.events.TermReadEvent;
-import dz.folderprocessor.events.BigramReadEvent;
+import dz.folderprocessor.analysis.AnalysisChain;
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.indexing.Deduplicator;
+import dz.folderprocessor.indexing.DocumentTokens;
+import dz.folderprocessor.indexing.IndexPublisher;
+import dz.folderprocessor.indexing.IngestMetrics;
+import dz.folderprocessor.indexing.ParallelAnalyzer;
 import dz.folderprocessor.reader.FileReader;
-import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.util.Allocations;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -23,57 +24,95 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FileProcessor {
 
-    private final DocumentRegistry documentRegistry;
-    private final ApplicationEventPublisher eventPublisher;
+    private final AnalysisChain analysisChain;
+    private final IndexPublisher indexPublisher;
     private final List<FileReader> readers;
+    private final IngestMetrics ingestMetrics;
+    private final Deduplicator deduplicator;
+    private final ParallelAnalyzer parallelAnalyzer;
+    private final IndexingProps indexingProps;
+
+    /**
+     * Entry point for the folder watcher: indexes created or modified files and drops deleted ones.
+     */
+    public void handleFileEvent(Path filePath) throws IOException {
+        if (Files.exists(filePath)) {
+            processFile(filePath);
+        } else if (indexPublisher.delete(filePath.toString())) {
+            log.info("Removed deleted file from index: {}", filePath.getFileName());
+        }
+    }
 
     public void processFile(Path filePath) throws IOException {
         log.info("Start processing file: {}", filePath.getFileName());
 
-        long start = System.currentTimeMillis();
-        String text = readFile(filePath);
-        processFile(filePath, text);
+        long start = System.nanoTime();
+        long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+        Deduplicator.Fingerprint fingerprint = deduplicator.fingerprint(filePath);
+        ingestMetrics.recordFingerprint(System.nanoTime() - start);
+
+        Deduplicator.Original original = deduplicator.findOriginal(fingerprint, filePath);
+        if (original != null && indexPublisher.alias(filePath.toString(), original.docId(), lastModified)) {
+            ingestMetrics.recordDuplicate(fingerprint.size(), original.tokenCount(), System.nanoTime() - start);
+            log.info("File {} has the same content as {}, registered without indexing",
+                    filePath.getFileName(), original.docId());
+            return;
+        }
+
+        DocumentTokens tokens = analyze(filePath, fingerprint.size());
+        int docId = indexPublisher.publish(tokens.toSegment(filePath.toString(), lastModified));
+        deduplicator.register(fingerprint, docId, tokens.size());
+        long end = System.nanoTime();
 
-        log.info("Finished processing file: {}, duration: {} ms",
-                filePath.getFileName(), System.currentTimeMillis() - start);
+        long bytes = fingerprint.size();
+        ingestMetrics.recordDocument(bytes, tokens.size(), start, end);
+
+        log.info("Finished processing file: {}, duration: {} ms, {} MB/s",
+                filePath.getFileName(), (end - start) / 1_000_000,
+                String.format("%.2f", IngestMetrics.megabytesPerSecond(bytes, end - start)));
     }
 
-    private void processFile(Path path, String text) throws IOException {
-        var docId = documentRegistry.registerDocument(path.toString());
-
-        try (
-                Analyzer analyzer = new StandardAnalyzer();
-                TokenStream ts = analyzer.tokenStream("content", text)
-        ) {
-            CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
-            OffsetAttribute offset = ts.addAttribute(OffsetAttribute.class);
-            ts.reset();
-            
-            String previousTerm = null;
-            int previousWordPosition = 0;
-            int wordPosition = 0;
-            
-            while (ts.incrementToken()) {
-                String currentTerm = term.toString();
-                
-                eventPublisher.publishEvent(new TermReadEvent(this, currentTerm, path.toString(), docId, wordPosition));
-                
-                if (previousTerm != null) {
-                    String bigram = previousTerm + " " + currentTerm;
-                    eventPublisher.publishEvent(new BigramReadEvent(this, bigram, path.toString(), docId, previousWordPosition));
-                }
-                
-                previousTerm = currentTerm;
-                previousWordPosition = wordPosition;
-                wordPosition++;
+    /**
+     * Analyzes large files in parts on all cores when the reader can split them, and everything else
+     * on the calling thread.
+     */
+    private DocumentTokens analyze(Path filePath, long bytes) throws IOException {
+        FileReader reader = readerFor(filePath);
+        long minBytes = indexingProps.parallelAnalysisMinBytes();
+        if (minBytes > 0 && bytes >= minBytes) {
+            List<Reader> parts = reader.openParts(filePath, indexingProps.parallelAnalysisPartBytes());
+            if (parts.size() > 1) {
+                return parallelAnalyzer.analyze(parts);
+            }
+            try (Reader content = parts.get(0)) {
+                return analyze(content);
             }
         }
+
+        try (Reader content = reader.openReader(filePath)) {
+            return analyze(content);
+        }
+    }
+
+    private DocumentTokens analyze(Reader content) throws IOException {
+        var tokens = new DocumentTokens();
+
+        long allocatedBefore = Allocations.currentThread();
+        analysisChain.analyze(content, tokens::add);
+        ingestMetrics.recordAnalysisAllocation(Allocations.currentThread() - allocatedBefore);
+        return tokens;
+    }
+
+    /**
+     * @return true if one of the readers can handle the file
+     */
+    public boolean isSupported(Path filePath) {
+        return readers.stream().anyMatch(reader -> filePath.toString().endsWith(reader.getFileExtension()));
     }
 
-    private String readFile(Path filePath) throws IOException {
+    private FileReader readerFor(Path filePath) throws IOException {
         return readers.stream().filter(reader -> filePath.toString().endsWith(reader.getFileExtension()))
                 .findFirst()
-                .orElseThrow(() -> new IOException("No suitable reader found for file: " + filePath))
-                .readFile(filePath);
+                .orElseThrow(() -> new IOException("No suitable reader found for file: " + filePath));
     }
 }
@@ -1,12 +1,14 @@
 package dz.folderprocessor;
 
+import dz.folderprocessor.config.IndexingProps;
 import dz.folderprocessor.config.PathProps;
+import dz.folderprocessor.config.QueryProps;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties(PathProps.class)
+@EnableConfigurationProperties({PathProps.class, IndexingProps.class, QueryProps.class})
 public class FolderProcessorApplication {
 
     public static void main(String[] args) {
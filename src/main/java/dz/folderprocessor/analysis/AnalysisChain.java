@@ -0,0 +1,96 @@
+package dz.folderprocessor.analysis;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The single analysis chain shared by indexing and all query processors.
+ * <p>
+ * The analyzer is created once; Lucene keeps one set of token stream components per thread and reuses
+ * it for every call, so analyzing a document or a query operand does not rebuild the tokenizer and
+ * filters. Terms are handed out as the analyzer's own char buffer, which is only valid during the callback.
+ */
+@Component
+public class AnalysisChain implements DisposableBean {
+
+    public static final String FIELD = "content";
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+
+    @FunctionalInterface
+    public interface TokenConsumer {
+        /**
+         * @param buffer   term characters, only the first {@code length} are valid and only during the call
+         * @param length   term length
+         * @param position word position of the token
+         */
+        void accept(char[] buffer, int length, int position);
+    }
+
+    /**
+     * Analyzes a document.
+     *
+     * @return number of tokens produced
+     */
+    public int analyze(Reader content, TokenConsumer consumer) throws IOException {
+        try (TokenStream ts = analyzer.tokenStream(FIELD, content)) {
+            return consume(ts, consumer);
+        }
+    }
+
+    /**
+     * Analyzes a short query text without collecting the terms.
+     *
+     * @return number of tokens produced
+     */
+    public int analyze(String text, TokenConsumer consumer) {
+        try (TokenStream ts = analyzer.tokenStream(FIELD, text)) {
+            return consume(ts, consumer);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to analyze query term: " + text, e);
+        }
+    }
+
+    /**
+     * @return the analyzed terms of a query text, in order
+     */
+    public List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        analyze(text, (buffer, length, position) -> result.add(new String(buffer, 0, length)));
+        return result;
+    }
+
+    /**
+     * Applies only the normalization part of the chain (case folding), keeping the text as one unit.
+     * Used for wildcard patterns, which must not be split into tokens.
+     */
+    public String normalize(String text) {
+        return analyzer.normalize(FIELD, text).utf8ToString();
+    }
+
+    private static int consume(TokenStream ts, TokenConsumer consumer) throws IOException {
+        CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+        ts.reset();
+
+        int position = 0;
+        while (ts.incrementToken()) {
+            consumer.accept(term.buffer(), term.length(), position++);
+        }
+        ts.end();
+        return position;
+    }
+
+    @Override
+    public void destroy() {
+        analyzer.close();
+    }
+}
@@ -1,6 +1,8 @@
 package dz.folderprocessor.config;
 
 import dz.folderprocessor.FileProcessor;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.indexing.BootstrapLoader;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,9 +11,12 @@ import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.Pollers;
 import org.springframework.integration.file.FileReadingMessageSource;
 import org.springframework.integration.file.dsl.Files;
+import org.springframework.integration.file.filters.FileSystemPersistentAcceptOnceFileListFilter;
+import org.springframework.integration.metadata.SimpleMetadataStore;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.File;
+import java.util.concurrent.ThreadPoolExecutor;
 
 
 @Configuration
@@ -28,6 +33,8 @@ public class Config {
         exec.setMaxPoolSize(4);
         exec.setQueueCapacity(100);
         exec.setThreadNamePrefix("file-worker-");
+        // a full queue slows the poller down instead of dropping files
+        exec.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
         exec.initialize();
         return exec;
     }
@@ -44,20 +51,29 @@ public class Config {
     }
 
     @Bean
-    public IntegrationFlow folderInboundFlow(FileProcessor processor, ThreadPoolTaskExecutor fileProcessingExecutor) {
+    public IntegrationFlow folderInboundFlow(FileProcessor processor, ThreadPoolTaskExecutor fileProcessingExecutor,
+                                             DocumentRegistry documentRegistry) {
         return IntegrationFlow
                 .from(Files.inboundAdapter(props.scan().toFile())
                         .autoCreateDirectory(true)
-                        .preventDuplicates(true)
+                        // accepts a file again once its modification time changes
+                        .filter(new FileSystemPersistentAcceptOnceFileListFilter(new SimpleMetadataStore(), "scan:"))
                         .useWatchService(true)
                         .watchEvents(
                                 FileReadingMessageSource.WatchEventType.CREATE,
-                                FileReadingMessageSource.WatchEventType.MODIFY),
+                                FileReadingMessageSource.WatchEventType.MODIFY,
+                                FileReadingMessageSource.WatchEventType.DELETE),
+                        // started by BootstrapLoader once the initial load is done
                         e -> e.poller(Pollers.fixedDelay(0).receiveTimeout(0).maxMessagesPerPoll(10))
+                                .id(BootstrapLoader.FOLDER_INBOUND_ADAPTER)
+                                .autoStartup(false)
                 )
+                .filter(File.class, file -> file.exists()
+                        ? !documentRegistry.isUpToDate(file.toPath().toString(), file.lastModified())
+                        : documentRegistry.getDocumentId(file.toPath().toString()) >= 0)
                 .channel(c -> c.executor(fileProcessingExecutor))
                 .transform(File::toPath)
-                .handle(processor, "processFile")
+                .handle(processor, "handleFileEvent")
                 .get();
     }
 }
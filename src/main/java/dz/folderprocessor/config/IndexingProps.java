@@ -0,0 +1,34 @@
+package dz.folderprocessor.config;
+
+import dz.folderprocessor.indexing.IndexingMode;
+import dz.folderprocessor.indexing.PostingsStorage;
+import dz.folderprocessor.persistence.WalSync;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "indexing")
+public record IndexingProps(
+        @DefaultValue("batch") IndexingMode mode,
+        // index everything already in path.scan in parallel before the folder watcher starts
+        @DefaultValue("true") boolean bootstrapEnabled,
+        // bootstrap worker threads, 0 means one per available core
+        @DefaultValue("0") int bootstrapThreads,
+        // keys purged per compaction step and the pause between steps
+        @DefaultValue("1000") int compactionSliceSize,
+        @DefaultValue("10") long compactionPauseMs,
+        // files at least this large are split into parts analyzed in parallel; 0 disables splitting
+        @DefaultValue("33554432") long parallelAnalysisMinBytes,
+        @DefaultValue("8388608") long parallelAnalysisPartBytes,
+        // threads analyzing parts of one file, 0 means one per available core
+        @DefaultValue("0") int parallelAnalysisThreads,
+        // threads parsing .fb2 files while their text is analyzed, 0 means one per available core
+        @DefaultValue("0") int fb2ParserThreads,
+        // where postings and trigram term sets are stored; off-heap counts against -XX:MaxDirectMemorySize
+        @DefaultValue("heap") PostingsStorage postingsStorage,
+        // size of the direct buffers shared by small off-heap blocks
+        @DefaultValue("1048576") int offHeapSlabBytes,
+        // durability of operations published after the last segment commit; needs path.index
+        @DefaultValue("group") WalSync walSync,
+        // prefix and suffix terms buffered outside their FSTs before a rebuild folds them in
+        @DefaultValue("50000") int fstRebuildMinTerms
+) {}
@@ -5,5 +5,10 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import java.nio.file.Path;
 
 @ConfigurationProperties(prefix = "path")
-public record PathProps(Path scan, Path vocabulary) {}
+public record PathProps(
+        Path scan,
+        Path vocabulary,
+        // directory of the persisted index segment; unset keeps the index in memory only
+        Path index
+) {}
 
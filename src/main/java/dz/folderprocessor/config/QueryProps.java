@@ -0,0 +1,19 @@
+package dz.folderprocessor.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "query")
+public record QueryProps(
+        // BM25 term frequency saturation and document length normalization
+        @DefaultValue("1.2") double bm25K1,
+        @DefaultValue("0.75") double bm25B,
+        // documents returned by a ranked query that sets no limit, and the most it may ask for
+        @DefaultValue("10") int rankedDefaultLimit,
+        @DefaultValue("1000") int rankedMaxLimit,
+        // documents in a page of the other queries when the request sets no limit, and the most it may ask for
+        @DefaultValue("100") int pageDefaultLimit,
+        @DefaultValue("10000") int pageMaxLimit,
+        // heap the cached results of boolean, phrase and wildcard queries may take; 0 turns the cache off
+        @DefaultValue("67108864") long cacheMaxBytes
+) {}
@@ -0,0 +1,22 @@
+package dz.folderprocessor.config;
+
+import dz.folderprocessor.indexing.PostingsStorage;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.HeapBlockAllocator;
+import dz.folderprocessor.util.NativeArena;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StorageConfig {
+
+    /**
+     * Storage of postings and trigram term sets; the off-heap arena is released when the context closes.
+     */
+    @Bean
+    public BlockAllocator postingsAllocator(IndexingProps indexingProps) {
+        return indexingProps.postingsStorage() == PostingsStorage.OFF_HEAP
+                ? new NativeArena(indexingProps.offHeapSlabBytes())
+                : new HeapBlockAllocator();
+    }
+}
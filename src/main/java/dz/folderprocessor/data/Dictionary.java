@@ -1,31 +1,283 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.indexing.VocabularyIndex;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The term dictionary: assigns every distinct term a dense {@code int} id and keeps its collection
+ * frequency. All other indexes key on these ids and resolve them back to strings only when answering
+ * a query, so each term string is stored exactly once.
+ * <p>
+ * Terms live in an array indexed by id; lookups go through an open-addressing table of ids probed with
+ * the term's cached hash code. Ids are never reused, so an id held by a query or a not yet compacted
+ * index always means the same term. Changes happen under the publish lock; lookups are lock-free and at
+ * worst miss a term that is being published concurrently.
+ * <p>
+ * Runs first among the indexing sinks: it assigns the segment's term ids and marks its new terms, which
+ * the vocabulary indexes rely on to skip terms they already hold.
+ * <p>
+ * Every term whose frequency changes is marked in a set of changed ids, which the vocabulary saver drains
+ * to persist only what changed since its previous run.
+ */
 @Component
-public class Dictionary {
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class Dictionary implements IndexingSink, VocabularyIndex, PersistentIndex {
 
-    private final Map<String, AtomicLong> termFrequencies;
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
 
-    public Dictionary() {
-        termFrequencies = new ConcurrentHashMap<>();
-    }
+    private volatile String[] terms = new String[1024];
+    private volatile int[] slots = new int[2048];
+    private long[] frequencies = new long[1024];
+    private BitSet changedTerms = new BitSet();
+
+    private int nextId;
+    private int size;
+    private int usedSlots;
 
     @EventListener
-    public void handleTermRead(TermReadEvent event) {
-        String term = event.getTerm();
-        termFrequencies.computeIfAbsent(term, k -> new AtomicLong(0)).incrementAndGet();
+    public synchronized void handleTermRead(TermReadEvent event) {
+        int termId = addTerm(event.getTerm());
+        frequencies[termId]++;
+        changedTerms.set(termId);
+    }
+
+    @Override
+    public synchronized void index(int docId, DocumentSegment segment) {
+        for (int ord = 0; ord < segment.termCount(); ord++) {
+            String term = segment.term(ord);
+            int termId = termId(term);
+            if (termId < 0) {
+                termId = addTerm(term);
+            }
+            // a term may have been registered by an event listener before any document counted it
+            if (frequencies[termId] == 0) {
+                segment.markNewTerm(ord);
+            }
+            segment.setTermId(ord, termId);
+            frequencies[termId] += segment.frequency(ord);
+            changedTerms.set(termId);
+        }
+    }
+
+    /**
+     * @return id of the term, or -1 if it is not in the dictionary
+     */
+    public int termId(String term) {
+        int[] table = slots;
+        String[] byId = terms;
+        int mask = table.length - 1;
+        for (int slot = slot(term, mask); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int termId = table[slot] - 1;
+            if (termId >= 0 && termId < byId.length && term.equals(byId[termId])) {
+                return termId;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of the term, assigning the next free id if the term is new. Called by the publisher only.
+     */
+    public synchronized int addTerm(String term) {
+        int existing = termId(term);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        int termId = nextId++;
+        if (termId == terms.length) {
+            terms = Arrays.copyOf(terms, termId * 2);
+            frequencies = Arrays.copyOf(frequencies, termId * 2);
+        }
+        terms[termId] = term;
+
+        if ((usedSlots + 1) * 2 > slots.length) {
+            rehash();
+        }
+        insert(slots, term, termId);
+        usedSlots++;
+        size++;
+        return termId;
     }
 
+    /**
+     * @return the term with the given id, or null if it was removed
+     */
+    public String term(int termId) {
+        String[] byId = terms;
+        return termId < byId.length ? byId[termId] : null;
+    }
+
+    /**
+     * @return number of occurrences of the term in the indexed documents
+     */
+    public long frequency(int termId) {
+        long[] current = frequencies;
+        return termId < current.length ? current[termId] : 0;
+    }
+
+    /**
+     * Removes occurrences that belonged to deleted documents from the term's frequency.
+     */
+    public synchronized void subtractFrequency(int termId, long occurrences) {
+        frequencies[termId] -= occurrences;
+        changedTerms.set(termId);
+    }
+
+    @Override
+    public synchronized void removeTerm(int termId, String term) {
+        int[] table = slots;
+        int mask = table.length - 1;
+        for (int slot = slot(term, mask); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] - 1 == termId) {
+                // the slot stays occupied so probe chains running through it are not cut
+                table[slot] = REMOVED;
+                terms[termId] = null;
+                frequencies[termId] = 0;
+                changedTerms.set(termId);
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of terms in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return one past the largest term id assigned so far
+     */
+    public int maxTermId() {
+        return nextId;
+    }
+
+    /**
+     * @return the terms occurring in at least one indexed document
+     */
     public Set<String> getVocabulary() {
-        return Set.copyOf(termFrequencies.keySet());
+        String[] byId = terms;
+        Set<String> vocabulary = new HashSet<>();
+        for (int termId = 0; termId < Math.min(nextId, byId.length); termId++) {
+            if (byId[termId] != null && frequency(termId) > 0) {
+                vocabulary.add(byId[termId]);
+            }
+        }
+        return vocabulary;
+    }
+
+    /**
+     * @return ids of the terms whose frequency changed or which were removed since the previous call
+     */
+    public synchronized BitSet drainChanges() {
+        BitSet changed = changedTerms;
+        changedTerms = new BitSet();
+        return changed;
+    }
+
+    @Override
+    public String sectionName() {
+        return "dictionary";
+    }
+
+    /**
+     * Copies the frequencies, the only per-term state that changes in place; the term array is shared, as
+     * ids below the captured count are not reassigned and removals wait for the snapshot to finish.
+     */
+    @Override
+    public synchronized SectionWriter snapshot(int maxDocId) {
+        int count = nextId;
+        String[] byId = terms;
+        long[] counts = Arrays.copyOf(frequencies, count);
+        return out -> {
+            out.writeInt(count);
+            for (int termId = 0; termId < count; termId++) {
+                out.writeBoolean(byId[termId] != null);
+                if (byId[termId] != null) {
+                    out.writeUTF(byId[termId]);
+                    out.writeLong(counts[termId]);
+                }
+            }
+        };
+    }
+
+    /**
+     * Restores the terms under their saved ids, so ids held by the other restored indexes stay valid.
+     */
+    @Override
+    public synchronized void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            int count = in.readInt();
+            int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, count)) * 2);
+            String[] byId = new String[capacity];
+            long[] counts = new long[capacity];
+            int present = 0;
+            for (int termId = 0; termId < count; termId++) {
+                if (in.readBoolean()) {
+                    byId[termId] = in.readUTF();
+                    counts[termId] = in.readLong();
+                    present++;
+                }
+            }
+
+            frequencies = counts;
+            terms = byId;
+            nextId = count;
+            size = present;
+            int tableSize = 2048;
+            while (tableSize < present * 4) {
+                tableSize *= 2;
+            }
+            slots = new int[tableSize];
+            rehash();
+        }
+    }
+
+    /**
+     * Rebuilds the lookup table without removed slots, doubling it if live terms fill more than a quarter.
+     */
+    private void rehash() {
+        int capacity = size * 4 > slots.length ? slots.length * 2 : slots.length;
+        int[] table = new int[capacity];
+        for (int termId = 0; termId < nextId; termId++) {
+            if (terms[termId] != null) {
+                insert(table, terms[termId], termId);
+            }
+        }
+        usedSlots = size;
+        slots = table;
+    }
+
+    private static void insert(int[] table, String term, int termId) {
+        int mask = table.length - 1;
+        int slot = slot(term, mask);
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = termId + 1;
+    }
+
+    private static int slot(String term, int mask) {
+        int h = term.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
     }
 }
@@ -0,0 +1,130 @@
+package dz.folderprocessor.data;
+
+import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Number of tokens of every indexed document, the document length used by ranked retrieval, with the
+ * totals behind the average length.
+ * <p>
+ * Like the postings, the lengths of replaced and deleted documents stay until the compactor purges them,
+ * so they keep counting towards the totals until then. Changes are serialized; readers take the current
+ * array, whose slots of published documents are not changed except by a purge.
+ */
+@Component
+public class DocumentLengths implements IndexingSink, PersistentIndex {
+
+    private volatile int[] lengths = new int[1024];
+    private volatile long totalLength;
+    private volatile int documentCount;
+
+    @EventListener
+    public synchronized void handleTermRead(TermReadEvent event) {
+        int docId = event.getFileId();
+        grow(docId);
+        if (lengths[docId]++ == 0) {
+            documentCount++;
+        }
+        totalLength++;
+    }
+
+    @Override
+    public synchronized void index(int docId, DocumentSegment segment) {
+        grow(docId);
+        if (lengths[docId] == 0 && segment.tokenCount() > 0) {
+            documentCount++;
+        }
+        totalLength += segment.tokenCount() - lengths[docId];
+        lengths[docId] = segment.tokenCount();
+    }
+
+    /**
+     * @return number of tokens of the document, 0 if it is unknown
+     */
+    public int length(int docId) {
+        int[] current = lengths;
+        return docId < current.length ? current[docId] : 0;
+    }
+
+    /**
+     * @return number of documents with a length, including those not yet purged
+     */
+    public int documentCount() {
+        return documentCount;
+    }
+
+    public double averageLength() {
+        int count = documentCount;
+        return count == 0 ? 0 : (double) totalLength / count;
+    }
+
+    /**
+     * Drops the lengths of documents purged by the compactor.
+     */
+    public synchronized void forgetPurged(BitSet purged) {
+        int[] current = lengths;
+        for (int docId = purged.nextSetBit(0); docId >= 0; docId = purged.nextSetBit(docId + 1)) {
+            if (docId < current.length && current[docId] > 0) {
+                totalLength -= current[docId];
+                documentCount--;
+                current[docId] = 0;
+            }
+        }
+    }
+
+    @Override
+    public String sectionName() {
+        return "lengths";
+    }
+
+    /**
+     * Keeps the documents published at the snapshot; later ones only use slots past {@code maxDocId}.
+     */
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        int[] captured = lengths;
+        int count = Math.min(maxDocId + 1, captured.length);
+        return out -> {
+            out.writeInt(count);
+            for (int docId = 0; docId < count; docId++) {
+                out.writeInt(captured[docId]);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            int count = in.readInt();
+            int[] loaded = new int[Math.max(1024, count)];
+            long total = 0;
+            int documents = 0;
+            for (int docId = 0; docId < count; docId++) {
+                loaded[docId] = in.readInt();
+                total += loaded[docId];
+                if (loaded[docId] > 0) {
+                    documents++;
+                }
+            }
+            lengths = loaded;
+            totalLength = total;
+            documentCount = documents;
+        }
+    }
+
+    private void grow(int docId) {
+        if (docId >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, docId + 1));
+        }
+    }
+}
@@ -1,39 +1,305 @@
 package dz.folderprocessor.data;
 
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import dz.folderprocessor.util.RoaringBitmap;
 import org.springframework.stereotype.Component;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Maps document ids to paths and tracks which ids are live.
+ * <p>
+ * Every indexed version of a file gets a fresh id. Publishing a new version switches the live docs from the
+ * old id to the new one in one step; the old id becomes deleted and its postings stay in the
+ * indexes until the compactor purges them. Deleting a file clears its live bit the same way. All query
+ * paths filter their results through the live docs.
+ * <p>
+ * A document may be reachable under several paths: files with identical content are registered as aliases
+ * of the first indexed copy and share its postings. The id stays live while at least one path points to it.
+ * <p>
+ * The live and deleted ids are immutable {@link RoaringBitmap}s replaced on every change. A change copies
+ * only the container of the id it touches, and queries share the current live bitmap as it is.
+ */
 @Component
-public class DocumentRegistry {
+public class DocumentRegistry implements PersistentIndex {
 
     private final AtomicInteger idCounter;
 
     private final Map<String, Integer> pathToId;
-    private final Map<Integer, String> idToPath;
+    private final Map<Integer, List<String>> idToPaths;
+    private final Map<String, Long> pathToModified;
+
+    private volatile RoaringBitmap liveDocs = RoaringBitmap.empty();
+    private volatile RoaringBitmap deletedDocs = RoaringBitmap.empty();
+    private volatile long generation;
 
     public DocumentRegistry() {
         this.idCounter = new AtomicInteger(0);
         this.pathToId = new ConcurrentHashMap<>();
-        this.idToPath = new ConcurrentHashMap<>();
+        this.idToPaths = new ConcurrentHashMap<>();
+        this.pathToModified = new ConcurrentHashMap<>();
     }
 
     public int maxFileId() {
         return idCounter.get() - 1;
     }
 
+    /**
+     * Allocates the id for a new version of the document. The id stays invisible to queries until
+     * {@link #publish(int)} is called.
+     */
     public int registerDocument(String path) {
-        return pathToId.computeIfAbsent(path, p -> {
-            int id = idCounter.getAndIncrement();
-            idToPath.put(id, p);
-            return id;
-        });
+        int id = idCounter.getAndIncrement();
+        idToPaths.put(id, List.of(path));
+        return id;
     }
 
+    /**
+     * @return the path the document was indexed from, or its oldest remaining alias
+     */
     public String getDocumentPath(int id) {
-        return idToPath.get(id);
+        List<String> paths = idToPaths.get(id);
+        return paths == null ? null : paths.get(0);
+    }
+
+    /**
+     * @return all paths with the content of the document, or an empty list for an unknown id
+     */
+    public List<String> getDocumentPaths(int id) {
+        return idToPaths.getOrDefault(id, List.of());
+    }
+
+    /**
+     * @return id of the live version of the document, or -1 if it is not indexed
+     */
+    public int getDocumentId(String path) {
+        return pathToId.getOrDefault(path, -1);
+    }
+
+    public void recordLastModified(String path, long lastModified) {
+        pathToModified.put(path, lastModified);
+    }
+
+    /**
+     * @return true if the document was indexed from a file version at least as new as the given one
+     */
+    public boolean isUpToDate(String path, long lastModified) {
+        Long indexed = pathToModified.get(path);
+        return indexed != null && indexed >= lastModified;
+    }
+
+    /**
+     * Makes a fully indexed document visible to queries, replacing the previous version of the same path.
+     */
+    public synchronized void publish(int id) {
+        String path = idToPaths.get(id).get(0);
+        Integer previous = pathToId.put(path, id);
+
+        liveDocs = liveDocs.with(id);
+        if (previous != null) {
+            detach(path, previous);
+        }
+        generation++;
+    }
+
+    /**
+     * Retires an id that was registered but never published. It goes straight to the deleted ids, so the
+     * compactor purges any postings the indexes took of it.
+     */
+    public synchronized void discard(int id) {
+        deletedDocs = deletedDocs.with(id);
+    }
+
+    /**
+     * Registers the path as another name of an already published document with identical content.
+     *
+     * @return false if the document is no longer live and the path has to be indexed normally
+     */
+    public synchronized boolean alias(String path, int id) {
+        if (!liveDocs.contains(id)) {
+            return false;
+        }
+        Integer previous = pathToId.put(path, id);
+        if (previous != null && previous == id) {
+            return true;
+        }
+
+        List<String> paths = new ArrayList<>(idToPaths.get(id));
+        paths.add(path);
+        idToPaths.put(id, List.copyOf(paths));
+        if (previous != null) {
+            detach(path, previous);
+        }
+        generation++;
+        return true;
+    }
+
+    /**
+     * Removes the path from the index; the document itself leaves the live set once no path refers to it
+     * and its postings are purged later by the compactor.
+     *
+     * @return true if the path was indexed
+     */
+    public synchronized boolean delete(String path) {
+        Integer id = pathToId.remove(path);
+        pathToModified.remove(path);
+        if (id == null) {
+            return false;
+        }
+
+        detach(path, id);
+        generation++;
+        return true;
+    }
+
+    /**
+     * Drops one path of a document and retires the id when it was the last one.
+     */
+    private void detach(String path, int id) {
+        List<String> paths = idToPaths.get(id);
+        if (paths.size() > 1) {
+            idToPaths.put(id, paths.stream().filter(p -> !p.equals(path)).toList());
+            return;
+        }
+
+        deletedDocs = deletedDocs.with(id);
+        liveDocs = liveDocs.without(id);
+    }
+
+    /**
+     * @return a snapshot of the paths of all live documents
+     */
+    public List<String> livePaths() {
+        return new ArrayList<>(pathToId.keySet());
+    }
+
+    public boolean isLive(int id) {
+        return liveDocs.contains(id);
+    }
+
+    /**
+     * @return the documents visible to queries, shared by all of them until the next change
+     */
+    public RoaringBitmap liveBitmap() {
+        return liveDocs;
+    }
+
+    /**
+     * @return a copy of the ids that are no longer live but may still have postings in the indexes
+     */
+    public BitSet deletedDocuments() {
+        return deletedDocs.toBitSet();
+    }
+
+    /**
+     * Forgets deleted ids whose postings have been purged from every index.
+     */
+    public synchronized void forgetPurged(BitSet purged) {
+        deletedDocs = deletedDocs.without(purged);
+        purged.stream().forEach(idToPaths::remove);
+    }
+
+    /**
+     * @return counter bumped on every change of the live documents
+     */
+    public long generation() {
+        return generation;
+    }
+
+    @Override
+    public String sectionName() {
+        return "documents";
+    }
+
+    /**
+     * The bitmaps are replaced rather than changed, so only the path maps are copied.
+     */
+    @Override
+    public synchronized SectionWriter snapshot(int maxDocId) {
+        int counter = idCounter.get();
+        long snapshotGeneration = generation;
+        RoaringBitmap live = liveDocs;
+        RoaringBitmap deleted = deletedDocs;
+        Map<Integer, List<String>> paths = Map.copyOf(idToPaths);
+        Map<String, Long> modified = Map.copyOf(pathToModified);
+        return out -> {
+            out.writeInt(counter);
+            out.writeLong(snapshotGeneration);
+            writeBitSet(out, live.toBitSet());
+            writeBitSet(out, deleted.toBitSet());
+
+            out.writeInt(paths.size());
+            for (Map.Entry<Integer, List<String>> entry : paths.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String path : entry.getValue()) {
+                    out.writeUTF(path);
+                }
+            }
+
+            out.writeInt(modified.size());
+            for (Map.Entry<String, Long> entry : modified.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        };
+    }
+
+    /**
+     * Restores ids, paths and live docs; every path of a live document points to it again.
+     */
+    @Override
+    public synchronized void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            idCounter.set(in.readInt());
+            generation = in.readLong();
+            BitSet live = readBitSet(in);
+            deletedDocs = RoaringBitmap.of(readBitSet(in));
+
+            int documents = in.readInt();
+            for (int i = 0; i < documents; i++) {
+                int id = in.readInt();
+                String[] paths = new String[in.readInt()];
+                for (int k = 0; k < paths.length; k++) {
+                    paths[k] = in.readUTF();
+                    if (live.get(id)) {
+                        pathToId.put(paths[k], id);
+                    }
+                }
+                idToPaths.put(id, List.of(paths));
+            }
+
+            int modified = in.readInt();
+            for (int i = 0; i < modified; i++) {
+                pathToModified.put(in.readUTF(), in.readLong());
+            }
+            liveDocs = RoaringBitmap.of(live);
+        }
     }
 
+    private static void writeBitSet(DataOutput out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readBitSet(DataInput in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
 }
@@ -0,0 +1,279 @@
+package dz.folderprocessor.data;
+
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.fst.BytesRefFSTEnum;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.FSTCompiler;
+import org.apache.lucene.util.fst.NoOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Set of terms stored as an immutable minimal FST, with small mutable buffers for the changes since it
+ * was built.
+ * <p>
+ * The FST shares prefixes and suffixes between terms, so the whole vocabulary costs a few bytes per term
+ * instead of a string and a skip-list node each. Terms added later go to a skip-list buffer and removed
+ * terms to a set that hides them in the FST. A rebuild, run in the background once the buffer is large
+ * enough and at every segment snapshot, freezes the buffer, builds the next FST from the previous one and
+ * the frozen terms and installs it; terms added meanwhile stay in the new buffer. Mutations are
+ * serialized; lookups are lock-free and see either FST.
+ */
+public class FstTermSet {
+
+    private static final NoOutputs OUTPUTS = NoOutputs.getSingleton();
+
+    private volatile State state = new State(null, new TreeSet<>(), ConcurrentHashMap.newKeySet(),
+            new ConcurrentSkipListSet<>());
+
+    /**
+     * Visible terms are the FST and the frozen terms, minus the removed ones, plus the added ones. The
+     * frozen set is never changed; the other two are changed in place until the next FST is installed.
+     */
+    private record State(FST<Object> fst, NavigableSet<String> frozen, Set<String> removed,
+                         NavigableSet<String> added) {}
+
+    /**
+     * @param bufferedTerms terms added since the FST was built
+     * @param removedTerms  terms hidden in the FST
+     * @param fstBytes      heap used by the FST
+     */
+    public record Stats(int bufferedTerms, int removedTerms, long fstBytes) {}
+
+    synchronized void add(String term) {
+        State current = state;
+        // a term hidden before a freeze is left out of the next FST, so it goes to the buffer as well
+        if (current.removed().remove(term) || !current.frozen().contains(term) && !contains(current.fst(), term)) {
+            current.added().add(term);
+        }
+    }
+
+    synchronized void remove(String term) {
+        State current = state;
+        current.added().remove(term);
+        if (current.frozen().contains(term) || contains(current.fst(), term)) {
+            current.removed().add(term);
+        }
+    }
+
+    /**
+     * @return the terms starting with the prefix, sorted
+     */
+    List<String> startingWith(String prefix) {
+        return startingWith(prefix, prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Walks each part of the set from {@code from} on and stops after {@code max} terms, so a page of a large
+     * range costs the page, not the range.
+     *
+     * @return the first {@code max} terms starting with the prefix that are not below {@code from}, sorted
+     */
+    List<String> startingWith(String prefix, String from, int max) {
+        State current = state;
+        String start = from.compareTo(prefix) > 0 ? from : prefix;
+        String end = prefix + Character.MAX_VALUE;
+        if (start.compareTo(end) > 0 || max <= 0) {
+            return List.of();
+        }
+
+        TreeSet<String> matches = new TreeSet<>();
+        int taken = 0;
+        for (Iterator<String> added = current.added().subSet(start, true, end, true).iterator();
+             added.hasNext() && taken < max; taken++) {
+            matches.add(added.next());
+        }
+        taken = 0;
+        for (Iterator<String> frozen = current.frozen().subSet(start, true, end, true).iterator();
+             frozen.hasNext() && taken < max; ) {
+            String term = frozen.next();
+            if (!current.removed().contains(term)) {
+                matches.add(term);
+                taken++;
+            }
+        }
+
+        if (current.fst() != null) {
+            BytesRef prefixBytes = new BytesRef(prefix);
+            taken = 0;
+            try {
+                BytesRefFSTEnum<Object> terms = new BytesRefFSTEnum<>(current.fst());
+                for (BytesRefFSTEnum.InputOutput<Object> entry = terms.seekCeil(new BytesRef(start));
+                     entry != null && StringHelper.startsWith(entry.input, prefixBytes) && taken < max;
+                     entry = terms.next()) {
+                    String term = entry.input.utf8ToString();
+                    if (!current.removed().contains(term)) {
+                        matches.add(term);
+                        taken++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return matches.stream().limit(max).toList();
+    }
+
+    /**
+     * Moves the buffered terms into a new FST if there are at least {@code minTerms} of them. The FST is
+     * built outside the lock, so additions and lookups go on meanwhile.
+     *
+     * @return true if an FST was built
+     */
+    boolean rebuild(int minTerms) throws IOException {
+        Snapshot snapshot;
+        synchronized (this) {
+            if (state.added().size() < minTerms) {
+                return false;
+            }
+            snapshot = freeze();
+        }
+        snapshot.build();
+        return true;
+    }
+
+    /**
+     * Freezes the buffered terms for a snapshot. Called with publishing paused; only the removed terms, which
+     * the compactor adds in small numbers, are copied.
+     *
+     * @return writer of the set as of now, installing the FST it builds as the current one
+     */
+    synchronized Snapshot freeze() {
+        State current = state;
+        NavigableSet<String> frozen = current.added();
+        if (!current.frozen().isEmpty()) {
+            // the previous snapshot failed before installing its FST
+            frozen = new TreeSet<>(current.frozen());
+            frozen.addAll(current.added());
+        }
+        state = new State(current.fst(), frozen, current.removed(), new ConcurrentSkipListSet<>());
+        return new Snapshot(current.fst(), frozen, Set.copyOf(current.removed()));
+    }
+
+    final class Snapshot {
+
+        private final FST<Object> base;
+        private final NavigableSet<String> frozen;
+        private final Set<String> removed;
+
+        private Snapshot(FST<Object> base, NavigableSet<String> frozen, Set<String> removed) {
+            this.base = base;
+            this.frozen = frozen;
+            this.removed = removed;
+        }
+
+        /**
+         * Builds the FST of the snapshot and installs it, unless another freeze came first.
+         */
+        FST<Object> build() throws IOException {
+            FST<Object> fst = FstTermSet.build(base, frozen, removed);
+            install(fst, frozen);
+            return fst;
+        }
+
+        /**
+         * Builds the FST of the snapshot, installs it and writes it to the section.
+         */
+        void writeTo(DataOutputStream out) throws IOException {
+            FST<Object> fst = build();
+
+            out.writeBoolean(fst != null);
+            if (fst != null) {
+                OutputStreamDataOutput output = new OutputStreamDataOutput(out);
+                fst.save(output, output);
+            }
+        }
+    }
+
+    /**
+     * Replaces the set with the FST written by a {@link Snapshot}.
+     */
+    synchronized void readFrom(DataInputStream in) throws IOException {
+        FST<Object> fst = null;
+        if (in.readBoolean()) {
+            InputStreamDataInput input = new InputStreamDataInput(in);
+            fst = new FST<>(FST.readMetadata(input, OUTPUTS), input);
+        }
+        state = new State(fst, new TreeSet<>(), ConcurrentHashMap.newKeySet(), new ConcurrentSkipListSet<>());
+    }
+
+    Stats stats() {
+        State current = state;
+        return new Stats(current.frozen().size() + current.added().size(), current.removed().size(),
+                current.fst() == null ? 0 : current.fst().ramBytesUsed());
+    }
+
+    /**
+     * Makes the built FST current. Terms removed since the freeze keep hiding it, the others are already gone.
+     */
+    private synchronized void install(FST<Object> fst, NavigableSet<String> frozen) {
+        State current = state;
+        if (current.frozen() != frozen) {
+            return;
+        }
+        Set<String> removed = ConcurrentHashMap.newKeySet();
+        for (String term : current.removed()) {
+            if (contains(fst, term)) {
+                removed.add(term);
+            }
+        }
+        state = new State(fst, new TreeSet<>(), removed, current.added());
+    }
+
+    private static FST<Object> build(FST<Object> base, NavigableSet<String> frozen, Set<String> removed)
+            throws IOException {
+        // the FST enumerates in UTF-8 byte order, the buffer in UTF-16 order; both are almost always the same,
+        // so the sort only merges two runs
+        List<BytesRef> terms = new ArrayList<>();
+        if (base != null) {
+            BytesRefFSTEnum<Object> existing = new BytesRefFSTEnum<>(base);
+            for (BytesRefFSTEnum.InputOutput<Object> entry = existing.next(); entry != null; entry = existing.next()) {
+                if (removed.isEmpty() || !removed.contains(entry.input.utf8ToString())) {
+                    terms.add(BytesRef.deepCopyOf(entry.input));
+                }
+            }
+        }
+        for (String term : frozen) {
+            if (!removed.contains(term)) {
+                terms.add(new BytesRef(term));
+            }
+        }
+        terms.sort(null);
+
+        FSTCompiler<Object> compiler = new FSTCompiler.Builder<>(FST.INPUT_TYPE.BYTE1, OUTPUTS).build();
+        IntsRefBuilder scratch = new IntsRefBuilder();
+        BytesRef previous = null;
+        for (BytesRef term : terms) {
+            if (!term.equals(previous)) {
+                compiler.add(Util.toIntsRef(term, scratch), OUTPUTS.getNoOutput());
+                previous = term;
+            }
+        }
+        FST.FSTMetadata<Object> metadata = compiler.compile();
+        return metadata == null ? null : FST.fromFSTReader(metadata, compiler.getFSTReader());
+    }
+
+    private static boolean contains(FST<Object> fst, String term) {
+        try {
+            return fst != null && Util.get(fst, new BytesRef(term)) != null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
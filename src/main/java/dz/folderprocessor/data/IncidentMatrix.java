@@ -1,38 +1,160 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.CompactableIndex;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import dz.folderprocessor.util.DenseIntMap;
+import dz.folderprocessor.util.IntList;
+import dz.folderprocessor.util.RoaringBitmap;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
+/**
+ * Term-document incidence sets, keyed by the dictionary term id and stored as {@link RoaringBitmap}s.
+ * <p>
+ * Every change replaces the term's bitmap with a new version in one write, so queries read the stored
+ * bitmaps directly without locking or cloning them.
+ */
 @Component
-public class IncidentMatrix {
+@RequiredArgsConstructor
+public class IncidentMatrix implements IndexingSink, CompactableIndex, PersistentIndex {
 
-    private final Map<String, BitSet> incidentMatrix;
+    private final Dictionary dictionary;
 
-    public IncidentMatrix() {
-        this.incidentMatrix = new ConcurrentHashMap<>();
+    private final DenseIntMap<RoaringBitmap> incidentMatrix = new DenseIntMap<>();
+
+    /**
+     * Memory used by the incidence sets, next to what one {@link BitSet} per term would take.
+     *
+     * @param bitSetBytes size of bitsets just wide enough for each term's largest document id
+     */
+    public record Stats(int terms, long postings, long bytes, long bitSetBytes) {}
+
+    /**
+     * @return the documents containing the term; a shared instance that set operations never modify
+     */
+    public RoaringBitmap getDocumentsForTerm(String term) {
+        int termId = dictionary.termId(term);
+        RoaringBitmap documents = termId < 0 ? null : incidentMatrix.get(termId);
+        return documents == null ? RoaringBitmap.empty() : documents;
     }
 
-    public BitSet getBitSetForTerm(String term) {
-        BitSet original = incidentMatrix.get(term);
-        if (original == null) return new BitSet();
-        return (BitSet) original.clone();
+    /**
+     * @return true if the term is indexed but none of its documents is live any more
+     */
+    public boolean onlyInDeletedDocuments(String term, RoaringBitmap liveDocs) {
+        int termId = dictionary.termId(term);
+        RoaringBitmap documents = termId < 0 ? null : incidentMatrix.get(termId);
+        return documents != null && !documents.intersects(liveDocs);
     }
 
     @EventListener
     public void handleTermRead(TermReadEvent event) {
-        String term = event.getTerm();
+        int termId = dictionary.addTerm(event.getTerm());
         int fileId = event.getFileId();
 
-        BitSet bitSet = incidentMatrix.computeIfAbsent(term, k -> new BitSet());
+        addDocument(termId, fileId);
+    }
+
+    @Override
+    public void index(int docId, DocumentSegment segment) {
+        for (int ord = 0; ord < segment.termCount(); ord++) {
+            addDocument(segment.termId(ord), docId);
+        }
+    }
+
+    @Override
+    public long[] compactionKeys() {
+        return Arrays.stream(incidentMatrix.keys()).asLongStream().toArray();
+    }
+
+    @Override
+    public long compact(long key, BitSet deletedDocs) {
+        int termId = (int) key;
+        RoaringBitmap documents = incidentMatrix.get(termId);
+        if (documents == null) {
+            return 0;
+        }
+        RoaringBitmap remaining = documents.without(deletedDocs);
+        if (remaining.isEmpty()) {
+            incidentMatrix.remove(termId);
+        } else {
+            incidentMatrix.put(termId, remaining);
+        }
+        return documents.cardinality() - remaining.cardinality();
+    }
+
+    @Override
+    public String sectionName() {
+        return "incidence";
+    }
+
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        return out -> {
+            IntList termIds = new IntList();
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            for (int termId : incidentMatrix.keys()) {
+                RoaringBitmap documents = incidentMatrix.get(termId).upTo(maxDocId);
+                if (!documents.isEmpty()) {
+                    termIds.add(termId);
+                    bitmaps.add(documents);
+                }
+            }
+
+            out.writeInt(termIds.size());
+            for (int i = 0; i < termIds.size(); i++) {
+                out.writeInt(termIds.get(i));
+                bitmaps.get(i).writeTo(out);
+            }
+        };
+    }
 
-        synchronized (bitSet) {
-            bitSet.set(fileId);
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int termId = in.readInt();
+                incidentMatrix.put(termId, RoaringBitmap.readFrom(in));
+            }
         }
     }
 
+    public Stats stats() {
+        int terms = 0;
+        long postings = 0;
+        long bytes = 0;
+        long bitSetBytes = 0;
+        for (int termId : incidentMatrix.keys()) {
+            RoaringBitmap documents = incidentMatrix.get(termId);
+            if (documents == null) {
+                continue;
+            }
+            terms++;
+            postings += documents.cardinality();
+            bytes += documents.sizeInBytes();
+            bitSetBytes += (documents.last() / 64 + 1) * 8L;
+        }
+        return new Stats(terms, postings, bytes, bitSetBytes);
+    }
+
+    private void addDocument(int termId, int docId) {
+        RoaringBitmap documents = incidentMatrix.get(termId);
+        RoaringBitmap updated = (documents == null ? RoaringBitmap.empty() : documents).append(docId);
+        if (updated != documents) {
+            incidentMatrix.put(termId, updated);
+        }
+    }
 }
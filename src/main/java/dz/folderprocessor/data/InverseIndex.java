@@ -1,44 +1,175 @@
 package dz.folderprocessor.data;
 
+import dz.folderprocessor.events.DocumentReadEvent;
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.CompactableIndex;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import dz.folderprocessor.util.DenseIntMap;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.IntList;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Positional postings per term, keyed by the dictionary term id and stored compressed in {@link Postings}.
+ * <p>
+ * All changes come from the publisher thread; the size counters are only written there.
+ */
 @Component
-public class InverseIndex implements WordSearchIndex, PositionIndex {
+@RequiredArgsConstructor
+public class InverseIndex implements WordSearchIndex, PositionIndex, IndexingSink, CompactableIndex,
+        PersistentIndex {
 
-    private final Map<String, Map<Integer, List<Integer>>> index;
+    private final Dictionary dictionary;
+    private final BlockAllocator postingsAllocator;
 
-    public InverseIndex() {
-        this.index = new ConcurrentHashMap<>();
-    }
+    private final DenseIntMap<Postings> index = new DenseIntMap<>();
+
+    // positions of the document currently replayed as events, appended once it is complete
+    private final Map<Integer, IntList> pending = new HashMap<>();
+    private int pendingDoc = -1;
+
+    private volatile long documentCount;
+    private volatile long positionCount;
+    private volatile long byteCount;
 
     @EventListener
     public void handleTermRead(TermReadEvent event) {
-        String term = event.getTerm();
+        int termId = dictionary.addTerm(event.getTerm());
         int fileId = event.getFileId();
         int position = event.getPosition();
 
-        index.computeIfAbsent(term, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(fileId, k -> new ArrayList<>())
-                .add(position);
+        if (fileId != pendingDoc) {
+            flushPending();
+            pendingDoc = fileId;
+        }
+        pending.computeIfAbsent(termId, k -> new IntList()).add(position);
+    }
+
+    @EventListener
+    public void handleDocumentRead(DocumentReadEvent event) {
+        flushPending();
+    }
+
+    @Override
+    public void index(int docId, DocumentSegment segment) {
+        for (int ord = 0; ord < segment.termCount(); ord++) {
+            int[] positions = segment.positions(ord);
+            append(segment.termId(ord), docId, positions, positions.length);
+        }
+    }
+
+    @Override
+    public long[] compactionKeys() {
+        return Arrays.stream(index.keys()).asLongStream().toArray();
+    }
+
+    @Override
+    public long compact(long key, BitSet deletedDocs) {
+        int termId = (int) key;
+        Postings postings = index.get(termId);
+        if (postings == null) {
+            return 0;
+        }
+
+        int documentsBefore = postings.docCount();
+        int bytesBefore = postings.sizeInBytes();
+        long removed = postings.remove(deletedDocs);
+        documentCount -= documentsBefore - postings.docCount();
+        byteCount -= bytesBefore - postings.sizeInBytes();
+        positionCount -= removed;
+        if (postings.isEmpty()) {
+            postings.release();
+            index.remove(termId);
+        }
+        return removed;
+    }
+
+    public boolean containsTerm(int termId) {
+        return index.containsKey(termId);
     }
 
+    /**
+     * Decodes the whole postings list of a term; meant for inspection, queries use {@link #getDocuments(String)}.
+     */
     public Map<Integer, List<Integer>> getDocumentsWithPositions(String term) {
-        return index.getOrDefault(term, Collections.emptyMap());
+        try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+            return Postings.toMap(getDocuments(term));
+        }
     }
 
     @Override
-    public Set<Integer> getDocuments(String term) {
-        return index.getOrDefault(term, Collections.emptyMap()).keySet();
+    public PostingsIterator getDocuments(String term) {
+        return postings(dictionary.termId(term));
+    }
+
+    /**
+     * @return a fresh iterator over the postings of the term, empty for an unknown id
+     */
+    public PostingsIterator postings(int termId) {
+        Postings postings = termId < 0 ? null : index.get(termId);
+        return postings == null ? PostingsIterator.empty() : postings.iterator();
+    }
+
+    @Override
+    public int[] getPositions(int fileId, String term) {
+        try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+            PostingsIterator postings = getDocuments(term);
+            return postings.advance(fileId) == fileId ? postings.positions() : new int[0];
+        }
     }
 
     @Override
-    public Set<Integer> getPositions(Integer fileId, String term) {
-        return new HashSet<>(index.get(term).get(fileId));
+    public String sectionName() {
+        return "terms";
+    }
+
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        return out -> {
+            try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+                PostingsSections.write(out, compactionKeys(), key -> index.get((int) key), maxDocId);
+            }
+        };
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        PostingsSections.read(section, postingsAllocator, (postings, key) -> {
+            index.put((int) key, postings);
+            documentCount += postings.docCount();
+            positionCount += postings.positionCount();
+            byteCount += postings.sizeInBytes();
+        });
+    }
+
+    public PostingsStats stats() {
+        return PostingsStats.of(index.size(), documentCount, positionCount, byteCount);
+    }
+
+    private void append(int termId, int docId, int[] positions, int count) {
+        Postings postings = index.get(termId);
+        if (postings == null) {
+            postings = new Postings(postingsAllocator);
+            index.put(termId, postings);
+        }
+        byteCount += postings.append(docId, positions, count);
+        documentCount++;
+        positionCount += count;
+    }
+
+    private void flushPending() {
+        for (Map.Entry<Integer, IntList> entry : pending.entrySet()) {
+            IntList positions = entry.getValue();
+            append(entry.getKey(), pendingDoc, positions.toArray(), positions.size());
+        }
+        pending.clear();
     }
 }
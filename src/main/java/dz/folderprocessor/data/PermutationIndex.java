@@ -1,31 +1,248 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.indexing.VocabularyIndex;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 
+/**
+ * Permuterm index: every rotation of {@code term$} points to the id of its term. A rotation identifies
+ * its term uniquely, so each key holds a single id.
+ * <p>
+ * Rotations are not materialized. The terms are appended once to a shared char buffer and a rotation is a
+ * {@code (termId, offset)} pair packed into a {@code long}, read virtually from the buffer; the pairs are
+ * kept in sorted runs searched by binary search, like a suffix array. New rotations are appended to a
+ * small unsorted buffer that readers scan; once it holds {@value #RUN} rotations it is sorted and carried
+ * into levels of sorted runs that double in size, merging with each occupied level on the way like a
+ * binary counter. A rotation is merged about once per level, so adding a term costs its length times the
+ * logarithm of the vocabulary, whatever the vocabulary's size. Removed terms are filtered out through the
+ * dictionary and dropped by the merges; once they take half of the char buffer, all levels are merged
+ * into one and the buffer is rebuilt.
+ * <p>
+ * Readers take the current {@link Table}: its arrays are replaced, never changed, except for the char
+ * buffer, the term spans and the unsorted buffer, which are only appended to past what the published
+ * table refers to.
+ */
 @Component
-public class PermutationIndex {
+@RequiredArgsConstructor
+public class PermutationIndex implements IndexingSink, VocabularyIndex, PersistentIndex {
 
-    private final ConcurrentNavigableMap<String, Set<String>> permutationMap = new ConcurrentSkipListMap<>();
+    private static final char END = '$';
+    private static final int RUN = 256;
+    private static final long[] EMPTY = new long[0];
+
+    private final Dictionary dictionary;
+
+    private volatile Table table = new Table(new char[1024], new int[1024], new int[1024],
+            new long[2 * RUN], 0, new long[0][]);
+
+    private int charCount;
+    private int removedChars;
+    private final BitSet removedIds = new BitSet();
+
+    /**
+     * @param chars   all terms, back to back
+     * @param starts  offset of each term in the buffer, by term id
+     * @param lengths length of each term, by term id; 0 for ids without a term
+     * @param recent      rotations of terms added since the last flush, unsorted
+     * @param recentCount number of rotations in {@code recent}
+     * @param levels      sorted runs, level {@code i} empty or of about {@code RUN << i} rotations
+     */
+    private record Table(char[] chars, int[] starts, int[] lengths, long[] recent, int recentCount,
+                         long[][] levels) {}
 
     @EventListener
-    public void handleTermRead(TermReadEvent event) {
+    public synchronized void handleTermRead(TermReadEvent event) {
         String term = event.getTerm().toLowerCase();
-        
-        generateAndStorePermutations(term);
+
+        addRotations(dictionary.addTerm(term), term);
+    }
+
+    @Override
+    public synchronized void index(int docId, DocumentSegment segment) {
+        for (int ord = segment.newTerms().nextSetBit(0); ord >= 0; ord = segment.newTerms().nextSetBit(ord + 1)) {
+            addRotations(segment.termId(ord), segment.term(ord));
+        }
+    }
+
+    private void addRotations(int termId, String term) {
+        Table current = table;
+        if (termId < current.lengths().length && current.lengths()[termId] > 0) {
+            return;
+        }
+
+        char[] chars = current.chars();
+        if (charCount + term.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + term.length()));
+        }
+        int[] starts = current.starts();
+        int[] lengths = current.lengths();
+        if (termId >= starts.length) {
+            int capacity = Math.max(starts.length * 2, termId + 1);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        term.getChars(0, term.length(), chars, charCount);
+        starts[termId] = charCount;
+        lengths[termId] = term.length();
+        charCount += term.length();
+
+        long[] recent = current.recent();
+        int count = current.recentCount();
+        if (count + term.length() + 1 > recent.length) {
+            recent = Arrays.copyOf(recent, Math.max(recent.length * 2, count + term.length() + 1));
+        }
+        for (int offset = 0; offset <= term.length(); offset++) {
+            recent[count++] = entry(termId, offset);
+        }
+
+        Table extended = new Table(chars, starts, lengths, recent, count, current.levels());
+        table = count >= RUN ? flush(extended) : extended;
+    }
+
+    /**
+     * Sorts the unsorted buffer and carries it into the levels.
+     */
+    private Table flush(Table current) {
+        long[] carry = withoutRemoved(sort(current, Arrays.copyOf(current.recent(), current.recentCount())));
+        if (removedChars * 2 > charCount) {
+            return compact(current, carry);
+        }
+
+        long[][] levels = current.levels().clone();
+        int level = 0;
+        while (level < levels.length && levels[level].length > 0) {
+            carry = withoutRemoved(merge(current, levels[level], carry));
+            levels[level++] = EMPTY;
+        }
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+        }
+        levels[level] = carry;
+        return new Table(current.chars(), current.starts(), current.lengths(), new long[2 * RUN], 0, levels);
+    }
+
+    @Override
+    public synchronized void removeTerm(int termId, String term) {
+        Table current = table;
+        if (termId < current.lengths().length && current.lengths()[termId] > 0 && !removedIds.get(termId)) {
+            removedIds.set(termId);
+            removedChars += current.lengths()[termId];
+        }
+    }
+
+    /**
+     * Merges all levels into one without the rotations of removed terms, and drops their chars.
+     */
+    private Table compact(Table current, long[] carry) {
+        long[] merged = carry;
+        for (long[] level : current.levels()) {
+            merged = merge(current, level, merged);
+        }
+        merged = withoutRemoved(merged);
+
+        char[] chars = new char[current.chars().length];
+        int[] starts = new int[current.starts().length];
+        int[] lengths = new int[current.lengths().length];
+        int count = 0;
+        for (int termId = 0; termId < lengths.length; termId++) {
+            int length = current.lengths()[termId];
+            if (length > 0 && !removedIds.get(termId)) {
+                System.arraycopy(current.chars(), current.starts()[termId], chars, count, length);
+                starts[termId] = count;
+                lengths[termId] = length;
+                count += length;
+            }
+        }
+        charCount = count;
+        removedChars = 0;
+        removedIds.clear();
+        return new Table(chars, starts, lengths, new long[2 * RUN], 0, new long[][]{merged});
+    }
+
+    private long[] withoutRemoved(long[] rotations) {
+        if (removedIds.isEmpty()) {
+            return rotations;
+        }
+        return Arrays.stream(rotations).filter(entry -> !removedIds.get(termId(entry))).toArray();
+    }
+
+    @Override
+    public String sectionName() {
+        return "rotations";
+    }
+
+    /**
+     * Keeps the rotations published at the snapshot; the captured arrays are not changed afterwards.
+     */
+    @Override
+    public synchronized SectionWriter snapshot(int maxDocId) {
+        Table captured = table;
+        BitSet removed = (BitSet) removedIds.clone();
+        return out -> {
+            long[] rotations = sort(captured, Arrays.copyOf(captured.recent(), captured.recentCount()));
+            for (long[] level : captured.levels()) {
+                rotations = merge(captured, level, rotations);
+            }
+            rotations = Arrays.stream(rotations)
+                    .filter(entry -> !removed.get(termId(entry)))
+                    .toArray();
+
+            // every term has exactly one rotation at offset 0
+            out.writeInt(rotations.length);
+            for (long entry : rotations) {
+                if (offset(entry) == 0) {
+                    int termId = termId(entry);
+                    out.writeInt(termId);
+                    out.writeUTF(new String(captured.chars(), captured.starts()[termId], captured.lengths()[termId]));
+                }
+            }
+            out.writeInt(-1);
+            for (long entry : rotations) {
+                out.writeLong(entry);
+            }
+        };
     }
 
-    private void generateAndStorePermutations(String term) {
-        String termWithMarker = term + "$";
-        
-        for (int i = 0; i < termWithMarker.length(); i++) {
-            String permutation = termWithMarker.substring(i) + termWithMarker.substring(0, i);
-            permutationMap.computeIfAbsent(permutation, k -> new HashSet<>()).add(term);
+    @Override
+    public synchronized void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            long[] sorted = new long[in.readInt()];
+            char[] chars = new char[1024];
+            int[] starts = new int[1024];
+            int[] lengths = new int[1024];
+            int count = 0;
+            for (int termId = in.readInt(); termId >= 0; termId = in.readInt()) {
+                String term = in.readUTF();
+                if (count + term.length() > chars.length) {
+                    chars = Arrays.copyOf(chars, Math.max(chars.length * 2, count + term.length()));
+                }
+                if (termId >= starts.length) {
+                    starts = Arrays.copyOf(starts, Math.max(starts.length * 2, termId + 1));
+                    lengths = Arrays.copyOf(lengths, starts.length);
+                }
+                term.getChars(0, term.length(), chars, count);
+                starts[termId] = count;
+                lengths[termId] = term.length();
+                count += term.length();
+            }
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = in.readLong();
+            }
+
+            charCount = count;
+            removedChars = 0;
+            removedIds.clear();
+            table = new Table(chars, starts, lengths, new long[2 * RUN], 0, new long[][]{sorted});
         }
     }
 
@@ -41,37 +258,145 @@ public class PermutationIndex {
 
         String prefix = parts[0];
         String suffix = parts[1];
-        
-        String searchPattern = suffix + "$" + prefix;
-        
+
+        String searchPattern = suffix + END + prefix;
+
         return findTermsStartingWith(searchPattern);
     }
 
-    private Set<String> findTermsStartingWith(String prefix) {
+    /**
+     * @return terms with a rotation starting with the key
+     */
+    private Set<String> findTermsStartingWith(String key) {
+        Table current = table;
         Set<String> result = new HashSet<>();
-        
-        String end = prefix + Character.MAX_VALUE;
-        NavigableMap<String, Set<String>> subMap = permutationMap.subMap(prefix, true, end, false);
-        
-        for (Map.Entry<String, Set<String>> entry : subMap.entrySet()) {
-            if (entry.getKey().startsWith(prefix)) {
-                result.addAll(entry.getValue());
+        for (long[] level : current.levels()) {
+            collect(current, level, key, result);
+        }
+        for (int i = 0; i < current.recentCount(); i++) {
+            if (startsWith(current, current.recent()[i], key)) {
+                addTerm(result, termId(current.recent()[i]));
             }
         }
-        
         return result;
     }
 
+    /**
+     * A term contains the substring exactly when one of its rotations starts with it.
+     */
     public Set<String> getAllTermsContaining(String substring) {
-        Set<String> result = new HashSet<>();
-        String pattern = substring + "$";
-        
-        for (Map.Entry<String, Set<String>> entry : permutationMap.entrySet()) {
-            if (entry.getKey().contains(pattern)) {
-                result.addAll(entry.getValue());
+        return findTermsStartingWith(substring);
+    }
+
+    private void collect(Table current, long[] rotations, String key, Set<String> result) {
+        int low = 0;
+        int high = rotations.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareToKey(current, rotations[middle], key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
         }
-        
-        return result;
+
+        for (int i = low; i < rotations.length && startsWith(current, rotations[i], key); i++) {
+            addTerm(result, termId(rotations[i]));
+        }
+    }
+
+    private void addTerm(Set<String> result, int termId) {
+        String term = dictionary.term(termId);
+        if (term != null) {
+            result.add(term);
+        }
+    }
+
+    private static long entry(int termId, int offset) {
+        return (long) termId << 32 | offset;
+    }
+
+    private static int termId(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int offset(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * @return the k-th char of the rotation, reading {@code term$} circularly from the rotation's offset
+     */
+    private static char charAt(Table table, long entry, int k) {
+        int termId = termId(entry);
+        int length = table.lengths()[termId];
+        int index = (offset(entry) + k) % (length + 1);
+        return index == length ? END : table.chars()[table.starts()[termId] + index];
+    }
+
+    private static int compare(Table table, long a, long b) {
+        int lengthA = table.lengths()[termId(a)] + 1;
+        int lengthB = table.lengths()[termId(b)] + 1;
+        for (int k = 0; k < Math.min(lengthA, lengthB); k++) {
+            int difference = charAt(table, a, k) - charAt(table, b, k);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    private static int compareToKey(Table table, long entry, String key) {
+        int length = table.lengths()[termId(entry)] + 1;
+        for (int k = 0; k < Math.min(length, key.length()); k++) {
+            int difference = charAt(table, entry, k) - key.charAt(k);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length();
+    }
+
+    private static boolean startsWith(Table table, long entry, String key) {
+        int length = table.lengths()[termId(entry)] + 1;
+        if (length < key.length()) {
+            return false;
+        }
+        for (int k = 0; k < key.length(); k++) {
+            if (charAt(table, entry, k) != key.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge sort of a flushed buffer; sorts in place and returns the array.
+     */
+    private static long[] sort(Table table, long[] rotations) {
+        if (rotations.length > 1) {
+            int half = rotations.length / 2;
+            long[] merged = merge(table, sort(table, Arrays.copyOfRange(rotations, 0, half)),
+                    sort(table, Arrays.copyOfRange(rotations, half, rotations.length)));
+            System.arraycopy(merged, 0, rotations, 0, merged.length);
+        }
+        return rotations;
+    }
+
+    private static long[] merge(Table table, long[] left, long[] right) {
+        long[] merged = new long[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < left.length && j < right.length) {
+            merged[k++] = compare(table, left[i], right[j]) <= 0 ? left[i++] : right[j++];
+        }
+        while (i < left.length) {
+            merged[k++] = left[i++];
+        }
+        while (j < right.length) {
+            merged[k++] = right[j++];
+        }
+        return merged;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package dz.folderprocessor.data;
 
-import java.util.Set;
-
 public interface PositionIndex {
-    Set<Integer> getPositions(Integer fileId, String term);
+
+    /**
+     * @return ascending positions of the key in the document, empty if it does not occur there
+     */
+    int[] getPositions(int fileId, String term);
 }
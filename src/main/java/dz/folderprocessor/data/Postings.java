@@ -0,0 +1,334 @@
+package dz.folderprocessor.data;
+
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.BlockAllocator.Block;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed positional postings of one term or word pair.
+ * <p>
+ * Documents are stored in ascending id order, each as variable-byte integers: the gap to the previous
+ * document id (to -1 for the first one), the number of positions, the byte length of the positions,
+ * and then the positions as gaps to the previous position. The byte length lets a reader step over
+ * the positions of a document without decoding them. Every {@value #SKIP_INTERVAL} documents a skip entry records where the next
+ * block starts, so {@link PostingsIterator#advance(int)} does not scan the whole list.
+ * <p>
+ * Document ids are assigned in increasing order at publish time, so a new document is always appended
+ * at the end. Built for one writer and concurrent readers: bytes past the published length are never
+ * read, and every change is published with a single volatile write of an immutable view.
+ * <p>
+ * The encoded bytes live in a block of a {@link BlockAllocator}, on or off the heap. Readers walk them
+ * inside {@link BlockAllocator#enter()}, since a block outgrown or compacted away is freed at once.
+ */
+public class Postings {
+
+    static final int SKIP_INTERVAL = 32;
+
+    private static final int MAX_VBYTE_LENGTH = 5;
+
+    static final Block NO_BLOCK = new Block(ByteBuffer.allocate(0), 0, 0, -1);
+
+    record View(Block block, int length, int docCount, int lastDoc, long positionCount,
+                int[] skipDocs, int[] skipOffsets) {
+
+        int skipCount() {
+            return docCount == 0 ? 0 : (docCount - 1) / SKIP_INTERVAL;
+        }
+    }
+
+    static final View EMPTY = new View(NO_BLOCK, 0, 0, -1, 0, new int[0], new int[0]);
+
+    private final BlockAllocator allocator;
+
+    private volatile View view = EMPTY;
+
+    public Postings(BlockAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * Opens a list stored in a segment file, reading the encoded bytes in place from the mapped buffer.
+     * The first append copies them into a block of the allocator.
+     *
+     * @param meta   the list's metadata as read by {@link #readMeta(DataInput)}
+     * @param data   mapped buffer holding the encoded bytes
+     * @param offset start of the list in the buffer
+     */
+    static Postings mapped(BlockAllocator allocator, View meta, ByteBuffer data, int offset) {
+        Postings postings = new Postings(allocator);
+        Block block = new Block(data, offset, meta.length(), BlockAllocator.FOREIGN_SLAB);
+        postings.view = new View(block, meta.length(), meta.docCount(), meta.lastDoc(), meta.positionCount(),
+                meta.skipDocs(), meta.skipOffsets());
+        return postings;
+    }
+
+    /**
+     * @return the current state of the list; readers keep it only inside the allocator's read guard
+     */
+    View view() {
+        return view;
+    }
+
+    /**
+     * Cuts a view back to the documents up to {@code maxDoc}: the same bytes, counts and skip entries the
+     * list had when that document was its newest one. Documents are only ever appended after the newest,
+     * so this is exact as long as no compaction ran in between.
+     */
+    static View upTo(View current, int maxDoc) {
+        if (current.lastDoc() <= maxDoc) {
+            return current;
+        }
+
+        PostingsIterator iterator = new PostingsIterator(current);
+        iterator.advance(maxDoc + 1);
+        int length = iterator.entryStart();
+        int docCount = iterator.docIndex();
+        int lastDoc = iterator.previousDoc();
+        long newerPositions = 0;
+        for (int docId = iterator.docId(); docId != PostingsIterator.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+            newerPositions += iterator.freq();
+        }
+        return new View(current.block(), length, docCount, lastDoc, current.positionCount() - newerPositions,
+                current.skipDocs(), current.skipOffsets());
+    }
+
+    /**
+     * Appends a document after all documents already in the list.
+     *
+     * @param docId     id greater than any id in the list
+     * @param positions ascending positions of the key in the document
+     * @param count     number of positions to take from the array
+     * @return number of bytes the document added
+     */
+    public int append(int docId, int[] positions, int count) {
+        View current = view;
+        if (docId <= current.lastDoc()) {
+            throw new IllegalArgumentException("Document " + docId + " is not after " + current.lastDoc());
+        }
+
+        int positionBytes = 0;
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            positionBytes += vbyteLength(positions[i] - previous);
+            previous = positions[i];
+        }
+
+        Block block = current.block();
+        int offset = current.length();
+        int required = offset + 3 * MAX_VBYTE_LENGTH + positionBytes;
+        if (required > block.capacity()) {
+            block = copy(current, Math.max(required, block.capacity() * 2));
+        }
+        ByteBuffer bytes = block.buffer();
+        int base = block.offset();
+
+        int[] skipDocs = current.skipDocs();
+        int[] skipOffsets = current.skipOffsets();
+        int docCount = current.docCount();
+        if (docCount > 0 && docCount % SKIP_INTERVAL == 0) {
+            int skip = current.skipCount();
+            if (skip == skipDocs.length) {
+                skipDocs = Arrays.copyOf(skipDocs, Math.max(4, skip * 2));
+                skipOffsets = Arrays.copyOf(skipOffsets, Math.max(4, skip * 2));
+            }
+            // entries past the published skip count are not visible to readers
+            skipDocs[skip] = current.lastDoc();
+            skipOffsets[skip] = offset;
+        }
+
+        int start = offset;
+        offset = writeVbyte(bytes, base, offset, docId - current.lastDoc());
+        offset = writeVbyte(bytes, base, offset, count);
+        offset = writeVbyte(bytes, base, offset, positionBytes);
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            offset = writeVbyte(bytes, base, offset, positions[i] - previous);
+            previous = positions[i];
+        }
+
+        view = new View(block, offset, docCount + 1, docId, current.positionCount() + count, skipDocs, skipOffsets);
+        if (block != current.block()) {
+            free(current.block());
+        }
+        return offset - start;
+    }
+
+    /**
+     * Re-encodes the list without the given documents, trimming spare capacity.
+     *
+     * @return number of removed positions
+     */
+    public long remove(BitSet deletedDocs) {
+        View current = view;
+        Postings survivors = new Postings(allocator);
+        PostingsIterator iterator = new PostingsIterator(current);
+        int[] positions = new int[16];
+        for (int docId = iterator.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+            if (deletedDocs.get(docId)) {
+                continue;
+            }
+            int freq = iterator.freq();
+            if (freq > positions.length) {
+                positions = new int[Math.max(freq, positions.length * 2)];
+            }
+            for (int i = 0; i < freq; i++) {
+                positions[i] = iterator.nextPosition();
+            }
+            survivors.append(docId, positions, freq);
+        }
+
+        View compacted = survivors.view;
+        Block trimmed = compacted.block();
+        if (compacted.length() < trimmed.capacity()) {
+            trimmed = copy(compacted, compacted.length());
+            free(compacted.block());
+        }
+        view = new View(trimmed, compacted.length(),
+                compacted.docCount(), compacted.lastDoc(), compacted.positionCount(),
+                Arrays.copyOf(compacted.skipDocs(), compacted.skipCount()),
+                Arrays.copyOf(compacted.skipOffsets(), compacted.skipCount()));
+        free(current.block());
+        return current.positionCount() - compacted.positionCount();
+    }
+
+    /**
+     * Empties the list and returns its storage to the allocator; called when the list is dropped.
+     */
+    public void release() {
+        View current = view;
+        view = EMPTY;
+        free(current.block());
+    }
+
+    /**
+     * @return a new iterator over the documents published so far
+     */
+    public PostingsIterator iterator() {
+        return new PostingsIterator(view);
+    }
+
+    /**
+     * Decodes the remaining documents of an iterator into a map from document id to positions, in
+     * ascending document order.
+     */
+    public static Map<Integer, List<Integer>> toMap(PostingsIterator iterator) {
+        Map<Integer, List<Integer>> result = new LinkedHashMap<>();
+        for (int docId = iterator.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+            List<Integer> positions = new ArrayList<>(iterator.freq());
+            for (int position : iterator.positions()) {
+                positions.add(position);
+            }
+            result.put(docId, positions);
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return view.docCount() == 0;
+    }
+
+    public int docCount() {
+        return view.docCount();
+    }
+
+    public long positionCount() {
+        return view.positionCount();
+    }
+
+    /**
+     * @return encoded size of the documents and positions, without spare capacity and skip entries
+     */
+    public int sizeInBytes() {
+        return view.length();
+    }
+
+    /**
+     * Writes everything but the encoded bytes of a view: their length, the counts and the skip entries.
+     */
+    static void writeMeta(View current, DataOutput out) throws IOException {
+        out.writeInt(current.length());
+        out.writeInt(current.docCount());
+        out.writeInt(current.lastDoc());
+        out.writeLong(current.positionCount());
+        for (int i = 0; i < current.skipCount(); i++) {
+            out.writeInt(current.skipDocs()[i]);
+            out.writeInt(current.skipOffsets()[i]);
+        }
+    }
+
+    /**
+     * @return a view with the metadata written by {@link #writeMeta(View, DataOutput)} and no bytes
+     */
+    static View readMeta(DataInput in) throws IOException {
+        int length = in.readInt();
+        int docCount = in.readInt();
+        int lastDoc = in.readInt();
+        long positionCount = in.readLong();
+        int skipCount = docCount == 0 ? 0 : (docCount - 1) / SKIP_INTERVAL;
+        int[] skipDocs = new int[skipCount];
+        int[] skipOffsets = new int[skipCount];
+        for (int i = 0; i < skipCount; i++) {
+            skipDocs[i] = in.readInt();
+            skipOffsets[i] = in.readInt();
+        }
+        return new View(NO_BLOCK, length, docCount, lastDoc, positionCount, skipDocs, skipOffsets);
+    }
+
+    /**
+     * Writes the encoded bytes of a view.
+     */
+    static void writeData(View current, OutputStream out) throws IOException {
+        ByteBuffer bytes = current.block().buffer();
+        int base = current.block().offset();
+        byte[] chunk = new byte[Math.min(current.length(), 64 * 1024)];
+        for (int done = 0; done < current.length(); done += chunk.length) {
+            int count = Math.min(chunk.length, current.length() - done);
+            bytes.get(base + done, chunk, 0, count);
+            out.write(chunk, 0, count);
+        }
+    }
+
+    private static int vbyteLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return a new block of at least the given capacity holding the encoded bytes of the view
+     */
+    private Block copy(View current, int capacity) {
+        Block block = allocator.allocate(capacity);
+        Block source = current.block();
+        block.buffer().put(block.offset(), source.buffer(), source.offset(), current.length());
+        return block;
+    }
+
+    private void free(Block block) {
+        if (block != NO_BLOCK && block.slab() != BlockAllocator.FOREIGN_SLAB) {
+            allocator.free(block);
+        }
+    }
+
+    private static int writeVbyte(ByteBuffer bytes, int base, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes.put(base + offset++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        bytes.put(base + offset++, (byte) value);
+        return offset;
+    }
+}
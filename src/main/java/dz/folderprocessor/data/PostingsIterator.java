@@ -0,0 +1,173 @@
+package dz.folderprocessor.data;
+
+import dz.folderprocessor.util.SetUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lazily decoding cursor over a {@link Postings} list.
+ * <p>
+ * Starts before the first document; {@link #nextDoc()} and {@link #advance(int)} move forward and return
+ * the current document id, or {@link #NO_MORE_DOCS} once the list is exhausted. Positions of the current
+ * document are decoded only when asked for. Not thread-safe; every reader takes its own iterator, and
+ * uses it only inside the read guard of the postings' allocator.
+ */
+public class PostingsIterator {
+
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final ByteBuffer bytes;
+    private final int base;
+    private final int length;
+    private final int docCount;
+    private final int[] skipDocs;
+    private final int[] skipOffsets;
+    private final int skipCount;
+
+    private int docId = -1;
+    private int previousDoc = -1;
+    private int docIndex = -1;
+    private int freq;
+    private int nextEntry;
+    private int entryStart;
+    private int cursor;
+    private int position;
+    private int positionsRead;
+
+    PostingsIterator(Postings.View view) {
+        this.bytes = view.block().buffer();
+        this.base = view.block().offset();
+        this.length = view.length();
+        this.docCount = view.docCount();
+        this.skipDocs = view.skipDocs();
+        this.skipOffsets = view.skipOffsets();
+        this.skipCount = view.skipCount();
+    }
+
+    /**
+     * @return an iterator over no documents
+     */
+    public static PostingsIterator empty() {
+        return new PostingsIterator(Postings.EMPTY);
+    }
+
+    /**
+     * @return number of documents in the list, an upper bound of the work to exhaust the iterator
+     */
+    public int cost() {
+        return docCount;
+    }
+
+    public int docId() {
+        return docId;
+    }
+
+    public int nextDoc() {
+        if (nextEntry >= length) {
+            docId = NO_MORE_DOCS;
+            return docId;
+        }
+
+        entryStart = nextEntry;
+        cursor = nextEntry;
+        int delta = readVbyte();
+        int count = readVbyte();
+        int positionBytes = readVbyte();
+
+        previousDoc = docId;
+        docId += delta;
+        docIndex++;
+        freq = count;
+        nextEntry = cursor + positionBytes;
+        position = 0;
+        positionsRead = 0;
+        return docId;
+    }
+
+    /**
+     * Moves to the first document with an id at least {@code target}, using the skip entries to jump
+     * over whole blocks. The skip entries are searched by galloping from the current block, so the
+     * repeated advances of an intersection cost the logarithm of each jump, not of the whole list.
+     *
+     * @return the new current document id, or {@link #NO_MORE_DOCS}
+     */
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+
+        // entries before the current block end at or before the current document, below the target;
+        // from there, the last block whose preceding document is still before the target
+        int from = (docIndex + 1) / Postings.SKIP_INTERVAL;
+        int skip = SetUtil.gallop(skipDocs, Math.min(from, skipCount), skipCount, target) - 1;
+        if (skip >= from) {
+            docId = skipDocs[skip];
+            docIndex = (skip + 1) * Postings.SKIP_INTERVAL - 1;
+            nextEntry = skipOffsets[skip];
+        }
+
+        while (docId < target) {
+            nextDoc();
+        }
+        return docId;
+    }
+
+    /**
+     * @return number of positions in the current document
+     */
+    public int freq() {
+        return freq;
+    }
+
+    /**
+     * Decodes the next position of the current document; must be called at most {@link #freq()} times.
+     */
+    public int nextPosition() {
+        positionsRead++;
+        position += readVbyte();
+        return position;
+    }
+
+    /**
+     * @return the remaining positions of the current document, in ascending order
+     */
+    public int[] positions() {
+        int[] result = new int[freq - positionsRead];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = nextPosition();
+        }
+        return result;
+    }
+
+    /**
+     * @return number of documents before the current one
+     */
+    int docIndex() {
+        return docIndex;
+    }
+
+    /**
+     * @return id of the document before the current one, or -1 for the first
+     */
+    int previousDoc() {
+        return previousDoc;
+    }
+
+    /**
+     * @return byte offset at which the current document's entry starts
+     */
+    int entryStart() {
+        return entryStart;
+    }
+
+    private int readVbyte() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes.get(base + cursor++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
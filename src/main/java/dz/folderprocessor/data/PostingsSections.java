@@ -0,0 +1,80 @@
+package dz.folderprocessor.data;
+
+import dz.folderprocessor.persistence.SegmentSection;
+import dz.folderprocessor.util.BlockAllocator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.LongFunction;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Segment layout shared by the positional indexes: the encoded bytes of all lists back to back, preceded
+ * by their total length and followed by a directory of keys and list metadata.
+ * <p>
+ * On load only the directory is read; the bytes are mapped in windows of up to
+ * {@link SegmentSection#MAX_MAPPING} and every list reads them in place, so its pages are loaded when a
+ * query first touches it.
+ */
+final class PostingsSections {
+
+    private PostingsSections() {
+    }
+
+    /**
+     * Writes the lists as they were when {@code maxDocId} was the newest document, leaving out lists that
+     * were empty then. Callers hold the allocator's read guard.
+     */
+    static void write(DataOutputStream out, long[] keys, LongFunction<Postings> lookup, int maxDocId) throws IOException {
+        long[] kept = new long[keys.length];
+        Postings.View[] views = new Postings.View[keys.length];
+        int count = 0;
+        long dataLength = 0;
+        for (long key : keys) {
+            Postings postings = lookup.apply(key);
+            Postings.View view = postings == null ? Postings.EMPTY : Postings.upTo(postings.view(), maxDocId);
+            if (view.docCount() > 0) {
+                kept[count] = key;
+                views[count++] = view;
+                dataLength += view.length();
+            }
+        }
+
+        out.writeLong(dataLength);
+        for (int i = 0; i < count; i++) {
+            Postings.writeData(views[i], out);
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(kept[i]);
+            Postings.writeMeta(views[i], out);
+        }
+    }
+
+    static void read(SegmentSection section, BlockAllocator allocator, ObjLongConsumer<Postings> sink) throws IOException {
+        long dataLength;
+        try (DataInputStream head = section.open(0)) {
+            dataLength = head.readLong();
+        }
+
+        try (DataInputStream in = section.open(Long.BYTES + dataLength)) {
+            int count = in.readInt();
+            ByteBuffer window = null;
+            long windowStart = 0;
+            long dataOffset = 0;
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                Postings.View meta = Postings.readMeta(in);
+                if (window == null || dataOffset + meta.length() > windowStart + window.capacity()) {
+                    windowStart = dataOffset;
+                    window = section.map(Long.BYTES + windowStart,
+                            Math.min(SegmentSection.MAX_MAPPING, dataLength - windowStart));
+                }
+                sink.accept(Postings.mapped(allocator, meta, window, (int) (dataOffset - windowStart)), key);
+                dataOffset += meta.length();
+            }
+        }
+    }
+}
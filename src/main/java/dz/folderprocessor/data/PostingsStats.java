@@ -0,0 +1,17 @@
+package dz.folderprocessor.data;
+
+/**
+ * Size of a positional index.
+ *
+ * @param keys            number of terms or word pairs
+ * @param documents       number of (key, document) entries
+ * @param positions       number of stored positions
+ * @param bytes           encoded size of the postings
+ * @param bytesPerPosting average encoded bytes per position, including the document entries
+ */
+public record PostingsStats(long keys, long documents, long positions, long bytes, double bytesPerPosting) {
+
+    static PostingsStats of(long keys, long documents, long positions, long bytes) {
+        return new PostingsStats(keys, documents, positions, bytes, positions == 0 ? 0 : (double) bytes / positions);
+    }
+}
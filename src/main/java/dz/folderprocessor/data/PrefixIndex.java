@@ -1,17 +1,25 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.indexing.VocabularyIndex;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.concurrent.ConcurrentSkipListSet;
 
+/**
+ * Terms by prefix, kept as an {@link FstTermSet} rebuilt as terms accumulate.
+ */
 @Component
-public class PrefixIndex {
+public class PrefixIndex implements IndexingSink, VocabularyIndex, PersistentIndex {
 
-    private final NavigableSet<String> terms = new ConcurrentSkipListSet<>();
+    private final FstTermSet terms = new FstTermSet();
 
     @EventListener
     public void handleTermRead(TermReadEvent event) {
@@ -21,10 +29,54 @@ public class PrefixIndex {
         terms.add(term);
     }
 
+    @Override
+    public void index(int docId, DocumentSegment segment) {
+        for (int ord = segment.newTerms().nextSetBit(0); ord >= 0; ord = segment.newTerms().nextSetBit(ord + 1)) {
+            terms.add(segment.term(ord));
+        }
+    }
+
+    @Override
+    public void removeTerm(int termId, String term) {
+        terms.remove(term);
+    }
+
+    /**
+     * Builds a new FST of the terms once {@code minTerms} of them are buffered.
+     */
+    public boolean rebuild(int minTerms) throws IOException {
+        return terms.rebuild(minTerms);
+    }
+
+    @Override
+    public String sectionName() {
+        return "prefixFst";
+    }
+
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        return terms.freeze()::writeTo;
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            terms.readFrom(in);
+        }
+    }
+
     public List<String> termsStartWith(String prefix) {
-        String end = prefix + Character.MAX_VALUE;
-        return terms.subSet(prefix, true, end, true).stream()
-                .filter(term -> term.startsWith(prefix))
-                .toList();
+        return terms.startingWith(prefix);
+    }
+
+    /**
+     * @return the first {@code max} terms starting with the prefix from {@code from} on, sorted
+     */
+    public List<String> termsStartWith(String prefix, String from, int max) {
+        return terms.startingWith(prefix, from, max);
+    }
+
+    public FstTermSet.Stats stats() {
+        return terms.stats();
     }
 }
\ No newline at end of file
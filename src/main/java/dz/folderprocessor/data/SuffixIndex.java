@@ -1,17 +1,25 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.indexing.VocabularyIndex;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.concurrent.ConcurrentSkipListSet;
 
+/**
+ * Terms by suffix, kept reversed in an {@link FstTermSet} rebuilt as terms accumulate.
+ */
 @Component
-public class SuffixIndex {
+public class SuffixIndex implements IndexingSink, VocabularyIndex, PersistentIndex {
 
-    private final NavigableSet<String> reversedTerms = new ConcurrentSkipListSet<>();
+    private final FstTermSet reversedTerms = new FstTermSet();
 
     @EventListener
     public void handleTermRead(TermReadEvent event) {
@@ -22,12 +30,50 @@ public class SuffixIndex {
         reversedTerms.add(reversedTerm);
     }
 
+    @Override
+    public void index(int docId, DocumentSegment segment) {
+        for (int ord = segment.newTerms().nextSetBit(0); ord >= 0; ord = segment.newTerms().nextSetBit(ord + 1)) {
+            reversedTerms.add(new StringBuilder(segment.term(ord)).reverse().toString());
+        }
+    }
+
+    @Override
+    public void removeTerm(int termId, String term) {
+        reversedTerms.remove(new StringBuilder(term).reverse().toString());
+    }
+
+    /**
+     * Builds a new FST of the terms once {@code minTerms} of them are buffered.
+     */
+    public boolean rebuild(int minTerms) throws IOException {
+        return reversedTerms.rebuild(minTerms);
+    }
+
+    @Override
+    public String sectionName() {
+        return "suffixFst";
+    }
+
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        return reversedTerms.freeze()::writeTo;
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            reversedTerms.readFrom(in);
+        }
+    }
+
     public List<String> endsWith(String suffix) {
         String reversedSuffix = new StringBuilder(suffix).reverse().toString();
-
-        String end = reversedSuffix + Character.MAX_VALUE;
-        return reversedTerms.subSet(reversedSuffix, true, end, true).stream()
+        return reversedTerms.startingWith(reversedSuffix).stream()
                 .map(s -> new StringBuilder(s).reverse().toString())
                 .toList();
     }
+
+    public FstTermSet.Stats stats() {
+        return reversedTerms.stats();
+    }
 }
@@ -1,29 +1,118 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.indexing.VocabularyIndex;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.SortedIntSet;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Maps every trigram to the ids of the terms containing it, kept as sorted {@code int} arrays.
+ */
 @Component
-public class TrigramIndex {
+@RequiredArgsConstructor
+public class TrigramIndex implements IndexingSink, VocabularyIndex, PersistentIndex {
 
-    private final Map<String, Set<String>> index;
+    private final Dictionary dictionary;
+    private final BlockAllocator postingsAllocator;
 
-    public TrigramIndex() {
-        this.index = new ConcurrentHashMap<>();
-    }
+    private final Map<String, SortedIntSet> index = new ConcurrentHashMap<>();
 
     @EventListener
     public void handleTermRead(TermReadEvent event) {
-        String term = event.getTerm();
+        addTerm(dictionary.addTerm(event.getTerm()), event.getTerm());
+    }
+
+    @Override
+    public void index(int docId, DocumentSegment segment) {
+        for (int ord = segment.newTerms().nextSetBit(0); ord >= 0; ord = segment.newTerms().nextSetBit(ord + 1)) {
+            addTerm(segment.termId(ord), segment.term(ord));
+        }
+    }
+
+    private void addTerm(int termId, String term) {
         Set<String> trigrams = generateTrigrams(term);
         
         for (String trigram : trigrams) {
-            index.computeIfAbsent(trigram, k -> ConcurrentHashMap.newKeySet())
-                    .add(term);
+            index.computeIfAbsent(trigram, k -> new SortedIntSet(postingsAllocator))
+                    .add(termId);
+        }
+    }
+
+    @Override
+    public void removeTerm(int termId, String term) {
+        for (String trigram : generateTrigrams(term)) {
+            index.computeIfPresent(trigram, (k, termIds) -> {
+                termIds.remove(termId);
+                if (termIds.isEmpty()) {
+                    termIds.release();
+                    return null;
+                }
+                return termIds;
+            });
+        }
+    }
+
+    @Override
+    public String sectionName() {
+        return "trigrams";
+    }
+
+    /**
+     * Keeps the term ids the dictionary had assigned at the snapshot, the leading part of each ascending set.
+     */
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        int termLimit = dictionary.maxTermId();
+        return out -> {
+            List<String> trigrams = new ArrayList<>();
+            List<int[]> termIdSets = new ArrayList<>();
+            for (Map.Entry<String, SortedIntSet> entry : index.entrySet()) {
+                int[] termIds = entry.getValue().toArray();
+                int kept = 0;
+                while (kept < termIds.length && termIds[kept] < termLimit) {
+                    kept++;
+                }
+                if (kept > 0) {
+                    trigrams.add(entry.getKey());
+                    termIdSets.add(Arrays.copyOf(termIds, kept));
+                }
+            }
+
+            out.writeInt(trigrams.size());
+            for (int i = 0; i < trigrams.size(); i++) {
+                out.writeUTF(trigrams.get(i));
+                out.writeInt(termIdSets.get(i).length);
+                for (int termId : termIdSets.get(i)) {
+                    out.writeInt(termId);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                SortedIntSet termIds = new SortedIntSet(postingsAllocator);
+                index.put(in.readUTF(), termIds);
+                int size = in.readInt();
+                for (int k = 0; k < size; k++) {
+                    termIds.add(in.readInt());
+                }
+            }
         }
     }
 
@@ -59,7 +148,33 @@ public class TrigramIndex {
     }
 
     public Set<String> contains(String trigram) {
-        return index.getOrDefault(trigram, Collections.emptySet());
+        SortedIntSet termIds = index.get(trigram);
+        if (termIds == null) {
+            return Collections.emptySet();
+        }
+        return terms(termIds.toArray());
+    }
+
+    /**
+     * @return the terms of the ids, leaving out those removed from the dictionary
+     */
+    public Set<String> terms(int[] termIds) {
+        Set<String> terms = new HashSet<>();
+        for (int termId : termIds) {
+            String term = dictionary.term(termId);
+            if (term != null) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return ids of the terms containing the trigram, in ascending order
+     */
+    public int[] termIds(String trigram) {
+        SortedIntSet termIds = index.get(trigram);
+        return termIds == null ? new int[0] : termIds.toArray();
     }
 
     public boolean containsTrigram(String trigram) {
@@ -1,47 +1,187 @@
 package dz.folderprocessor.data;
 
 import dz.folderprocessor.events.BigramReadEvent;
+import dz.folderprocessor.events.DocumentReadEvent;
+import dz.folderprocessor.indexing.CompactableIndex;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.IntList;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Positional postings per word pair, stored compressed in {@link Postings}. A pair is keyed by the term
+ * ids of its two words packed into one {@code long}, so no bigram string is ever built while indexing.
+ * <p>
+ * All changes come from the publisher thread; the size counters are only written there.
+ */
 @Component
-public class WordPairIndex implements WordSearchIndex, PositionIndex {
+@RequiredArgsConstructor
+public class WordPairIndex implements WordSearchIndex, PositionIndex, IndexingSink, CompactableIndex,
+        PersistentIndex {
 
-    private final Map<String, Map<Integer, List<Integer>>> index;
+    private final Dictionary dictionary;
+    private final BlockAllocator postingsAllocator;
 
-    public WordPairIndex() {
-        this.index = new ConcurrentHashMap<>();
-    }
+    private final Map<Long, Postings> index = new ConcurrentHashMap<>();
+
+    // positions of the document currently replayed as events, appended once it is complete
+    private final Map<Long, IntList> pending = new HashMap<>();
+    private int pendingDoc = -1;
+
+    private volatile long documentCount;
+    private volatile long positionCount;
+    private volatile long byteCount;
 
     @EventListener
     public void handleBigramRead(BigramReadEvent event) {
         String wordPair = event.getBigram();
+        int separator = wordPair.indexOf(' ');
+        long key = key(dictionary.addTerm(wordPair.substring(0, separator)),
+                dictionary.addTerm(wordPair.substring(separator + 1)));
         int fileId = event.getFileId();
         int position = event.getPosition();
 
-        index.computeIfAbsent(wordPair, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(fileId, k -> new ArrayList<>())
-                .add(position);
+        if (fileId != pendingDoc) {
+            flushPending();
+            pendingDoc = fileId;
+        }
+        pending.computeIfAbsent(key, k -> new IntList()).add(position);
+    }
+
+    @EventListener
+    public void handleDocumentRead(DocumentReadEvent event) {
+        flushPending();
+    }
+
+    @Override
+    public void index(int docId, DocumentSegment segment) {
+        for (int ord = 0; ord < segment.bigramCount(); ord++) {
+            int[] positions = segment.bigramPositions(ord);
+            long key = key(segment.termId(segment.bigramFirst(ord)), segment.termId(segment.bigramSecond(ord)));
+            append(key, docId, positions, positions.length);
+        }
+    }
+
+    @Override
+    public long[] compactionKeys() {
+        return index.keySet().stream().mapToLong(Long::longValue).toArray();
     }
 
+    @Override
+    public long compact(long key, BitSet deletedDocs) {
+        Postings postings = index.get(key);
+        if (postings == null) {
+            return 0;
+        }
+
+        int documentsBefore = postings.docCount();
+        int bytesBefore = postings.sizeInBytes();
+        long removed = postings.remove(deletedDocs);
+        documentCount -= documentsBefore - postings.docCount();
+        byteCount -= bytesBefore - postings.sizeInBytes();
+        positionCount -= removed;
+        if (postings.isEmpty()) {
+            postings.release();
+            index.remove(key);
+        }
+        return removed;
+    }
+
+    /**
+     * Decodes the whole postings list of a word pair; meant for inspection, queries use
+     * {@link #getDocuments(String)}.
+     */
     public Map<Integer, List<Integer>> getDocumentsWithPositions(String wordPair) {
-        return index.getOrDefault(wordPair, Collections.emptyMap());
+        try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+            return Postings.toMap(getDocuments(wordPair));
+        }
     }
 
     @Override
-    public Set<Integer> getDocuments(String wordPair) {
-        return index.getOrDefault(wordPair, Collections.emptyMap()).keySet();
+    public PostingsIterator getDocuments(String wordPair) {
+        long key = key(wordPair);
+        Postings postings = key < 0 ? null : index.get(key);
+        return postings == null ? PostingsIterator.empty() : postings.iterator();
     }
 
     public boolean containsWordPair(String wordPair) {
-        return index.containsKey(wordPair);
+        long key = key(wordPair);
+        return key >= 0 && index.containsKey(key);
     }
 
     @Override
-    public Set<Integer> getPositions(Integer fileId, String term) {
-        return new HashSet<>(index.get(term).get(fileId));
+    public int[] getPositions(int fileId, String wordPair) {
+        try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+            PostingsIterator postings = getDocuments(wordPair);
+            return postings.advance(fileId) == fileId ? postings.positions() : new int[0];
+        }
+    }
+
+    @Override
+    public String sectionName() {
+        return "wordPairs";
+    }
+
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        return out -> {
+            try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+                PostingsSections.write(out, compactionKeys(), index::get, maxDocId);
+            }
+        };
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        PostingsSections.read(section, postingsAllocator, (postings, key) -> {
+            index.put(key, postings);
+            documentCount += postings.docCount();
+            positionCount += postings.positionCount();
+            byteCount += postings.sizeInBytes();
+        });
+    }
+
+    public PostingsStats stats() {
+        return PostingsStats.of(index.size(), documentCount, positionCount, byteCount);
+    }
+
+    private void append(long key, int docId, int[] positions, int count) {
+        byteCount += index.computeIfAbsent(key, k -> new Postings(postingsAllocator)).append(docId, positions, count);
+        documentCount++;
+        positionCount += count;
+    }
+
+    private void flushPending() {
+        for (Map.Entry<Long, IntList> entry : pending.entrySet()) {
+            IntList positions = entry.getValue();
+            append(entry.getKey(), pendingDoc, positions.toArray(), positions.size());
+        }
+        pending.clear();
+    }
+
+    /**
+     * @return the key of a pair of two space-separated terms, or -1 if either term is unknown
+     */
+    private long key(String wordPair) {
+        int separator = wordPair.indexOf(' ');
+        if (separator < 0) {
+            return -1;
+        }
+        int first = dictionary.termId(wordPair.substring(0, separator));
+        int second = dictionary.termId(wordPair.substring(separator + 1));
+        return first < 0 || second < 0 ? -1 : key(first, second);
+    }
+
+    private static long key(int firstTermId, int secondTermId) {
+        return ((long) firstTermId << 32) | secondTermId;
     }
-}
\ No newline at end of file
+}
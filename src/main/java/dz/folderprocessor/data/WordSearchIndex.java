@@ -1,7 +1,10 @@
 package dz.folderprocessor.data;
 
-import java.util.Set;
-
 public interface WordSearchIndex {
-    Set<Integer> getDocuments(String term);
+
+    /**
+     * Returns a fresh iterator over the documents containing the key, in ascending id order. The iterator
+     * reads the index storage directly and must only be used inside the postings allocator's read guard.
+     */
+    PostingsIterator getDocuments(String term);
 }
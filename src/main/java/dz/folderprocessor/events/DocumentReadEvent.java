@@ -0,0 +1,23 @@
+package dz.folderprocessor.events;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published after all term and bigram events of one document, so listeners that buffer per document
+ * can complete it.
+ */
+@Getter
+@Setter
+public class DocumentReadEvent extends ApplicationEvent {
+
+    private String path;
+    private int fileId;
+
+    public DocumentReadEvent(Object source, String path, int fileId) {
+        super(source);
+        this.path = path;
+        this.fileId = fileId;
+    }
+}
@@ -0,0 +1,225 @@
+package dz.folderprocessor.indexing;
+
+import dz.folderprocessor.FileProcessor;
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.config.PathProps;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.persistence.SegmentStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.endpoint.SourcePollingChannelAdapter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes everything already present in {@code path.scan} before live watching starts.
+ * <p>
+ * The folder tree is walked in parallel, the files are sorted largest-first and submitted in that order
+ * to a work-stealing {@link ForkJoinPool}, so the long books start early and small files fill the gaps
+ * at the end. Once the initial load has finished the folder watcher is started; it skips files whose
+ * indexed version is current and picks up everything created or modified during the load.
+ * <p>
+ * When a persisted segment exists it is loaded first and the write-ahead log is replayed on top of it;
+ * the bootstrap then only indexes files that are new or changed since.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BootstrapLoader {
+
+    public static final String FOLDER_INBOUND_ADAPTER = "folderInboundAdapter";
+
+    private static final long PROGRESS_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final PathProps pathProps;
+    private final IndexingProps indexingProps;
+    private final FileProcessor fileProcessor;
+    private final ApplicationContext applicationContext;
+    private final SegmentStore segmentStore;
+    private final IndexPublisher indexPublisher;
+    private final DocumentRegistry documentRegistry;
+
+    private final AtomicLong totalFiles = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong doneFiles = new AtomicLong();
+    private final AtomicLong doneBytes = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong lastProgressLog = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile State state = State.PENDING;
+
+    public enum State { PENDING, RUNNING, DONE }
+
+    public record Status(State state, long totalFiles, long doneFiles, long failedFiles,
+                         long totalBytes, long doneBytes, double megabytesPerSecond) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        segmentStore.load();
+        indexPublisher.recover();
+
+        if (!indexingProps.bootstrapEnabled()) {
+            state = State.DONE;
+            startWatching();
+            return;
+        }
+
+        Thread thread = new Thread(this::run, "bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Status status() {
+        long end = state == State.DONE ? endNanos : System.nanoTime();
+        return new Status(state, totalFiles.get(), doneFiles.get(), failedFiles.get(),
+                totalBytes.get(), doneBytes.get(),
+                IngestMetrics.megabytesPerSecond(doneBytes.get(), end - startNanos));
+    }
+
+    private void run() {
+        state = State.RUNNING;
+        startNanos = System.nanoTime();
+        lastProgressLog.set(startNanos);
+
+        int threads = indexingProps.bootstrapThreads() > 0
+                ? indexingProps.bootstrapThreads()
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Path root = pathProps.scan();
+            if (Files.isDirectory(root)) {
+                load(pool, root);
+                segmentStore.commitIfChanged();
+            } else {
+                log.info("Bootstrap skipped, folder does not exist: {}", root);
+            }
+        } catch (Exception e) {
+            log.error("Bootstrap failed, continuing with live watching", e);
+        } finally {
+            pool.shutdown();
+            endNanos = System.nanoTime();
+            state = State.DONE;
+            startWatching();
+        }
+    }
+
+    private void startWatching() {
+        applicationContext.getBean(FOLDER_INBOUND_ADAPTER, SourcePollingChannelAdapter.class).start();
+        log.info("Folder watcher started");
+    }
+
+    private void load(ForkJoinPool pool, Path root) {
+        List<FileEntry> files = pool.invoke(new ScanTask(root));
+        files.sort(Comparator.comparingLong(FileEntry::size).reversed());
+
+        totalFiles.set(files.size());
+        totalBytes.set(files.stream().mapToLong(FileEntry::size).sum());
+        log.info("Bootstrap started: {} files, {} MB, {} threads",
+                files.size(), totalBytes.get() / (1024 * 1024), pool.getParallelism());
+
+        // External submissions are taken by the workers in submission order, i.e. largest first
+        Phaser phaser = new Phaser(1);
+        for (FileEntry file : files) {
+            phaser.register();
+            pool.execute(() -> {
+                try {
+                    index(file);
+                } finally {
+                    phaser.arriveAndDeregister();
+                }
+            });
+        }
+        phaser.arriveAndAwaitAdvance();
+
+        Status status = status();
+        log.info("Bootstrap finished: {} files ({} failed), {} MB in {} s, {} MB/s",
+                status.doneFiles(), status.failedFiles(), status.doneBytes() / (1024 * 1024),
+                (System.nanoTime() - startNanos) / 1_000_000_000,
+                String.format("%.2f", status.megabytesPerSecond()));
+    }
+
+    private void index(FileEntry file) {
+        try {
+            fileProcessor.processFile(file.path());
+        } catch (Exception e) {
+            failedFiles.incrementAndGet();
+            log.error("Bootstrap failed to index {}", file.path(), e);
+        }
+        doneFiles.incrementAndGet();
+        doneBytes.addAndGet(file.size());
+        logProgress();
+    }
+
+    private void logProgress() {
+        long now = System.nanoTime();
+        long last = lastProgressLog.get();
+        if (now - last >= PROGRESS_INTERVAL_NANOS && lastProgressLog.compareAndSet(last, now)) {
+            Status status = status();
+            log.info("Bootstrap progress: {}/{} files, {}% of bytes, {} MB/s",
+                    status.doneFiles(), status.totalFiles(),
+                    status.totalBytes() == 0 ? 100 : status.doneBytes() * 100 / status.totalBytes(),
+                    String.format("%.2f", status.megabytesPerSecond()));
+        }
+    }
+
+    /**
+     * @return true if the file was restored from the segment and has not changed since
+     */
+    private boolean isIndexed(Path file) throws IOException {
+        return documentRegistry.isUpToDate(file.toString(), Files.getLastModifiedTime(file).toMillis());
+    }
+
+    private record FileEntry(Path path, long size) {}
+
+    /**
+     * Lists one directory and forks a subtask per subdirectory.
+     */
+    private class ScanTask extends RecursiveTask<List<FileEntry>> {
+
+        private final Path directory;
+
+        ScanTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<FileEntry> compute() {
+            List<FileEntry> files = new ArrayList<>();
+            List<ScanTask> subdirectories = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry)) {
+                        ScanTask task = new ScanTask(entry);
+                        task.fork();
+                        subdirectories.add(task);
+                    } else if (fileProcessor.isSupported(entry) && !isIndexed(entry)) {
+                        files.add(new FileEntry(entry, Files.size(entry)));
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Bootstrap failed to list {}", directory, e);
+            }
+
+            for (ScanTask task : subdirectories) {
+                files.addAll(task.join());
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dz.folderprocessor.indexing;
+
+import java.util.BitSet;
+
+/**
+ * An index holding per-document postings that the compactor can purge after documents are replaced.
+ */
+public interface CompactableIndex {
+
+    /**
+     * @return a snapshot of the keys to visit in a compaction pass: term ids, or packed term id pairs
+     */
+    long[] compactionKeys();
+
+    /**
+     * Drops the postings of deleted documents under one key and removes the key if nothing is left.
+     *
+     * @param key         key returned by {@link #compactionKeys()}
+     * @param deletedDocs ids of documents that are no longer live
+     * @return number of removed occurrences
+     */
+    long compact(long key, BitSet deletedDocs);
+}
@@ -0,0 +1,133 @@
+package dz.folderprocessor.indexing;
+
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.persistence.PersistentIndex;
+import dz.folderprocessor.persistence.SegmentSection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Content fingerprints of the indexed documents, used to index each distinct file content only once.
+ * <p>
+ * The fingerprint is the file size plus a CRC32C of the raw bytes, which the JDK computes with hardware
+ * instructions, so hashing costs a small fraction of parsing. A fingerprint match is only a candidate:
+ * the two files are compared byte by byte before the new path is treated as a duplicate, so a checksum
+ * collision never merges different documents.
+ */
+@Component
+@RequiredArgsConstructor
+public class Deduplicator implements PersistentIndex {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DocumentRegistry documentRegistry;
+
+    private final Map<Fingerprint, Original> originals = new ConcurrentHashMap<>();
+
+    public record Fingerprint(long size, int checksum) {}
+
+    /**
+     * Published document holding the postings for a fingerprint.
+     */
+    public record Original(int docId, int tokenCount) {}
+
+    public Fingerprint fingerprint(Path path) throws IOException {
+        CRC32C checksum = new CRC32C();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                checksum.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new Fingerprint(size, (int) checksum.getValue());
+    }
+
+    /**
+     * @return the live document with exactly the same content as the file, or null if there is none
+     */
+    public Original findOriginal(Fingerprint fingerprint, Path path) {
+        Original original = originals.get(fingerprint);
+        if (original == null || !documentRegistry.isLive(original.docId())) {
+            return null;
+        }
+
+        String originalPath = documentRegistry.getDocumentPath(original.docId());
+        if (originalPath == null || originalPath.equals(path.toString())) {
+            return null;
+        }
+        try {
+            return Files.mismatch(Path.of(originalPath), path) == -1 ? original : null;
+        } catch (IOException e) {
+            // the original changed or disappeared meanwhile, index the file on its own
+            return null;
+        }
+    }
+
+    public void register(Fingerprint fingerprint, int docId, int tokenCount) {
+        originals.put(fingerprint, new Original(docId, tokenCount));
+    }
+
+    /**
+     * Drops fingerprints of documents purged by the compactor.
+     */
+    public void forgetPurged(BitSet purged) {
+        originals.values().removeIf(original -> purged.get(original.docId()));
+    }
+
+    @Override
+    public String sectionName() {
+        return "fingerprints";
+    }
+
+    /**
+     * Fingerprints registered after the snapshot are left out; one replaced meanwhile by a newer copy is
+     * lost, which only costs indexing that content once more.
+     */
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        return out -> {
+            Map<Fingerprint, Original> snapshot = new HashMap<>();
+            originals.forEach((fingerprint, original) -> {
+                if (original.docId() <= maxDocId) {
+                    snapshot.put(fingerprint, original);
+                }
+            });
+            write(out, snapshot);
+        };
+    }
+
+    private static void write(DataOutputStream out, Map<Fingerprint, Original> snapshot) throws IOException {
+        out.writeInt(snapshot.size());
+        for (Map.Entry<Fingerprint, Original> entry : snapshot.entrySet()) {
+            out.writeLong(entry.getKey().size());
+            out.writeInt(entry.getKey().checksum());
+            out.writeInt(entry.getValue().docId());
+            out.writeInt(entry.getValue().tokenCount());
+        }
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                originals.put(new Fingerprint(in.readLong(), in.readInt()), new Original(in.readInt(), in.readInt()));
+            }
+        }
+    }
+}
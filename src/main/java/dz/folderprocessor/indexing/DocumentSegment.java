@@ -0,0 +1,141 @@
+package dz.folderprocessor.indexing;
+
+import java.util.BitSet;
+
+/**
+ * Private mini-segment of one document: its distinct terms and bigrams with ascending positions.
+ * <p>
+ * A segment is built by the worker that analyzed the document and then handed to {@link IndexPublisher},
+ * which merges it into the shared indexes in a single publish step. Terms are addressed by a
+ * document-local ordinal; a bigram is a pair of such ordinals. Apart from the dictionary term ids and
+ * new-term marks set during publishing, a segment is immutable.
+ */
+public class DocumentSegment {
+
+    private final String path;
+    private final long lastModified;
+    private final int tokenCount;
+
+    private final String[] terms;
+    private final int[][] termPositions;
+    private final int[] termIds;
+
+    private final long[] bigrams;
+    private final int[][] bigramPositions;
+
+    private final BitSet newTerms = new BitSet();
+
+    /**
+     * @param bigrams term ordinals of each distinct bigram, the first word in the upper 32 bits
+     */
+    public DocumentSegment(String path, long lastModified, int tokenCount,
+                           String[] terms, int[][] termPositions,
+                           long[] bigrams, int[][] bigramPositions) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.tokenCount = tokenCount;
+        this.terms = terms;
+        this.termPositions = termPositions;
+        this.termIds = new int[terms.length];
+        this.bigrams = bigrams;
+        this.bigramPositions = bigramPositions;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @return modification time of the source file, in epoch milliseconds, as seen before it was read
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    public String term(int ord) {
+        return terms[ord];
+    }
+
+    /**
+     * @return dictionary id of the term, valid once the dictionary has indexed the segment
+     */
+    public int termId(int ord) {
+        return termIds[ord];
+    }
+
+    /**
+     * Records the dictionary id of a term. Called by the dictionary while publishing.
+     */
+    public void setTermId(int ord, int termId) {
+        termIds[ord] = termId;
+    }
+
+    public int frequency(int ord) {
+        return termPositions[ord].length;
+    }
+
+    /**
+     * @return ascending word positions of the term; the array must not be modified
+     */
+    public int[] positions(int ord) {
+        return termPositions[ord];
+    }
+
+    public int bigramCount() {
+        return bigrams.length;
+    }
+
+    /**
+     * @return term ordinal of the first word of the bigram
+     */
+    public int bigramFirst(int ord) {
+        return (int) (bigrams[ord] >>> 32);
+    }
+
+    /**
+     * @return term ordinal of the second word of the bigram
+     */
+    public int bigramSecond(int ord) {
+        return (int) bigrams[ord];
+    }
+
+    /**
+     * @return the bigram as text, two terms separated by a space
+     */
+    public String bigram(int ord) {
+        return terms[bigramFirst(ord)] + " " + terms[bigramSecond(ord)];
+    }
+
+    /**
+     * @return ascending positions of the first word of each bigram occurrence; the array must not be modified
+     */
+    public int[] bigramPositions(int ord) {
+        return bigramPositions[ord];
+    }
+
+    /**
+     * Marks a term as not yet present in the global vocabulary. Called by the dictionary while publishing.
+     */
+    public void markNewTerm(int ord) {
+        newTerms.set(ord);
+    }
+
+    public boolean isNewTerm(int ord) {
+        return newTerms.get(ord);
+    }
+
+    /**
+     * @return ordinals of the terms this segment adds to the global vocabulary
+     */
+    public BitSet newTerms() {
+        return newTerms;
+    }
+}
@@ -0,0 +1,149 @@
+package dz.folderprocessor.indexing;
+
+import dz.folderprocessor.util.LongIntMap;
+import org.apache.lucene.analysis.CharArrayMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact token batch for a single document, filled privately by the worker that analyzes it.
+ * <p>
+ * Every distinct term is stored once and receives a document-local ordinal; the token stream itself
+ * is kept as parallel {@code int} arrays of term ordinals and word positions. {@link #toSegment(String, long)}
+ * groups the batch into per-term and per-bigram postings.
+ * <p>
+ * Instances are filled and consumed by a single thread and are not thread-safe.
+ */
+public class DocumentTokens {
+
+    private final CharArrayMap<Integer> termOrds = new CharArrayMap<>(256, false);
+    private final List<String> terms = new ArrayList<>();
+
+    private int[] ords = new int[1024];
+    private int[] positions = new int[1024];
+    private int size;
+
+    /**
+     * Appends a token taken directly from an analyzer's term buffer.
+     *
+     * @param buffer   term characters, only the first {@code length} are used
+     * @param length   term length
+     * @param position word position of the token in the document
+     */
+    public void add(char[] buffer, int length, int position) {
+        Integer ord = termOrds.get(buffer, 0, length);
+        if (ord == null) {
+            String term = new String(buffer, 0, length);
+            ord = terms.size();
+            terms.add(term);
+            termOrds.put(term, ord);
+        }
+
+        if (size == ords.length) {
+            ords = Arrays.copyOf(ords, size * 2);
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        ords[size] = ord;
+        positions[size] = position;
+        size++;
+    }
+
+    /**
+     * Appends the tokens of the next part of the same document, analyzed separately with positions
+     * starting from zero. Positions are shifted to continue after the last token of this batch, and the
+     * bigram spanning the two parts falls out of {@link #toSegment(String, long)} like any other.
+     */
+    public void append(DocumentTokens part) {
+        int[] ordMap = new int[part.terms.size()];
+        for (int ord = 0; ord < ordMap.length; ord++) {
+            String term = part.terms.get(ord);
+            Integer mapped = termOrds.get(term);
+            if (mapped == null) {
+                mapped = terms.size();
+                terms.add(term);
+                termOrds.put(term, mapped);
+            }
+            ordMap[ord] = mapped;
+        }
+
+        int required = size + part.size;
+        if (required > ords.length) {
+            int capacity = Math.max(required, ords.length * 2);
+            ords = Arrays.copyOf(ords, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        int positionBase = size == 0 ? 0 : positions[size - 1] + 1;
+        for (int i = 0; i < part.size; i++) {
+            ords[size + i] = ordMap[part.ords[i]];
+            positions[size + i] = positionBase + part.positions[i];
+        }
+        size = required;
+    }
+
+    /**
+     * @return number of tokens in the document
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Groups the batch into an immutable per-document segment.
+     *
+     * @param path         path of the source document
+     * @param lastModified modification time of the source file when it was opened
+     */
+    public DocumentSegment toSegment(String path, long lastModified) {
+        String[] termArray = terms.toArray(String[]::new);
+        int[][] termPositions = group(ords, positions, size, termArray.length);
+
+        int pairs = Math.max(0, size - 1);
+        int[] pairOrds = new int[pairs];
+        LongIntMap pairMap = new LongIntMap(Math.min(pairs, termArray.length * 4));
+        long[] keys = new long[16];
+        int distinct = 0;
+
+        for (int i = 0; i < pairs; i++) {
+            long key = ((long) ords[i] << 32) | ords[i + 1];
+            int pairOrd = pairMap.get(key);
+            if (pairOrd < 0) {
+                pairOrd = distinct++;
+                pairMap.put(key, pairOrd);
+                if (pairOrd == keys.length) {
+                    keys = Arrays.copyOf(keys, keys.length * 2);
+                }
+                keys[pairOrd] = key;
+            }
+            pairOrds[i] = pairOrd;
+        }
+
+        int[][] bigramPositions = group(pairOrds, positions, pairs, distinct);
+
+        return new DocumentSegment(path, lastModified, size, termArray, termPositions,
+                Arrays.copyOf(keys, distinct), bigramPositions);
+    }
+
+    /**
+     * Groups values by ordinal with a counting sort, preserving their order within a group.
+     */
+    private static int[][] group(int[] keys, int[] values, int count, int groupCount) {
+        int[] counts = new int[groupCount];
+        for (int i = 0; i < count; i++) {
+            counts[keys[i]]++;
+        }
+
+        int[][] groups = new int[groupCount][];
+        for (int g = 0; g < groupCount; g++) {
+            groups[g] = new int[counts[g]];
+        }
+
+        int[] cursor = new int[groupCount];
+        for (int i = 0; i < count; i++) {
+            int g = keys[i];
+            groups[g][cursor[g]++] = values[i];
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,184 @@
+package dz.folderprocessor.indexing;
+
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.events.BigramReadEvent;
+import dz.folderprocessor.events.DocumentReadEvent;
+import dz.folderprocessor.events.TermReadEvent;
+import dz.folderprocessor.persistence.WriteAheadLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Single publish step that merges private document segments into the shared indexes.
+ * <p>
+ * Publishing is serialized, so the indexes are only ever mutated by one thread and never per token.
+ * A document becomes visible to queries through {@link DocumentRegistry#publish(int)} after every
+ * index has received it, so queries see a document either fully indexed or not at all. A new version
+ * of an already indexed file gets a fresh id and replaces the old one in the same step.
+ * <p>
+ * Every operation is written to the {@link WriteAheadLog} inside the step, before it is applied, and
+ * returns once the log reports it durable.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexPublisher {
+
+    private final DocumentRegistry documentRegistry;
+    private final List<IndexingSink> sinks;
+    private final IndexingProps indexingProps;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WriteAheadLog writeAheadLog;
+
+    private final Object publishLock = new Object();
+    private final Object maintenanceLock = new Object();
+
+    /**
+     * @return id of the published document
+     */
+    public int publish(DocumentSegment segment) {
+        byte[] record = writeAheadLog.encode(new WriteAheadLog.Publish(segment));
+        long lsn;
+        int docId;
+        synchronized (publishLock) {
+            lsn = writeAheadLog.append(record);
+            docId = apply(segment);
+        }
+        writeAheadLog.awaitDurable(lsn);
+        return docId;
+    }
+
+    /**
+     * Registers a file with the same content as an already published document, sharing its postings.
+     *
+     * @return false if the original is no longer live and the file has to be indexed normally
+     */
+    public boolean alias(String path, int docId, long lastModified) {
+        byte[] record = writeAheadLog.encode(new WriteAheadLog.Alias(path, docId, lastModified));
+        long lsn;
+        synchronized (publishLock) {
+            if (!documentRegistry.isLive(docId)) {
+                return false;
+            }
+            lsn = writeAheadLog.append(record);
+            applyAlias(path, docId, lastModified);
+        }
+        writeAheadLog.awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * Removes a deleted file from the live documents.
+     *
+     * @return true if the file was indexed
+     */
+    public boolean delete(String path) {
+        byte[] record = writeAheadLog.encode(new WriteAheadLog.Delete(path));
+        long lsn;
+        synchronized (publishLock) {
+            if (documentRegistry.getDocumentId(path) < 0) {
+                return false;
+            }
+            lsn = writeAheadLog.append(record);
+            documentRegistry.delete(path);
+        }
+        writeAheadLog.awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * Re-applies the operations logged after the loaded segment. Called once at startup, before anything
+     * else is published.
+     */
+    public void recover() {
+        synchronized (publishLock) {
+            writeAheadLog.replay(operation -> {
+                switch (operation) {
+                    case WriteAheadLog.Publish publish -> apply(publish.segment());
+                    case WriteAheadLog.Alias alias -> applyAlias(alias.path(), alias.docId(), alias.lastModified());
+                    case WriteAheadLog.Delete delete -> documentRegistry.delete(delete.path());
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a maintenance step with publishing paused, so it never interleaves with a segment merge.
+     * Callers keep each step short; queries are not blocked.
+     */
+    public void runExclusive(Runnable step) {
+        synchronized (publishLock) {
+            step.run();
+        }
+    }
+
+    /**
+     * Runs a whole maintenance pass, such as a compaction or a segment commit, without any other pass in
+     * between. Publishing goes on; the pass takes {@link #runExclusive(Runnable)} for the steps that need it.
+     */
+    public void runMaintenance(Runnable pass) {
+        synchronized (maintenanceLock) {
+            pass.run();
+        }
+    }
+
+    /**
+     * If a sink fails, the id is discarded, so whatever the other sinks already took of the document is
+     * purged like a deleted version and never becomes visible.
+     */
+    private int apply(DocumentSegment segment) {
+        int docId = documentRegistry.registerDocument(segment.path());
+        boolean published = false;
+        try {
+            if (indexingProps.mode() == IndexingMode.EVENTS) {
+                publishEvents(docId, segment);
+            } else {
+                for (IndexingSink sink : sinks) {
+                    sink.index(docId, segment);
+                }
+            }
+
+            documentRegistry.recordLastModified(segment.path(), segment.lastModified());
+            documentRegistry.publish(docId);
+            published = true;
+        } finally {
+            if (!published) {
+                documentRegistry.discard(docId);
+            }
+        }
+        return docId;
+    }
+
+    private void applyAlias(String path, int docId, long lastModified) {
+        if (!documentRegistry.alias(path, docId)) {
+            log.warn("Alias {} of document {} no longer applies, the document is not live", path, docId);
+            return;
+        }
+        documentRegistry.recordLastModified(path, lastModified);
+    }
+
+    /**
+     * Compatibility path: replays the segment as one event per term and per bigram occurrence, followed by
+     * one event marking the end of the document.
+     */
+    private void publishEvents(int docId, DocumentSegment segment) {
+        String path = segment.path();
+
+        for (int ord = 0; ord < segment.termCount(); ord++) {
+            for (int position : segment.positions(ord)) {
+                eventPublisher.publishEvent(new TermReadEvent(this, segment.term(ord), path, docId, position));
+            }
+        }
+        for (int ord = 0; ord < segment.bigramCount(); ord++) {
+            for (int position : segment.bigramPositions(ord)) {
+                eventPublisher.publishEvent(new BigramReadEvent(this, segment.bigram(ord), path, docId, position));
+            }
+        }
+        eventPublisher.publishEvent(new DocumentReadEvent(this, path, docId));
+    }
+}
@@ -0,0 +1,12 @@
+package dz.folderprocessor.indexing;
+
+public enum IndexingMode {
+    /**
+     * Every index receives one {@link DocumentTokens} batch per document.
+     */
+    BATCH,
+    /**
+     * Compatibility mode: a {@code TermReadEvent}/{@code BigramReadEvent} is published per token.
+     */
+    EVENTS
+}
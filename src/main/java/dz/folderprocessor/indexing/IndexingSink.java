@@ -0,0 +1,13 @@
+package dz.folderprocessor.indexing;
+
+public interface IndexingSink {
+
+    /**
+     * Merges the segment of one document into the index. Called by {@link IndexPublisher} only,
+     * one segment at a time.
+     *
+     * @param docId  id assigned to the document
+     * @param segment the complete private segment of the document
+     */
+    void index(int docId, DocumentSegment segment);
+}
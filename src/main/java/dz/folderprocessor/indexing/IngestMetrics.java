@@ -0,0 +1,119 @@
+package dz.folderprocessor.indexing;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class IngestMetrics {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder analysisAllocatedBytes = new LongAdder();
+    private final LongAdder fingerprintNanos = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder duplicateBytes = new LongAdder();
+    private final LongAdder duplicateNanos = new LongAdder();
+    private final LongAdder savedPositions = new LongAdder();
+
+    private final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Records one processed document.
+     *
+     * @param fileBytes   size of the source file
+     * @param tokenCount  number of tokens produced
+     * @param startNanos  {@link System#nanoTime()} when processing started
+     * @param endNanos    {@link System#nanoTime()} when processing finished
+     */
+    public void recordDocument(long fileBytes, long tokenCount, long startNanos, long endNanos) {
+        documents.increment();
+        bytes.add(fileBytes);
+        tokens.add(tokenCount);
+        busyNanos.add(endNanos - startNanos);
+        firstStart.accumulateAndGet(startNanos, Math::min);
+        lastEnd.accumulateAndGet(endNanos, Math::max);
+    }
+
+    /**
+     * Records heap bytes allocated by the worker thread while analyzing one document.
+     */
+    public void recordAnalysisAllocation(long allocatedBytes) {
+        analysisAllocatedBytes.add(allocatedBytes);
+    }
+
+    /**
+     * Records the time spent hashing a file before deciding whether it has to be indexed.
+     */
+    public void recordFingerprint(long nanos) {
+        fingerprintNanos.add(nanos);
+    }
+
+    /**
+     * Records a file registered as an alias of an already indexed document instead of being indexed.
+     *
+     * @param fileBytes      size of the file
+     * @param tokenCount     number of tokens of the shared document, i.e. postings not created again
+     * @param handlingNanos  time spent on hashing and comparing the file
+     */
+    public void recordDuplicate(long fileBytes, long tokenCount, long handlingNanos) {
+        duplicates.increment();
+        duplicateBytes.add(fileBytes);
+        duplicateNanos.add(handlingNanos);
+        // one term position per token and one bigram position per adjacent pair
+        savedPositions.add(Math.max(0, 2 * tokenCount - 1));
+    }
+
+    public static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes / MB / (nanos / 1e9);
+    }
+
+    /**
+     * Ingest throughput is measured over wall-clock time between the first document start and the last
+     * document end, so it reflects all workers together. Per-worker throughput uses summed busy time.
+     */
+    public Snapshot snapshot() {
+        long totalBytes = bytes.sum();
+        long wallNanos = lastEnd.get() - firstStart.get();
+        long busy = busyNanos.sum();
+        long tokenCount = tokens.sum();
+        return new Snapshot(
+                documents.sum(),
+                totalBytes,
+                tokenCount,
+                megabytesPerSecond(totalBytes, wallNanos),
+                megabytesPerSecond(totalBytes, busy),
+                tokenCount == 0 ? 0 : (double) analysisAllocatedBytes.sum() / tokenCount,
+                fingerprintNanos.sum() / 1_000_000,
+                duplicates.sum(),
+                duplicateBytes.sum(),
+                estimatedSavedMillis(totalBytes, busy),
+                savedPositions.sum()
+        );
+    }
+
+    /**
+     * Parse and index time the duplicates would have taken at the average per-byte cost of indexed
+     * documents, minus the time actually spent recognizing them.
+     */
+    private long estimatedSavedMillis(long indexedBytes, long busy) {
+        if (indexedBytes == 0) {
+            return 0;
+        }
+        double nanosPerByte = (double) busy / indexedBytes;
+        long saved = (long) (duplicateBytes.sum() * nanosPerByte) - duplicateNanos.sum();
+        return Math.max(0, saved / 1_000_000);
+    }
+
+    public record Snapshot(long documents, long bytes, long tokens,
+                           double megabytesPerSecond, double megabytesPerSecondPerWorker,
+                           double analysisBytesPerToken, long fingerprintMillis,
+                           long duplicates, long duplicateBytes, long duplicateSavedMillis,
+                           long duplicateSavedPositions) {}
+}
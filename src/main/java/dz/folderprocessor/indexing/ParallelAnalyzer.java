@@ -0,0 +1,93 @@
+package dz.folderprocessor.indexing;
+
+import dz.folderprocessor.analysis.AnalysisChain;
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.util.Allocations;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Analyzes the parts of one large document in parallel.
+ * <p>
+ * Every part is tokenized into its own {@link DocumentTokens} on a work-stealing pool, with positions
+ * starting from zero. The batches are then appended in document order, which shifts the positions and
+ * restores the bigrams spanning part boundaries, so the result is identical to a sequential analysis.
+ * When called from a fork-join worker, such as the bootstrap loader, the parts are forked into the
+ * caller's pool instead, so the two levels of parallelism share one set of threads.
+ */
+@Component
+public class ParallelAnalyzer implements DisposableBean {
+
+    private final AnalysisChain analysisChain;
+    private final IngestMetrics ingestMetrics;
+    private final ForkJoinPool pool;
+
+    public ParallelAnalyzer(AnalysisChain analysisChain, IngestMetrics ingestMetrics, IndexingProps indexingProps) {
+        this.analysisChain = analysisChain;
+        this.ingestMetrics = ingestMetrics;
+        this.pool = new ForkJoinPool(indexingProps.parallelAnalysisThreads() > 0
+                ? indexingProps.parallelAnalysisThreads()
+                : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Analyzes the parts and closes them.
+     */
+    public DocumentTokens analyze(List<Reader> parts) throws IOException {
+        try {
+            List<PartTask> tasks = parts.stream().map(PartTask::new).toList();
+            if (ForkJoinTask.inForkJoinPool()) {
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+            }
+
+            DocumentTokens tokens = tasks.get(0).join();
+            for (int i = 1; i < tasks.size(); i++) {
+                tokens.append(tasks.get(i).join());
+            }
+            return tokens;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (Reader part : parts) {
+                part.close();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdown();
+    }
+
+    private class PartTask extends RecursiveTask<DocumentTokens> {
+
+        private final Reader part;
+
+        PartTask(Reader part) {
+            this.part = part;
+        }
+
+        @Override
+        protected DocumentTokens compute() {
+            var tokens = new DocumentTokens();
+            long allocatedBefore = Allocations.currentThread();
+            try {
+                analysisChain.analyze(part, tokens::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ingestMetrics.recordAnalysisAllocation(Allocations.currentThread() - allocatedBefore);
+            return tokens;
+        }
+    }
+}
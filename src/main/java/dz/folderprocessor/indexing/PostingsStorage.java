@@ -0,0 +1,12 @@
+package dz.folderprocessor.indexing;
+
+public enum PostingsStorage {
+    /**
+     * Postings and trigram term sets are plain heap arrays.
+     */
+    HEAP,
+    /**
+     * Postings and trigram term sets live in direct buffers outside the GC heap, see {@code NativeArena}.
+     */
+    OFF_HEAP
+}
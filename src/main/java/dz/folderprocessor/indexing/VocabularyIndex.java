@@ -0,0 +1,15 @@
+package dz.folderprocessor.indexing;
+
+/**
+ * An index over the vocabulary itself, from which terms are dropped once no document contains them.
+ */
+public interface VocabularyIndex {
+
+    /**
+     * Removes a term that no longer occurs in any indexed document.
+     *
+     * @param termId id of the term in the {@link dz.folderprocessor.data.Dictionary}
+     * @param term   the term itself
+     */
+    void removeTerm(int termId, String term);
+}
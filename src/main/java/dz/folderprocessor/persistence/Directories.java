@@ -0,0 +1,22 @@
+package dz.folderprocessor.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class Directories {
+
+    private Directories() {
+    }
+
+    /**
+     * Makes the creations, renames and deletions of entries in the directory durable; forcing a file only
+     * covers its contents.
+     */
+    static void force(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dz.folderprocessor.persistence;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * An index saved into the segment file on every snapshot and restored from it at startup.
+ * <p>
+ * A snapshot is taken in two steps. {@link #snapshot(int)} runs with publishing paused for all indexes at
+ * once and only captures what is needed to describe that moment, such as a watermark or a copy of a small
+ * table. The returned writer then streams the section while publishing goes on; it must leave out
+ * everything published after the capture. Compaction does not run until the writer has finished.
+ */
+public interface PersistentIndex {
+
+    @FunctionalInterface
+    interface SectionWriter {
+
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * @return name of the index's section, unique within the segment
+     */
+    String sectionName();
+
+    /**
+     * Captures the index as of now. Called with publishing paused, so it must be cheap.
+     *
+     * @param maxDocId largest document id published at the moment of the snapshot
+     */
+    SectionWriter snapshot(int maxDocId);
+
+    /**
+     * Replaces the content of the index with a section written by its {@link SectionWriter}. Called once at
+     * startup, before any document is indexed; the sections of all indexes are read in parallel, so an index
+     * must not touch another one while reading. Buffers mapped from the section stay valid after the call
+     * and may be kept by the index.
+     */
+    void readFrom(SegmentSection section) throws IOException;
+
+    /**
+     * Called once the segment with the section written last is durably in place.
+     */
+    default void committed() throws IOException {
+    }
+}
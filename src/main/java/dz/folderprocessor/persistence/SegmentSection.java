@@ -0,0 +1,81 @@
+package dz.folderprocessor.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One index's section of an open segment file.
+ */
+public class SegmentSection {
+
+    /**
+     * Largest region mapped as one buffer; buffers are indexed by {@code int}.
+     */
+    public static final long MAX_MAPPING = 1L << 30;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long length;
+
+    SegmentSection(FileChannel channel, long start, long length) {
+        this.channel = channel;
+        this.start = start;
+        this.length = length;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return a buffered sequential reader starting at the given offset of the section; readers of
+     *         different sections do not share a file position and may run in parallel
+     */
+    public DataInputStream open(long offset) {
+        return new DataInputStream(new BufferedInputStream(new PositionalInputStream(start + offset), 64 * 1024));
+    }
+
+    /**
+     * Maps a region of the section read-only; its pages are loaded on first access.
+     *
+     * @param length at most {@link #MAX_MAPPING} bytes
+     */
+    public ByteBuffer map(long offset, long length) throws IOException {
+        if (offset + length > this.length || length > MAX_MAPPING) {
+            throw new IOException("Region " + offset + "+" + length + " outside the section of " + this.length + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start + offset, length);
+    }
+
+    private class PositionalInputStream extends InputStream {
+
+        private long position;
+
+        PositionalInputStream(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            long remaining = start + length - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(count, remaining)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
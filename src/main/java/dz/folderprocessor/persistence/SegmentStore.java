@@ -0,0 +1,292 @@
+package dz.folderprocessor.persistence;
+
+import dz.folderprocessor.config.PathProps;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.indexing.IndexPublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves all {@link PersistentIndex}es into one segment file and restores them at startup, so a restart
+ * does not re-analyze the whole folder.
+ * <p>
+ * The file holds a header, one section per index and a table of contents at the end. A commit pauses
+ * publishing only to capture every index at the same moment (see {@link PersistentIndex#snapshot(int)}),
+ * then writes the sections to a temporary file while ingestion goes on, forces it to disk and renames it
+ * over the previous segment, so a crash always leaves either the old or the new segment intact. On load the
+ * sections are read in parallel; the positional postings are mapped and read in place, only their
+ * directories and the vocabulary structures are read eagerly.
+ * <p>
+ * Persistence is enabled by setting {@code path.index}. Commits happen after the bootstrap load, every
+ * {@code indexing.commit-interval-ms} if anything was published, and on shutdown.
+ */
+@Slf4j
+@Component
+@EnableScheduling
+@RequiredArgsConstructor
+public class SegmentStore implements DisposableBean {
+
+    static final long MAGIC = 0x4650534547534547L;
+    static final int VERSION = 1;
+
+    private static final String FILE_NAME = "index.seg";
+    private static final int TRAILER_BYTES = 2 * Long.BYTES;
+    private static final double GIGABYTE = 1024.0 * 1024 * 1024;
+
+    private final PathProps pathProps;
+    private final IndexPublisher indexPublisher;
+    private final DocumentRegistry documentRegistry;
+    private final List<PersistentIndex> indexes;
+
+    private volatile boolean loaded;
+    private volatile long committedGeneration = -1;
+    private volatile long fileBytes;
+    private volatile long lastCommitMs;
+    private volatile long lastPauseMicros;
+    private volatile long loadMs;
+    private volatile long loadBytes;
+
+    /**
+     * @param lastPauseMicros how long the last commit paused publishing to capture the indexes
+     * @param commitMsPerGb   write time of the last commit scaled to one gigabyte of segment
+     * @param loadMsPerGb     startup load time scaled to one gigabyte of segment
+     */
+    public record Status(boolean enabled, long committedGeneration, long fileBytes, long lastCommitMs,
+                         long lastPauseMicros, double commitMsPerGb, long loadMs, double loadMsPerGb) {}
+
+    /**
+     * Restores the indexes from the last committed segment, if there is one. Must run before anything is
+     * indexed; a damaged segment fails the startup instead of silently re-indexing.
+     */
+    public void load() {
+        Path file = segmentFile();
+        if (file != null && Files.exists(file)) {
+            long start = System.currentTimeMillis();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                Map<String, SegmentSection> sections = readToc(channel);
+                List<String> missing = indexes.stream()
+                        .map(PersistentIndex::sectionName)
+                        .filter(name -> !sections.containsKey(name))
+                        .toList();
+                if (missing.isEmpty()) {
+                    indexPublisher.runExclusive(() -> indexes.parallelStream()
+                            .forEach(index -> readSection(index, sections.get(index.sectionName()))));
+                    fileBytes = channel.size();
+                    loadBytes = fileBytes;
+                    committedGeneration = documentRegistry.generation();
+                    loadMs = System.currentTimeMillis() - start;
+                    log.info("Loaded segment {} ({} MB) in {} ms", file, fileBytes / (1024 * 1024), loadMs);
+                } else {
+                    log.warn("Segment {} has no sections {}, ignoring it and indexing from scratch", file, missing);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load segment " + file, e);
+            }
+        }
+        loaded = true;
+    }
+
+    @Scheduled(fixedDelayString = "${indexing.commit-interval-ms:300000}")
+    public void commitIfChanged() {
+        if (loaded && documentRegistry.generation() != committedGeneration) {
+            commit();
+        }
+    }
+
+    /**
+     * Writes the content of all indexes as of now as the new segment. Publishing is paused only while the
+     * indexes are captured; compaction waits until the segment is in place.
+     */
+    public void commit() {
+        Path file = segmentFile();
+        if (file == null || !loaded) {
+            return;
+        }
+        indexPublisher.runMaintenance(() -> commit(file));
+    }
+
+    public Status status() {
+        return new Status(segmentFile() != null, committedGeneration, fileBytes, lastCommitMs, lastPauseMicros,
+                msPerGb(lastCommitMs, fileBytes), loadMs, msPerGb(loadMs, loadBytes));
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            commitIfChanged();
+        } catch (UncheckedIOException e) {
+            log.error("Failed to commit segment on shutdown", e);
+        }
+    }
+
+    private Path segmentFile() {
+        Path directory = pathProps.index();
+        return directory == null ? null : directory.resolve(FILE_NAME);
+    }
+
+    private void commit(Path file) {
+        long start = System.nanoTime();
+        Map<String, PersistentIndex.SectionWriter> writers = new LinkedHashMap<>();
+        long[] generation = new long[1];
+        indexPublisher.runExclusive(() -> {
+            generation[0] = documentRegistry.generation();
+            int maxDocId = documentRegistry.maxFileId();
+            for (PersistentIndex index : indexes) {
+                writers.put(index.sectionName(), index.snapshot(maxDocId));
+            }
+        });
+        long pauseMicros = (System.nanoTime() - start) / 1000;
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporary = file.resolveSibling(FILE_NAME + ".tmp");
+            long size = write(temporary, writers);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // the rename must be durable before the indexes drop what the segment now holds
+            Directories.force(file.getParent());
+            fileBytes = size;
+            for (PersistentIndex index : indexes) {
+                index.committed();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to commit segment " + file, e);
+        }
+        committedGeneration = generation[0];
+        lastPauseMicros = pauseMicros;
+        lastCommitMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("Committed segment {} ({} MB) in {} ms, publishing paused for {} us",
+                file, fileBytes / (1024 * 1024), lastCommitMs, pauseMicros);
+    }
+
+    private long write(Path temporary, Map<String, PersistentIndex.SectionWriter> writers) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            CountingOutputStream counter = new CountingOutputStream(buffered);
+            DataOutputStream out = new DataOutputStream(counter);
+
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+
+            Map<String, long[]> toc = new HashMap<>();
+            for (Map.Entry<String, PersistentIndex.SectionWriter> writer : writers.entrySet()) {
+                long offset = counter.count;
+                writer.getValue().writeTo(out);
+                toc.put(writer.getKey(), new long[]{offset, counter.count - offset});
+            }
+
+            long tocOffset = counter.count;
+            out.writeInt(toc.size());
+            for (Map.Entry<String, long[]> entry : toc.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+            out.writeLong(tocOffset);
+            out.writeLong(MAGIC);
+            out.flush();
+
+            channel.force(true);
+            return counter.count;
+        }
+    }
+
+    private static double msPerGb(long ms, long bytes) {
+        return bytes == 0 ? 0 : ms * GIGABYTE / bytes;
+    }
+
+    private static Map<String, SegmentSection> readToc(FileChannel channel) throws IOException {
+        long size = channel.size();
+        SegmentSection whole = new SegmentSection(channel, 0, size);
+        if (size < Long.BYTES + Integer.BYTES + TRAILER_BYTES) {
+            throw new IOException("Segment is truncated: " + size + " bytes");
+        }
+
+        try (DataInputStream header = whole.open(0)) {
+            if (header.readLong() != MAGIC) {
+                throw new IOException("Not a segment file");
+            }
+            int version = header.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported segment version " + version);
+            }
+        }
+
+        long tocOffset;
+        try (DataInputStream trailer = whole.open(size - TRAILER_BYTES)) {
+            tocOffset = trailer.readLong();
+            if (trailer.readLong() != MAGIC) {
+                throw new IOException("Segment has no table of contents, it was not fully written");
+            }
+        }
+
+        Map<String, SegmentSection> sections = new HashMap<>();
+        try (DataInputStream in = whole.open(tocOffset)) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long offset = in.readLong();
+                long length = in.readLong();
+                if (offset < 0 || offset + length > tocOffset) {
+                    throw new IOException("Section " + name + " lies outside the segment");
+                }
+                sections.put(name, new SegmentSection(channel, offset, length));
+            }
+        }
+        return sections;
+    }
+
+    private static void readSection(PersistentIndex index, SegmentSection section) {
+        try {
+            index.readFrom(section);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read section " + index.sectionName(), e);
+        }
+    }
+
+    /**
+     * Tracks the position in the file; {@link DataOutputStream#size()} overflows past 2 GB.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
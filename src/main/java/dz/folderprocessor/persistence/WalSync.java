@@ -0,0 +1,20 @@
+package dz.folderprocessor.persistence;
+
+public enum WalSync {
+    /**
+     * No write-ahead log; changes since the last segment commit are lost on a crash.
+     */
+    OFF,
+    /**
+     * Records are handed to the OS but never forced; they survive a JVM crash, not a power loss.
+     */
+    OS,
+    /**
+     * Every operation waits until its record is on disk, and one fsync covers all records written meanwhile.
+     */
+    GROUP,
+    /**
+     * Every record is forced to disk on its own before the operation is applied.
+     */
+    ALWAYS
+}
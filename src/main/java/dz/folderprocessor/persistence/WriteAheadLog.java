@@ -0,0 +1,483 @@
+package dz.folderprocessor.persistence;
+
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.config.PathProps;
+import dz.folderprocessor.indexing.DocumentSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the operations published since the last segment commit, replayed at startup on top
+ * of the segment.
+ * <p>
+ * Records are encoded by the calling worker and appended inside the publish step, before the operation
+ * is applied, so the log order is the publish order and replay assigns the same document ids. Each record
+ * carries a sequence number and a CRC32C; replay stops at the first torn or damaged record and cuts the
+ * log there. The segment stores the sequence number it includes.
+ * <p>
+ * The log is a series of files named after the sequence number of their first record. A snapshot starts
+ * a new file at the moment it is captured, so ingestion keeps appending while the segment is written, and
+ * the files holding only records included in the segment are deleted once it is committed.
+ * <p>
+ * With {@link WalSync#GROUP} the fsync happens after the publish lock is released: the first waiting
+ * worker forces everything written so far and all workers whose records it covered return without
+ * forcing again, so concurrent ingestion shares fsyncs instead of queueing on them.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WriteAheadLog implements PersistentIndex, DisposableBean {
+
+    private static final String FILE_PREFIX = "wal-";
+    private static final String FILE_SUFFIX = ".log";
+
+    private static final byte PUBLISH = 1;
+    private static final byte ALIAS = 2;
+    private static final byte DELETE = 3;
+
+    // length and checksum, followed by the checksummed sequence number, type and payload
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int CHECKED_HEADER_BYTES = Long.BYTES + 1;
+
+    private final PathProps pathProps;
+    private final IndexingProps indexingProps;
+
+    private final Object syncLock = new Object();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    // log files by the sequence number of their first record; the last one is appended to
+    private final NavigableMap<Long, Path> files = new ConcurrentSkipListMap<>();
+
+    private volatile FileChannel channel;
+    private long checkpointLsn;
+    private long pendingCheckpoint;
+    private volatile long appendedLsn;
+    private volatile long syncedLsn;
+
+    public sealed interface Operation permits Publish, Alias, Delete {}
+
+    public record Publish(DocumentSegment segment) implements Operation {}
+
+    public record Alias(String path, int docId, long lastModified) implements Operation {}
+
+    public record Delete(String path) implements Operation {}
+
+    public record Status(WalSync sync, long checkpointLsn, long appendedLsn, long syncedLsn,
+                         long bytes, int files, long records, long syncs) {}
+
+    public boolean isEnabled() {
+        return pathProps.index() != null && indexingProps.walSync() != WalSync.OFF;
+    }
+
+    /**
+     * Opens the log and passes every operation newer than the loaded segment to the consumer, in log order.
+     * Called once at startup, after the segment is loaded and before anything is published.
+     *
+     * @return number of replayed operations
+     */
+    public int replay(Consumer<Operation> consumer) {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        Path directory = pathProps.index();
+        try {
+            Files.createDirectories(directory);
+            long lastLsn = checkpointLsn;
+            int replayed = 0;
+            boolean intact = true;
+            for (Path file : listFiles(directory)) {
+                if (!intact) {
+                    log.warn("Deleting write-ahead log {} that follows a damaged one", file);
+                    Files.delete(file);
+                    continue;
+                }
+                try (FileChannel logFile = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    long validEnd = 0;
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(logFile), 64 * 1024));
+                    byte[] record;
+                    while ((record = readRecord(in)) != null) {
+                        ByteBuffer header = ByteBuffer.wrap(record);
+                        long lsn = header.getLong();
+                        if (lsn > checkpointLsn && lsn != lastLsn + 1) {
+                            // the log does not continue the loaded segment, e.g. the segment was discarded
+                            log.warn("Write-ahead log {} continues at operation {} but the segment ends at {}, discarding the rest",
+                                    file, lsn, lastLsn);
+                            break;
+                        }
+                        validEnd += HEADER_BYTES + record.length;
+                        if (lsn > checkpointLsn) {
+                            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(
+                                    record, CHECKED_HEADER_BYTES, record.length - CHECKED_HEADER_BYTES));
+                            consumer.accept(decode(header.get(), payload));
+                            lastLsn = lsn;
+                            replayed++;
+                        }
+                    }
+
+                    if (validEnd < logFile.size()) {
+                        log.warn("Write-ahead log {} has a torn tail of {} bytes, cutting it off", file, logFile.size() - validEnd);
+                        logFile.truncate(validEnd);
+                        logFile.force(false);
+                        intact = false;
+                    }
+                }
+                files.put(startLsn(file), file);
+            }
+
+            // files starting past the last replayed record hold nothing usable and would sort after new records
+            for (Path stale : files.tailMap(lastLsn + 1, false).values()) {
+                Files.delete(stale);
+            }
+            files.tailMap(lastLsn + 1, false).clear();
+            channel = openFile(lastLsn + 1, StandardOpenOption.TRUNCATE_EXISTING);
+            appendedLsn = lastLsn;
+            syncedLsn = lastLsn;
+            deleteCheckpointed();
+            if (replayed > 0) {
+                log.info("Replayed {} operations from write-ahead log {}", replayed, directory);
+            }
+            return replayed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay write-ahead log in " + directory, e);
+        }
+    }
+
+    /**
+     * Encodes the record of an operation; runs on the calling worker, outside the publish lock.
+     *
+     * @return the record to {@link #append(byte[])}, or null when logging is off
+     */
+    public byte[] encode(Operation operation) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(new byte[HEADER_BYTES + Long.BYTES]);
+            switch (operation) {
+                case Publish publish -> {
+                    out.writeByte(PUBLISH);
+                    writeSegment(out, publish.segment());
+                }
+                case Alias alias -> {
+                    out.writeByte(ALIAS);
+                    out.writeUTF(alias.path());
+                    out.writeInt(alias.docId());
+                    out.writeLong(alias.lastModified());
+                }
+                case Delete delete -> {
+                    out.writeByte(DELETE);
+                    out.writeUTF(delete.path());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an encoded record to the log. Called inside the publish step, before the operation is applied.
+     *
+     * @return sequence number of the record, to pass to {@link #awaitDurable(long)}
+     */
+    public long append(byte[] record) {
+        if (record == null) {
+            return 0;
+        }
+        if (channel == null) {
+            throw new IllegalStateException("Write-ahead log is used before it was replayed");
+        }
+
+        long lsn = appendedLsn + 1;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putLong(HEADER_BYTES, lsn);
+        CRC32C checksum = new CRC32C();
+        checksum.update(record, HEADER_BYTES, record.length - HEADER_BYTES);
+        buffer.putInt(0, record.length - HEADER_BYTES);
+        buffer.putInt(Integer.BYTES, (int) checksum.getValue());
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (indexingProps.walSync() == WalSync.ALWAYS) {
+                channel.force(false);
+                syncs.incrementAndGet();
+                syncedLsn = lsn;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the write-ahead log", e);
+        }
+        records.incrementAndGet();
+        appendedLsn = lsn;
+        return lsn;
+    }
+
+    /**
+     * Blocks until the record is on disk when the sync policy asks for it. Called after the publish lock
+     * is released.
+     */
+    public void awaitDurable(long lsn) {
+        if (indexingProps.walSync() != WalSync.GROUP || lsn <= syncedLsn) {
+            return;
+        }
+        synchronized (syncLock) {
+            // another worker's fsync may have covered this record while we waited for the lock
+            if (lsn <= syncedLsn) {
+                return;
+            }
+            long target = appendedLsn;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync the write-ahead log", e);
+            }
+            syncs.incrementAndGet();
+            syncedLsn = target;
+        }
+    }
+
+    public Status status() {
+        long bytes = 0;
+        for (Path file : files.values()) {
+            try {
+                bytes += Files.size(file);
+            } catch (IOException e) {
+                log.debug("Failed to read the size of the write-ahead log {}", file, e);
+            }
+        }
+        return new Status(indexingProps.walSync(), checkpointLsn, appendedLsn, syncedLsn,
+                bytes, files.size(), records.get(), syncs.get());
+    }
+
+    @Override
+    public String sectionName() {
+        return "wal";
+    }
+
+    /**
+     * Ends the current log file at the snapshot; records appended from now on go to a new file, which the
+     * segment does not include.
+     */
+    @Override
+    public SectionWriter snapshot(int maxDocId) {
+        long lsn = appendedLsn;
+        if (channel != null && files.lastKey() <= lsn) {
+            synchronized (syncLock) {
+                try {
+                    FileChannel previous = channel;
+                    channel = openFile(lsn + 1, StandardOpenOption.TRUNCATE_EXISTING);
+                    // a worker waiting for its record after this point finds it already synced
+                    previous.force(false);
+                    previous.close();
+                    syncs.incrementAndGet();
+                    syncedLsn = lsn;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to start a new write-ahead log file", e);
+                }
+            }
+        }
+        pendingCheckpoint = lsn;
+        return out -> out.writeLong(lsn);
+    }
+
+    @Override
+    public void readFrom(SegmentSection section) throws IOException {
+        try (DataInputStream in = section.open(0)) {
+            checkpointLsn = in.readLong();
+        }
+    }
+
+    /**
+     * The segment now holds every operation logged before the snapshot, so the files ending there go.
+     */
+    @Override
+    public void committed() throws IOException {
+        checkpointLsn = pendingCheckpoint;
+        deleteCheckpointed();
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private FileChannel openFile(long startLsn, StandardOpenOption mode) throws IOException {
+        Path file = pathProps.index().resolve(FILE_PREFIX + "%020d".formatted(startLsn) + FILE_SUFFIX);
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+        // records synced into the file are only durable once its directory entry is
+        Directories.force(file.getParent());
+        files.put(startLsn, file);
+        return opened;
+    }
+
+    /**
+     * Deletes every file followed by one that starts at or before the first record after the checkpoint.
+     */
+    private void deleteCheckpointed() throws IOException {
+        while (files.size() > 1 && files.higherKey(files.firstKey()) <= checkpointLsn + 1) {
+            Files.deleteIfExists(files.pollFirstEntry().getValue());
+        }
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(WriteAheadLog::startLsn))
+                    .toList();
+        }
+    }
+
+    private static long startLsn(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    /**
+     * @return the checked part of the next record, or null at the end of the log or at a torn record
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < CHECKED_HEADER_BYTES) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+
+            CRC32C actual = new CRC32C();
+            actual.update(record);
+            return (int) actual.getValue() == checksum ? record : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static Operation decode(byte type, DataInputStream in) throws IOException {
+        return switch (type) {
+            case PUBLISH -> new Publish(readSegment(in));
+            case ALIAS -> new Alias(in.readUTF(), in.readInt(), in.readLong());
+            case DELETE -> new Delete(in.readUTF());
+            default -> throw new IOException("Unknown write-ahead log record type " + type);
+        };
+    }
+
+    private static void writeSegment(DataOutput out, DocumentSegment segment) throws IOException {
+        out.writeUTF(segment.path());
+        out.writeLong(segment.lastModified());
+        out.writeInt(segment.tokenCount());
+
+        out.writeInt(segment.termCount());
+        for (int ord = 0; ord < segment.termCount(); ord++) {
+            out.writeUTF(segment.term(ord));
+            writePositions(out, segment.positions(ord));
+        }
+        out.writeInt(segment.bigramCount());
+        for (int ord = 0; ord < segment.bigramCount(); ord++) {
+            out.writeInt(segment.bigramFirst(ord));
+            out.writeInt(segment.bigramSecond(ord));
+            writePositions(out, segment.bigramPositions(ord));
+        }
+    }
+
+    private static DocumentSegment readSegment(DataInput in) throws IOException {
+        String path = in.readUTF();
+        long lastModified = in.readLong();
+        int tokenCount = in.readInt();
+
+        String[] terms = new String[in.readInt()];
+        int[][] termPositions = new int[terms.length][];
+        for (int ord = 0; ord < terms.length; ord++) {
+            terms[ord] = in.readUTF();
+            termPositions[ord] = readPositions(in);
+        }
+        long[] bigrams = new long[in.readInt()];
+        int[][] bigramPositions = new int[bigrams.length][];
+        for (int ord = 0; ord < bigrams.length; ord++) {
+            bigrams[ord] = ((long) in.readInt() << 32) | (in.readInt() & 0xFFFFFFFFL);
+            bigramPositions[ord] = readPositions(in);
+        }
+        return new DocumentSegment(path, lastModified, tokenCount, terms, termPositions, bigrams, bigramPositions);
+    }
+
+    /**
+     * Ascending positions as vbyte-encoded gaps, like the postings themselves.
+     */
+    private static void writePositions(DataOutput out, int[] positions) throws IOException {
+        writeVbyte(out, positions.length);
+        int previous = 0;
+        for (int position : positions) {
+            writeVbyte(out, position - previous);
+            previous = position;
+        }
+    }
+
+    private static int[] readPositions(DataInput in) throws IOException {
+        int[] positions = new int[readVbyte(in)];
+        int previous = 0;
+        for (int i = 0; i < positions.length; i++) {
+            previous += readVbyte(in);
+            positions[i] = previous;
+        }
+        return positions;
+    }
+
+    private static void writeVbyte(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVbyte(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package dz.folderprocessor.query;
+
+import dz.folderprocessor.util.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Evaluation plan of a boolean query. Plans are built bottom-up through {@link #and}, {@link #or} and
+ * {@link #not}, which rewrite as they go: nested ANDs and ORs are flattened, double negations cancel, and a
+ * negated AND clause becomes an exclusion applied with {@code andNot} instead of a complement of the
+ * collection. Every node carries an upper bound of the number of live documents it matches, which orders
+ * the clauses of an AND from the most selective one and lets a plan bounded by zero skip evaluation.
+ */
+sealed interface BooleanPlan permits BooleanPlan.Term, BooleanPlan.And, BooleanPlan.Or, BooleanPlan.Not {
+
+    int estimate();
+
+    /**
+     * @param live all live documents, the result of a plan without positive clauses
+     */
+    RoaringBitmap evaluate(RoaringBitmap live);
+
+    BooleanQueryProcessor.Explanation explain();
+
+    /**
+     * A query token, matching the documents that contain all of its analyzed terms.
+     *
+     * @param sets document sets of the terms, smallest first; empty when the token has no terms and matches
+     *             every live document
+     */
+    record Term(String token, List<RoaringBitmap> sets, int estimate) implements BooleanPlan {
+
+        @Override
+        public RoaringBitmap evaluate(RoaringBitmap live) {
+            if (sets.isEmpty()) {
+                return live;
+            }
+            RoaringBitmap result = sets.getFirst();
+            for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+                result = result.and(sets.get(i));
+            }
+            return result;
+        }
+
+        @Override
+        public BooleanQueryProcessor.Explanation explain() {
+            return new BooleanQueryProcessor.Explanation("TERM", token, estimate, List.of());
+        }
+    }
+
+    /**
+     * Intersection of the included clauses, smallest first, minus the excluded ones, largest first. Stops as
+     * soon as the intermediate result is empty.
+     */
+    record And(List<BooleanPlan> include, List<BooleanPlan> exclude, int estimate) implements BooleanPlan {
+
+        @Override
+        public RoaringBitmap evaluate(RoaringBitmap live) {
+            if (estimate == 0) {
+                return RoaringBitmap.empty();
+            }
+            RoaringBitmap result = include.isEmpty() ? live : include.getFirst().evaluate(live);
+            for (int i = 1; i < include.size() && !result.isEmpty(); i++) {
+                result = result.and(include.get(i).evaluate(live));
+            }
+            for (int i = 0; i < exclude.size() && !result.isEmpty(); i++) {
+                result = result.andNot(exclude.get(i).evaluate(live));
+            }
+            return result;
+        }
+
+        @Override
+        public BooleanQueryProcessor.Explanation explain() {
+            List<BooleanQueryProcessor.Explanation> clauses = new ArrayList<>();
+            include.forEach(clause -> clauses.add(clause.explain()));
+            exclude.forEach(clause -> clauses.add(new BooleanQueryProcessor.Explanation(
+                    "AND_NOT", null, clause.estimate(), List.of(clause.explain()))));
+            return new BooleanQueryProcessor.Explanation("AND", null, estimate, clauses);
+        }
+    }
+
+    /**
+     * Union of the clauses, largest first; clauses known to match nothing are left out.
+     */
+    record Or(List<BooleanPlan> clauses, int estimate) implements BooleanPlan {
+
+        @Override
+        public RoaringBitmap evaluate(RoaringBitmap live) {
+            RoaringBitmap result = RoaringBitmap.empty();
+            for (BooleanPlan clause : clauses) {
+                result = result.or(clause.evaluate(live));
+            }
+            return result;
+        }
+
+        @Override
+        public BooleanQueryProcessor.Explanation explain() {
+            return new BooleanQueryProcessor.Explanation("OR", null, estimate,
+                    clauses.stream().map(BooleanPlan::explain).toList());
+        }
+    }
+
+    /**
+     * Complement of a clause that is not part of an AND, the only case that needs the live documents.
+     */
+    record Not(BooleanPlan clause, int estimate) implements BooleanPlan {
+
+        @Override
+        public RoaringBitmap evaluate(RoaringBitmap live) {
+            return live.andNot(clause.evaluate(live));
+        }
+
+        @Override
+        public BooleanQueryProcessor.Explanation explain() {
+            return new BooleanQueryProcessor.Explanation("NOT", null, estimate, List.of(clause.explain()));
+        }
+    }
+
+    static BooleanPlan term(String token, List<RoaringBitmap> sets, int liveCount) {
+        List<RoaringBitmap> sorted = new ArrayList<>(sets);
+        sorted.sort(Comparator.comparingInt(RoaringBitmap::cardinality));
+        int estimate = sorted.isEmpty() ? liveCount : Math.min(sorted.getFirst().cardinality(), liveCount);
+        return new Term(token, sorted, estimate);
+    }
+
+    static BooleanPlan and(BooleanPlan left, BooleanPlan right, int liveCount) {
+        List<BooleanPlan> include = new ArrayList<>();
+        List<BooleanPlan> exclude = new ArrayList<>();
+        for (BooleanPlan clause : List.of(left, right)) {
+            switch (clause) {
+                case And and -> {
+                    include.addAll(and.include());
+                    exclude.addAll(and.exclude());
+                }
+                case Not not -> {
+                    if (not.clause().estimate() > 0) {
+                        exclude.add(not.clause());
+                    }
+                }
+                default -> include.add(clause);
+            }
+        }
+        include.sort(Comparator.comparingInt(BooleanPlan::estimate));
+        exclude.sort(Comparator.comparingInt(BooleanPlan::estimate).reversed());
+
+        return new And(include, exclude, include.isEmpty() ? liveCount : include.getFirst().estimate());
+    }
+
+    static BooleanPlan or(BooleanPlan left, BooleanPlan right, int liveCount) {
+        List<BooleanPlan> clauses = new ArrayList<>();
+        for (BooleanPlan clause : List.of(left, right)) {
+            if (clause instanceof Or or) {
+                clauses.addAll(or.clauses());
+            } else if (clause.estimate() > 0) {
+                clauses.add(clause);
+            }
+        }
+        clauses.sort(Comparator.comparingInt(BooleanPlan::estimate).reversed());
+
+        long estimate = clauses.stream().mapToLong(BooleanPlan::estimate).sum();
+        return new Or(clauses, (int) Math.min(estimate, liveCount));
+    }
+
+    static BooleanPlan not(BooleanPlan clause, int liveCount) {
+        if (clause instanceof Not not) {
+            return not.clause();
+        }
+        // the clause's estimate bounds it from above only, so nothing smaller is known of its complement
+        return new Not(clause, liveCount);
+    }
+}
@@ -1,16 +1,12 @@
 package dz.folderprocessor.query;
 
+import dz.folderprocessor.analysis.AnalysisChain;
 import dz.folderprocessor.data.DocumentRegistry;
 import dz.folderprocessor.data.IncidentMatrix;
-import dz.folderprocessor.util.Tokenizer;
+import dz.folderprocessor.util.RoaringBitmap;
 import lombok.RequiredArgsConstructor;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
 import java.util.*;
 
 @Component
@@ -19,11 +15,20 @@ public class BooleanQueryProcessor {
 
     private final DocumentRegistry documentRegistry;
     private final IncidentMatrix incidentMatrix;
-
-    private final Analyzer analyzer = new StandardAnalyzer();
+    private final AnalysisChain analysisChain;
 
     private static final Set<String> OPERATORS = Set.of("AND", "OR", "NOT");
 
+    /**
+     * A node of the chosen plan.
+     *
+     * @param operator {@code TERM}, {@code AND}, {@code AND_NOT}, {@code OR} or {@code NOT}
+     * @param term     the query token of a {@code TERM}
+     * @param estimate upper bound of the live documents the node matches
+     * @param clauses  operands in the order they are evaluated
+     */
+    public record Explanation(String operator, String term, int estimate, List<Explanation> clauses) {}
+
     /**
      * Processes a query in Polish notation and returns a list of document pathes that match the query.
      * @param query - A query in Polish notation.
@@ -31,10 +36,56 @@ public class BooleanQueryProcessor {
      * @return A list of document IDs that match the query.
      */
     public List<String> processQuery(String query) {
-        var maxFileId = documentRegistry.maxFileId();
+        return evaluate(query).stream().boxed()
+                .flatMap(docId -> documentRegistry.getDocumentPaths(docId).stream())
+                .toList();
+    }
+
+    /**
+     * Evaluates the query once and reads its documents in batches; the result is kept as a bitmap.
+     */
+    public DocumentMatches matches(String query) {
+        return DocumentMatches.of(evaluate(query));
+    }
+
+    /**
+     * @return the query with every term replaced by what the analysis makes of it, equal for queries that
+     * match the same documents by construction
+     */
+    public String normalize(String query) {
+        StringJoiner normalized = new StringJoiner(" ");
+        for (String token : tokenize(query)) {
+            if (OPERATORS.contains(token)) {
+                normalized.add(token);
+            } else {
+                StringJoiner terms = new StringJoiner(",");
+                analysisChain.analyze(token, (buffer, length, position) -> terms.add(new String(buffer, 0, length)));
+                normalized.add(terms.toString());
+            }
+        }
+        return normalized.toString();
+    }
 
+    /**
+     * @return the plan {@link #processQuery} would evaluate for the query, without evaluating it
+     */
+    public Explanation explain(String query) {
+        return plan(query, documentRegistry.liveBitmap().cardinality()).explain();
+    }
+
+    private RoaringBitmap evaluate(String query) {
+        RoaringBitmap live = documentRegistry.liveBitmap();
+
+        // operands come straight from the index and may still hold deleted documents
+        return plan(query, live.cardinality()).evaluate(live).and(live);
+    }
+
+    /**
+     * Parses the query into a plan, rewriting each operator as it is applied.
+     */
+    private BooleanPlan plan(String query, int liveCount) {
         Deque<String> tokens = tokenize(query);
-        Deque<BitSet> operationStack = new ArrayDeque<>();
+        Deque<BooleanPlan> operationStack = new ArrayDeque<>();
 
         while (!tokens.isEmpty()) {
             String token = tokens.pop();
@@ -42,44 +93,42 @@ public class BooleanQueryProcessor {
             if (OPERATORS.contains(token)) {
                 switch (token) {
                     case "AND" -> {
-                        BitSet b2 = operationStack.pop();
-                        BitSet b1 = operationStack.pop();
-                        b1.and(b2);
-                        operationStack.push(b1);
+                        BooleanPlan right = pop(operationStack, query);
+                        BooleanPlan left = pop(operationStack, query);
+                        operationStack.push(BooleanPlan.and(left, right, liveCount));
                     }
                     case "OR" -> {
-                        BitSet b2 = operationStack.pop();
-                        BitSet b1 = operationStack.pop();
-                        b1.or(b2);
-                        operationStack.push(b1);
-                    }
-                    case "NOT" -> {
-                        BitSet b = operationStack.pop();
-                        BitSet not = new BitSet(maxFileId + 1);
-                        not.set(0, maxFileId + 1);
-                        not.andNot(b);
-                        operationStack.push(not);
+                        BooleanPlan right = pop(operationStack, query);
+                        BooleanPlan left = pop(operationStack, query);
+                        operationStack.push(BooleanPlan.or(left, right, liveCount));
                     }
+                    case "NOT" -> operationStack.push(BooleanPlan.not(pop(operationStack, query), liveCount));
                 }
             } else {
-                List<String> normalized = Tokenizer.tokenizeInput(token);
-                BitSet intersection = new BitSet();
-                intersection.set(0, maxFileId + 1); // стартуємо з усіх одиниць
-
-                for (String normTerm : normalized) {
-                    BitSet b = incidentMatrix.getBitSetForTerm(normTerm);
-                    intersection.and(b);
-                }
-                operationStack.push(intersection);
+                List<RoaringBitmap> operands = new ArrayList<>();
+                analysisChain.analyze(token, (buffer, length, position) ->
+                        operands.add(incidentMatrix.getDocumentsForTerm(new String(buffer, 0, length))));
+                operationStack.push(BooleanPlan.term(token, operands, liveCount));
             }
         }
 
-        BitSet resultSet = operationStack.pop();
+        if (operationStack.size() != 1) {
+            throw new IllegalArgumentException("Query must reduce to a single operand: " + query);
+        }
+        return operationStack.pop();
+    }
 
-        return resultSet.stream().mapToObj(documentRegistry::getDocumentPath).toList();
+    private BooleanPlan pop(Deque<BooleanPlan> operationStack, String query) {
+        if (operationStack.isEmpty()) {
+            throw new IllegalArgumentException("Operator without enough operands: " + query);
+        }
+        return operationStack.pop();
     }
 
     private Deque<String> tokenize(String query) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Query must not be empty");
+        }
         String[] parts = query.trim().split("\\s+");
         return new ArrayDeque<>(List.of(parts));
     }
@@ -0,0 +1,64 @@
+package dz.folderprocessor.query;
+
+import dz.folderprocessor.util.IntList;
+import dz.folderprocessor.util.RoaringBitmap;
+
+import java.util.BitSet;
+
+/**
+ * Live documents matching a query, read in ascending doc id order a batch at a time, so a caller paging
+ * or streaming the results never holds more of them than it asked for.
+ */
+@FunctionalInterface
+public interface DocumentMatches {
+
+    /**
+     * @param fromDocId smallest doc id to return
+     * @param max       most doc ids to return; fewer means there are no more matches
+     * @return the matching doc ids from {@code fromDocId} on, ascending
+     */
+    IntList next(int fromDocId, int max);
+
+    /**
+     * @return every match at once
+     */
+    default RoaringBitmap all() {
+        IntList docIds = next(0, Integer.MAX_VALUE);
+        BitSet bits = new BitSet();
+        for (int i = 0; i < docIds.size(); i++) {
+            bits.set(docIds.get(i));
+        }
+        return RoaringBitmap.of(bits);
+    }
+
+    /**
+     * @return every match if they were evaluated up front, or null if they are found as they are read
+     */
+    default RoaringBitmap evaluated() {
+        return null;
+    }
+
+    /**
+     * @return matches read from an already evaluated result
+     */
+    static DocumentMatches of(RoaringBitmap docIds) {
+        return new DocumentMatches() {
+            @Override
+            public IntList next(int fromDocId, int max) {
+                IntList next = new IntList(Math.min(max, 1024));
+                docIds.stream(fromDocId).limit(max).forEach(next::add);
+                return next;
+            }
+
+            @Override
+            public RoaringBitmap all() {
+                return docIds;
+            }
+
+            @Override
+            public RoaringBitmap evaluated() {
+                return docIds;
+            }
+        };
+    }
+}
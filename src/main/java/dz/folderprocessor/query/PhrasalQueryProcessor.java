@@ -1,12 +1,14 @@
 package dz.folderprocessor.query;
 
+import dz.folderprocessor.analysis.AnalysisChain;
 import dz.folderprocessor.data.*;
-import dz.folderprocessor.util.SetUtil;
-import dz.folderprocessor.util.Tokenizer;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.IntList;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 @Component
 @RequiredArgsConstructor
@@ -15,32 +17,71 @@ public class PhrasalQueryProcessor {
     private final InverseIndex inverseIndex;
     private final WordPairIndex wordPairIndex;
     private final DocumentRegistry documentRegistry;
+    private final AnalysisChain analysisChain;
+    private final BlockAllocator postingsAllocator;
+
+    private static final DocumentMatches NO_MATCHES = (fromDocId, max) -> new IntList();
 
     public List<String> containsPhraseCoordinateIndex(String phrase) {
-        List<String> tokens = Tokenizer.tokenizeInput(phrase);
+        return paths(coordinateMatches(phrase).next(0, Integer.MAX_VALUE));
+    }
+
+    public List<String> containsPhrasePairIndex(String phrase) {
+        return paths(pairMatches(phrase).next(0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return the analyzed tokens of the phrase, equal for phrases that match the same documents
+     */
+    public String normalize(String phrase) {
+        return String.join(" ", analysisChain.tokenize(phrase));
+    }
+
+    /**
+     * Documents containing the phrase by the positions of the {@link InverseIndex}, found a batch at a time.
+     */
+    public DocumentMatches coordinateMatches(String phrase) {
+        List<String> tokens = analysisChain.tokenize(phrase);
 
         if (tokens.size() < 2) {
-            return Collections.emptyList();
+            return NO_MATCHES;
         }
 
-        return getCandidateDocuments(inverseIndex, tokens).stream().
-                filter(docId -> hasSequentialTokens(docId, tokens, inverseIndex))
-                .map(documentRegistry::getDocumentPath)
-                .toList();
+        int[] offsets = IntStream.range(0, tokens.size()).toArray();
+        return (fromDocId, max) -> findPhrase(inverseIndex, tokens, offsets, fromDocId, max);
     }
 
-
-    public List<String> containsPhrasePairIndex(String phrase) {
-        List<String> tokens = Tokenizer.tokenizeInput(phrase);
+    /**
+     * Documents containing the phrase by the positions of its word pairs, found a batch at a time.
+     */
+    public DocumentMatches pairMatches(String phrase) {
+        List<String> tokens = analysisChain.tokenize(phrase);
         List<String> pairs = createPairs(tokens);
         
         if (pairs.isEmpty()) {
-            return Collections.emptyList();
+            return NO_MATCHES;
         }
 
-        return getCandidateDocuments(wordPairIndex, pairs).stream()
-                .filter(docId -> hasSequentialTokens(docId, pairs, wordPairIndex))
-                .map(documentRegistry::getDocumentPath)
+        // consecutive pairs share a word, so every second pair and the last one already cover the phrase
+        List<String> covering = new ArrayList<>();
+        IntList offsets = new IntList();
+        for (int i = 0; i < pairs.size(); i += 2) {
+            covering.add(pairs.get(i));
+            offsets.add(i);
+        }
+        if (pairs.size() % 2 == 0) {
+            covering.add(pairs.getLast());
+            offsets.add(pairs.size() - 1);
+        }
+
+        int[] keyOffsets = offsets.toArray();
+        return (fromDocId, max) -> findPhrase(wordPairIndex, covering, keyOffsets, fromDocId, max);
+    }
+
+    private List<String> paths(IntList docIds) {
+        return IntStream.range(0, docIds.size()).map(docIds::get)
+                .boxed()
+                .flatMap(docId -> documentRegistry.getDocumentPaths(docId).stream())
                 .toList();
     }
 
@@ -57,37 +98,112 @@ public class PhrasalQueryProcessor {
         return bigrams;
     }
 
-    private Set<Integer> getCandidateDocuments(WordSearchIndex index, List<String> tokens) {
-        return SetUtil.intersection(tokens.stream().map(index::getDocuments));
-    }
+    /**
+     * Finds the live documents where every key occurs at its offset from a common start.
+     * <p>
+     * The postings of all keys are intersected, driven by the shortest list: every candidate of the lead
+     * list is looked up in the others with skip-based {@link PostingsIterator#advance(int)}. The positions
+     * of a candidate are then merged straight from the iterators standing on it, so a query allocates a
+     * few arrays sized by the number of keys, whatever the length of the lists.
+     *
+     * @param offsets   position of each key relative to the first one
+     * @param fromDocId smallest doc id to look at
+     * @param max       number of matches after which the search stops
+     */
+    private IntList findPhrase(WordSearchIndex index, List<String> keys, int[] offsets, int fromDocId, int max) {
+        int count = keys.size();
+        PostingsIterator[] postings = new PostingsIterator[count];
+        int[] keyOffsets = offsets.clone();
+        int[] current = new int[count];
+        int[] remaining = new int[count];
+        IntList matches = new IntList();
 
-    private boolean hasSequentialTokens(Integer docId, List<String> tokens, PositionIndex index) {
-        if (tokens.isEmpty()) {
-            return true;
-        }
+        try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+            for (int i = 0; i < count; i++) {
+                postings[i] = index.getDocuments(keys.get(i));
+            }
+            // order by list length, keeping every key with its offset
+            for (int i = 1; i < count; i++) {
+                for (int j = i; j > 0 && postings[j].cost() < postings[j - 1].cost(); j--) {
+                    swap(postings, keyOffsets, j, j - 1);
+                }
+            }
 
-        Set<Integer> startingPositions = index.getPositions(docId, tokens.getFirst());
-        
-        if (startingPositions == null || startingPositions.isEmpty()) {
-            return false;
+            PostingsIterator lead = postings[0];
+            int docId = lead.advance(fromDocId);
+            while (docId != PostingsIterator.NO_MORE_DOCS && matches.size() < max) {
+                int next = docId;
+                for (int i = 1; i < count && next == docId; i++) {
+                    next = postings[i].advance(docId);
+                }
+                if (next == docId) {
+                    if (documentRegistry.isLive(docId)
+                            && hasSequentialPositions(postings, keyOffsets, current, remaining)) {
+                        matches.add(docId);
+                    }
+                    docId = lead.nextDoc();
+                } else if (next == PostingsIterator.NO_MORE_DOCS) {
+                    break;
+                } else {
+                    docId = lead.advance(next);
+                }
+            }
         }
-        
-        for (int i = 1; i < tokens.size(); i++) {
-            Set<Integer> currentTokenPositions = index.getPositions(docId, tokens.get(i));
-            
-            if (currentTokenPositions == null || currentTokenPositions.isEmpty()) {
-                return false;
+        return matches;
+    }
+
+    /**
+     * Merges the positions of the iterators standing on one document. Each start is taken from the key with
+     * the fewest positions in the document; every other key moves its cursor forward to the position the
+     * start requires, so each list is decoded at most once.
+     *
+     * @param current   scratch array for the last position read of each key
+     * @param remaining scratch array for the positions left to read of each key
+     */
+    private static boolean hasSequentialPositions(PostingsIterator[] postings, int[] offsets,
+                                                  int[] current, int[] remaining) {
+        int anchor = 0;
+        for (int i = 0; i < postings.length; i++) {
+            current[i] = Integer.MIN_VALUE;
+            remaining[i] = postings[i].freq();
+            if (remaining[i] < remaining[anchor]) {
+                anchor = i;
             }
-            
+        }
+
+        while (remaining[anchor] > 0) {
+            remaining[anchor]--;
+            int start = postings[anchor].nextPosition() - offsets[anchor];
 
-            final int offset = i;
-            startingPositions.removeIf(pos -> !currentTokenPositions.contains(pos + offset));
-            
-            if (startingPositions.isEmpty()) {
-                return false;
+            boolean matched = true;
+            for (int i = 0; i < postings.length && matched; i++) {
+                if (i == anchor) {
+                    continue;
+                }
+                int target = start + offsets[i];
+                while (current[i] < target && remaining[i] > 0) {
+                    remaining[i]--;
+                    current[i] = postings[i].nextPosition();
+                }
+                if (current[i] < target) {
+                    // this key has no position left at or after the start, nor after any later one
+                    return false;
+                }
+                matched = current[i] == target;
+            }
+            if (matched) {
+                return true;
             }
         }
-        
-        return true;
+        return false;
+    }
+
+    private static void swap(PostingsIterator[] postings, int[] offsets, int i, int j) {
+        PostingsIterator iterator = postings[i];
+        postings[i] = postings[j];
+        postings[j] = iterator;
+        int offset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = offset;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,238 @@
+package dz.folderprocessor.query;
+
+import dz.folderprocessor.config.QueryProps;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.util.FrequencySketch;
+import dz.folderprocessor.util.IntList;
+import dz.folderprocessor.util.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Results of repeated boolean, phrase and wildcard queries, keyed by the kind of query and its normalized
+ * text.
+ * <p>
+ * Every entry belongs to the {@link DocumentRegistry#generation()} it was computed at, and the first
+ * access after the generation moves on drops them all, so no result outlives a change of the live
+ * documents. Entries are weighed by their approximate heap size. A full cache admits a new result only if
+ * its query was seen more often, by a {@link FrequencySketch} of recent lookups, than the queries of every
+ * least recently used entry it would evict, so a burst of one-off queries cannot flush the popular ones.
+ * Results are computed outside the lock; threads missing the same query at once each compute it. A missed
+ * result is read as lazily as the caller reads it and only cached if the caller happened to read all of it,
+ * so paging through a large result is not turned into a full evaluation by the cache.
+ */
+@Component
+public class QueryResultCache {
+
+    private static final long ENTRY_BYTES = 64;
+    private static final long TERM_BYTES = 48;
+
+    public record Stats(long hits, long misses, long evictions, long rejections, long invalidations,
+                        int entries, long weightBytes, long maxWeightBytes) {}
+
+    private record Entry(Object value, long weight) {}
+
+    private final DocumentRegistry documentRegistry;
+    private final long maxWeight;
+    private final FrequencySketch sketch;
+    // least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long invalidations;
+
+    public QueryResultCache(DocumentRegistry documentRegistry, QueryProps queryProps) {
+        this.documentRegistry = documentRegistry;
+        this.maxWeight = queryProps.cacheMaxBytes();
+        // about one counter per kilobyte of cached results
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxWeight >>> 10)));
+        this.generation = documentRegistry.generation();
+    }
+
+    public boolean isEnabled() {
+        return maxWeight > 0;
+    }
+
+    /**
+     * On a miss, matches evaluated up front are cached at once. Lazy matches are read as the caller reads
+     * them and cached once it has read all of them in one batch from the first document, so a page or
+     * stream of a large result never evaluates more of it than it reads.
+     *
+     * @param search finds the matching documents on a miss
+     */
+    public DocumentMatches documents(String kind, String query, Supplier<DocumentMatches> search) {
+        if (!isEnabled()) {
+            return search.get();
+        }
+        String key = key(kind, query);
+        long computedAt = documentRegistry.generation();
+        Object cached = lookup(key);
+        if (cached != null) {
+            return DocumentMatches.of((RoaringBitmap) cached);
+        }
+
+        DocumentMatches matches = search.get();
+        if (matches.evaluated() != null) {
+            // computed in full anyway
+            offerDocuments(key, computedAt, matches.evaluated());
+            return matches;
+        }
+        return new DocumentMatches() {
+            @Override
+            public IntList next(int fromDocId, int max) {
+                IntList docIds = matches.next(fromDocId, max);
+                if (fromDocId == 0 && docIds.size() < max) {
+                    offerDocuments(key, computedAt, bitmap(docIds));
+                }
+                return docIds;
+            }
+
+            @Override
+            public RoaringBitmap all() {
+                RoaringBitmap docIds = matches.all();
+                offerDocuments(key, computedAt, docIds);
+                return docIds;
+            }
+        };
+    }
+
+    /**
+     * On a miss the matches are read lazily, and cached once a caller has read all of them in one batch
+     * from the first term; paging through a large result never evaluates more of it than the pages.
+     *
+     * @param search finds the matching terms on a miss
+     */
+    @SuppressWarnings("unchecked")
+    public TermMatches terms(String kind, String query, Supplier<TermMatches> search) {
+        if (!isEnabled()) {
+            return search.get();
+        }
+        String key = key(kind, query);
+        long computedAt = documentRegistry.generation();
+        Object cached = lookup(key);
+        if (cached != null) {
+            return TermMatches.of((List<String>) cached);
+        }
+
+        TermMatches matches = search.get();
+        return new TermMatches() {
+            @Override
+            public List<String> next(String from, int max) {
+                List<String> terms = matches.next(from, max);
+                if (from.isEmpty() && terms.size() < max) {
+                    offerTerms(key, computedAt, terms);
+                }
+                return terms;
+            }
+
+            @Override
+            public List<String> all() {
+                List<String> terms = matches.all();
+                offerTerms(key, computedAt, terms);
+                return terms;
+            }
+        };
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, rejections, invalidations, entries.size(), weight, maxWeight);
+    }
+
+    private synchronized Object lookup(String key) {
+        refreshGeneration();
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value();
+    }
+
+    private synchronized void offer(String key, long computedAt, Object value, long entryWeight) {
+        refreshGeneration();
+        if (computedAt != generation) {
+            // the documents changed while the result was computed
+            return;
+        }
+        if (entries.containsKey(key)) {
+            // another thread computed the same result meanwhile
+            return;
+        }
+        if (entryWeight > maxWeight) {
+            rejections++;
+            return;
+        }
+
+        long excess = weight + entryWeight - maxWeight;
+        if (excess > 0) {
+            int frequency = sketch.frequency(key);
+            List<String> victims = new ArrayList<>();
+            long freed = 0;
+            for (Map.Entry<String, Entry> victim : entries.entrySet()) {
+                if (freed >= excess) {
+                    break;
+                }
+                if (sketch.frequency(victim.getKey()) >= frequency) {
+                    rejections++;
+                    return;
+                }
+                victims.add(victim.getKey());
+                freed += victim.getValue().weight();
+            }
+            for (String victim : victims) {
+                weight -= entries.remove(victim).weight();
+                evictions++;
+            }
+        }
+        entries.put(key, new Entry(value, entryWeight));
+        weight += entryWeight;
+    }
+
+    private void refreshGeneration() {
+        long current = documentRegistry.generation();
+        if (current != generation) {
+            invalidations += entries.size();
+            entries.clear();
+            weight = 0;
+            generation = current;
+        }
+    }
+
+    private void offerDocuments(String key, long computedAt, RoaringBitmap docIds) {
+        offer(key, computedAt, docIds, ENTRY_BYTES + 2L * key.length() + docIds.sizeInBytes());
+    }
+
+    private void offerTerms(String key, long computedAt, List<String> terms) {
+        List<String> copy = List.copyOf(terms);
+        long termBytes = 0;
+        for (String term : copy) {
+            termBytes += TERM_BYTES + 2L * term.length();
+        }
+        offer(key, computedAt, copy, ENTRY_BYTES + 2L * key.length() + termBytes);
+    }
+
+    private static RoaringBitmap bitmap(IntList docIds) {
+        BitSet bits = new BitSet();
+        for (int i = 0; i < docIds.size(); i++) {
+            bits.set(docIds.get(i));
+        }
+        return RoaringBitmap.of(bits);
+    }
+
+    private static String key(String kind, String query) {
+        return kind + '\n' + query;
+    }
+}
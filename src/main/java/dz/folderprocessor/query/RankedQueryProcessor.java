@@ -0,0 +1,172 @@
+package dz.folderprocessor.query;
+
+import dz.folderprocessor.analysis.AnalysisChain;
+import dz.folderprocessor.config.QueryProps;
+import dz.folderprocessor.data.DocumentLengths;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.data.InverseIndex;
+import dz.folderprocessor.data.PostingsIterator;
+import dz.folderprocessor.util.BlockAllocator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Free-text queries ranked with BM25 over the postings of the {@link InverseIndex}, returning only the
+ * best documents.
+ * <p>
+ * Evaluation is document at a time with MaxScore pruning. Every query term has an upper bound of its
+ * score, its idf times {@code k1 + 1}. Once the heap holds the requested number of documents, the terms
+ * whose bounds together cannot beat the weakest of them become non-essential: candidates come only from
+ * the other terms' lists, and a non-essential list is looked up for a candidate only while the candidate
+ * can still enter the heap. Documents that cannot make it are never fully scored.
+ */
+@Component
+@RequiredArgsConstructor
+public class RankedQueryProcessor {
+
+    private final InverseIndex inverseIndex;
+    private final DocumentLengths documentLengths;
+    private final DocumentRegistry documentRegistry;
+    private final AnalysisChain analysisChain;
+    private final BlockAllocator postingsAllocator;
+    private final QueryProps queryProps;
+
+    /**
+     * A path of a ranked document; paths with the same content share their document and its score.
+     */
+    public record ScoredDocument(String path, double score) {}
+
+    private record Hit(int docId, double score) {}
+
+    /**
+     * A query term: its postings, and its weight, the idf times the number of times the query repeats it.
+     */
+    private record TermScorer(PostingsIterator postings, double weight, double maxScore) {}
+
+    /**
+     * @param limit number of documents to return, the configured default if null
+     * @return the best matching documents, highest score first
+     */
+    public List<ScoredDocument> search(String query, Integer limit) {
+        if (query == null) {
+            throw new IllegalArgumentException("Query must not be empty");
+        }
+        int k = limit == null ? queryProps.rankedDefaultLimit() : limit;
+        if (k < 1 || k > queryProps.rankedMaxLimit()) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + queryProps.rankedMaxLimit());
+        }
+
+        Map<String, Integer> queryTerms = new LinkedHashMap<>();
+        analysisChain.analyze(query, (buffer, length, position) ->
+                queryTerms.merge(new String(buffer, 0, length), 1, Integer::sum));
+
+        List<Hit> hits;
+        try (BlockAllocator.ReadGuard guard = postingsAllocator.enter()) {
+            hits = topHits(scorers(queryTerms), k);
+        }
+
+        return hits.stream()
+                .flatMap(hit -> documentRegistry.getDocumentPaths(hit.docId()).stream()
+                        .map(path -> new ScoredDocument(path, hit.score())))
+                .toList();
+    }
+
+    private TermScorer[] scorers(Map<String, Integer> queryTerms) {
+        double documentCount = Math.max(1, documentLengths.documentCount());
+        double k1 = queryProps.bm25K1();
+        List<TermScorer> scorers = new ArrayList<>();
+        queryTerms.forEach((term, count) -> {
+            PostingsIterator postings = inverseIndex.getDocuments(term);
+            int frequency = postings.cost();
+            if (frequency > 0) {
+                double idf = Math.log(1 + (documentCount - frequency + 0.5) / (frequency + 0.5));
+                scorers.add(new TermScorer(postings, idf * count, idf * count * (k1 + 1)));
+            }
+        });
+        // least valuable first, the order in which terms become non-essential
+        scorers.sort(Comparator.comparingDouble(TermScorer::maxScore));
+        return scorers.toArray(new TermScorer[0]);
+    }
+
+    private List<Hit> topHits(TermScorer[] scorers, int k) {
+        int count = scorers.length;
+        // bounds[i] is the most the scorers 0..i together can add
+        double[] bounds = new double[count];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = scorers[i].maxScore() + (i > 0 ? bounds[i - 1] : 0);
+            scorers[i].postings().nextDoc();
+        }
+
+        // weakest hit on top; of equal scores the later document is weaker, as in the final order
+        PriorityQueue<Hit> heap = new PriorityQueue<>(k, Comparator.comparingDouble(Hit::score)
+                .thenComparing(Comparator.comparingInt(Hit::docId).reversed()));
+        double threshold = -1;
+        int firstEssential = 0;
+        double averageLength = Math.max(1, documentLengths.averageLength());
+
+        while (firstEssential < count) {
+            int docId = PostingsIterator.NO_MORE_DOCS;
+            for (int i = firstEssential; i < count; i++) {
+                docId = Math.min(docId, scorers[i].postings().docId());
+            }
+            if (docId == PostingsIterator.NO_MORE_DOCS) {
+                break;
+            }
+
+            boolean live = documentRegistry.isLive(docId);
+            double lengthNorm = normalization(docId, averageLength);
+            double score = 0;
+            for (int i = firstEssential; i < count; i++) {
+                PostingsIterator postings = scorers[i].postings();
+                if (postings.docId() == docId) {
+                    if (live) {
+                        score += termScore(scorers[i], postings.freq(), lengthNorm);
+                    }
+                    postings.nextDoc();
+                }
+            }
+            if (!live) {
+                continue;
+            }
+
+            // non-essential terms, most valuable first, while the document can still beat the threshold
+            for (int i = firstEssential - 1; i >= 0 && score + bounds[i] > threshold; i--) {
+                PostingsIterator postings = scorers[i].postings();
+                if (postings.advance(docId) == docId) {
+                    score += termScore(scorers[i], postings.freq(), lengthNorm);
+                }
+            }
+
+            if (heap.size() < k) {
+                heap.add(new Hit(docId, score));
+            } else if (score > threshold) {
+                heap.poll();
+                heap.add(new Hit(docId, score));
+            }
+            if (heap.size() == k) {
+                threshold = heap.peek().score();
+                while (firstEssential < count && bounds[firstEssential] <= threshold) {
+                    firstEssential++;
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(heap);
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparingInt(Hit::docId));
+        return hits;
+    }
+
+    /**
+     * @return the document length part of the BM25 denominator, {@code k1 * (1 - b + b * dl / avgdl)}
+     */
+    private double normalization(int docId, double averageLength) {
+        double b = queryProps.bm25B();
+        return queryProps.bm25K1() * (1 - b + b * documentLengths.length(docId) / averageLength);
+    }
+
+    private double termScore(TermScorer scorer, int frequency, double lengthNorm) {
+        return scorer.weight() * frequency * (queryProps.bm25K1() + 1) / (frequency + lengthNorm);
+    }
+}
@@ -0,0 +1,81 @@
+package dz.folderprocessor.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Terms matching a wildcard query, read in ascending order a batch at a time, so a caller paging or
+ * streaming them never holds more of them than it asked for.
+ */
+@FunctionalInterface
+public interface TermMatches {
+
+    TermMatches NONE = (from, max) -> List.of();
+
+    /**
+     * @param from smallest term to return
+     * @param max  most terms to return; fewer means there are no more matches
+     * @return the matching terms from {@code from} on, ascending
+     */
+    List<String> next(String from, int max);
+
+    /**
+     * @return every match at once
+     */
+    default List<String> all() {
+        return next("", Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return matches read from an already evaluated result
+     */
+    static TermMatches of(List<String> sorted) {
+        return new TermMatches() {
+            @Override
+            public List<String> next(String from, int max) {
+                int start = Collections.binarySearch(sorted, from);
+                start = start >= 0 ? start : -start - 1;
+                return List.copyOf(sorted.subList(start, (int) Math.min(sorted.size(), (long) start + max)));
+            }
+
+            @Override
+            public List<String> all() {
+                return sorted;
+            }
+        };
+    }
+
+    /**
+     * Matches among candidates in no particular order. Each call keeps the {@code max} smallest candidates
+     * from {@code from} on in a bounded heap and tests a candidate only if it would enter it, so a page
+     * costs a pass over the candidates but no sort of them.
+     */
+    static TermMatches select(Collection<String> candidates, Predicate<String> accept) {
+        return (from, max) -> {
+            if (max <= 0) {
+                return List.of();
+            }
+            // the largest selected term on top
+            PriorityQueue<String> selected = new PriorityQueue<>(Comparator.reverseOrder());
+            for (String term : candidates) {
+                if (term.compareTo(from) < 0
+                        || selected.size() == max && term.compareTo(selected.peek()) >= 0
+                        || !accept.test(term)) {
+                    continue;
+                }
+                selected.add(term);
+                if (selected.size() > max) {
+                    selected.poll();
+                }
+            }
+            List<String> next = new ArrayList<>(selected);
+            next.sort(null);
+            return next;
+        };
+    }
+}
@@ -1,25 +1,41 @@
 package dz.folderprocessor.query;
 
+import dz.folderprocessor.analysis.AnalysisChain;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.data.IncidentMatrix;
 import dz.folderprocessor.data.PermutationIndex;
 import dz.folderprocessor.data.PrefixIndex;
 import dz.folderprocessor.data.SuffixIndex;
 import dz.folderprocessor.data.TrigramIndex;
+import dz.folderprocessor.util.RoaringBitmap;
 import dz.folderprocessor.util.SetUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class WildcardQueryProcessor {
 
+    private static final int TERM_BATCH = 256;
+
     private final PermutationIndex permutationIndex;
     private final TrigramIndex trigramIndex;
     private final PrefixIndex prefixIndex;
     private final SuffixIndex suffixIndex;
+    private final AnalysisChain analysisChain;
+    private final IncidentMatrix incidentMatrix;
+    private final DocumentRegistry documentRegistry;
+
+    /**
+     * @return the pattern as the queries see it, case folded
+     */
+    public String normalize(String pattern) {
+        return analysisChain.normalize(pattern);
+    }
 
     /**
      * Processes wildcard queries with support for multiple wildcards.
@@ -29,9 +45,17 @@ public class WildcardQueryProcessor {
      * @return Set of terms matching the pattern
      */
     public Set<String> queryPermutationIndex(String pattern) {
+        return new TreeSet<>(permutationMatches(pattern).all());
+    }
+
+    /**
+     * Terms matching the pattern by the permutation index, read in term order a page at a time.
+     */
+    public TermMatches permutationMatches(String pattern) {
         if (!pattern.contains("*")) {
             throw new IllegalArgumentException("Pattern must contain at least one wildcard (*)");
         }
+        pattern = analysisChain.normalize(pattern);
 
         // Convert to prefix*suffix format
         String[] parts = pattern.split("\\*");
@@ -43,7 +67,7 @@ public class WildcardQueryProcessor {
         // Get candidates using permutation index
         Set<String> candidates = permutationIndex.searchByPattern(simplifiedPattern);
         
-        return applyAdditionalFiltering(pattern, candidates);
+        return TermMatches.select(candidates, additionalFiltering(pattern));
     }
 
     /**
@@ -54,20 +78,30 @@ public class WildcardQueryProcessor {
      * @return Set of terms matching the pattern
      */
     public Set<String> queryTrigramIndex(String pattern) {
+        return new TreeSet<>(trigramMatches(pattern).all());
+    }
+
+    /**
+     * Terms matching the pattern by the trigram index, read in term order a page at a time.
+     */
+    public TermMatches trigramMatches(String pattern) {
         if (!pattern.contains("*")) {
             throw new IllegalArgumentException("Pattern must contain at least one wildcard (*)");
         }
+        pattern = analysisChain.normalize(pattern);
 
         // Generate all relevant trigrams from the pattern
         List<String> queryTrigrams = generateTrigramsFromPattern(pattern);
         
         if (queryTrigrams.isEmpty()) {
-            return new HashSet<>();
+            return TermMatches.NONE;
         }
 
-        Set<String> candidates = SetUtil.intersection(queryTrigrams.stream().map(trigramIndex::contains));
+        // intersect the term ids, rarest trigram first, and resolve only the terms that survive
+        int[] termIds = SetUtil.intersection(queryTrigrams.stream().map(trigramIndex::termIds).toList());
+        Set<String> candidates = trigramIndex.terms(termIds);
 
-        return applyAdditionalFiltering(pattern, candidates);
+        return TermMatches.select(candidates, additionalFiltering(pattern));
     }
 
     /**
@@ -78,49 +112,72 @@ public class WildcardQueryProcessor {
      * @return Set of terms matching the pattern
      */
     public Set<String> queryPrefixSuffixIndex(String pattern) {
+        return new TreeSet<>(prefixSuffixMatches(pattern).all());
+    }
+
+    /**
+     * Terms matching the pattern by the prefix and suffix indexes, read in term order a page at a time.
+     * With a prefix the sorted prefix index is walked from the requested term on and the walk stops once
+     * the page is full; a pattern with only a suffix selects among the terms of the suffix index.
+     */
+    public TermMatches prefixSuffixMatches(String pattern) {
         if (!pattern.contains("*")) {
             throw new IllegalArgumentException("Pattern must contain at least one wildcard (*)");
         }
+        pattern = analysisChain.normalize(pattern);
 
         // Split pattern to get prefix and suffix
         String[] parts = pattern.split("\\*");
         String prefix = parts[0];
         String suffix = parts.length > 1 ? parts[parts.length - 1] : "";
         
-        Set<String> candidates;
-        
-        if (!prefix.isEmpty() && !suffix.isEmpty()) {
-            // Get intersection of prefix and suffix matches
-            List<String> prefixMatches = prefixIndex.termsStartWith(prefix);
-            List<String> suffixMatches = suffixIndex.endsWith(suffix);
-            
-            candidates = SetUtil.intersection(new HashSet<>(prefixMatches), new HashSet<>(suffixMatches));
-        } else if (!prefix.isEmpty()) {
-            // Only prefix search
-            candidates = new HashSet<>(prefixIndex.termsStartWith(prefix));
+        Predicate<String> accept = additionalFiltering(pattern);
+        if (!prefix.isEmpty()) {
+            // suffix matches are checked on the prefix matches as they are read
+            return (from, max) -> {
+                List<String> next = new ArrayList<>();
+                String start = from;
+                while (next.size() < max) {
+                    List<String> batch = prefixIndex.termsStartWith(prefix, start, TERM_BATCH);
+                    for (String term : batch) {
+                        if (next.size() < max && term.endsWith(suffix) && accept.test(term)) {
+                            next.add(term);
+                        }
+                    }
+                    if (batch.size() < TERM_BATCH) {
+                        break;
+                    }
+                    // the smallest string after the last term read
+                    start = batch.getLast() + '\0';
+                }
+                return next;
+            };
         } else if (!suffix.isEmpty()) {
             // Only suffix search
-            candidates = new HashSet<>(suffixIndex.endsWith(suffix));
+            return TermMatches.select(suffixIndex.endsWith(suffix), accept);
         } else {
-            // Pattern is just "*" - return empty set
-            return new HashSet<>();
+            // Pattern is just "*" - no matches
+            return TermMatches.NONE;
         }
-
-        return applyAdditionalFiltering(pattern, candidates);
     }
 
-    private Set<String> applyAdditionalFiltering(String pattern, Set<String> candidates) {
+    /**
+     * @return test of a candidate against the parts of the pattern the index lookup did not check
+     */
+    private Predicate<String> additionalFiltering(String pattern) {
+        // Terms whose documents were all deleted stay in the vocabulary until the compactor purges them
+        RoaringBitmap liveDocs = documentRegistry.liveBitmap();
+        Predicate<String> accept = term -> !incidentMatrix.onlyInDeletedDocuments(term, liveDocs);
+
         // If original pattern has multiple wildcards, apply additional filtering
         if (pattern.split("\\*", -1).length > 2) {
             String regexPattern = convertWildcardToRegex(pattern);
             Pattern compiledPattern = Pattern.compile(regexPattern);
             
-            return candidates.stream()
-                    .filter(term -> compiledPattern.matcher(term).matches())
-                    .collect(Collectors.toSet());
+            accept = accept.and(term -> compiledPattern.matcher(term).matches());
         }
         
-        return candidates;
+        return accept;
     }
 
     private List<String> generateTrigramsFromPattern(String pattern) {
@@ -1,37 +1,124 @@
 package dz.folderprocessor.reader;
 
+import dz.folderprocessor.config.IndexingProps;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.sax.ToTextContentHandler;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 import org.xml.sax.SAXException;
 
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Component
-public class Fb2Reader implements FileReader {
+public class Fb2Reader implements FileReader, DisposableBean {
+
+    private static final int PIPE_BUFFER_CHARS = 64 * 1024;
 
     private final AutoDetectParser parser = new AutoDetectParser();
+    private final ExecutorService parserExecutor;
+
+    public Fb2Reader(IndexingProps indexingProps) {
+        this.parserExecutor = Executors.newFixedThreadPool(indexingProps.fb2ParserThreads() > 0
+                        ? indexingProps.fb2ParserThreads()
+                        : Runtime.getRuntime().availableProcessors(),
+                Thread.ofPlatform().name("fb2-parser-", 0).daemon().factory());
+    }
 
     @Override
     public String readFile(Path filePath) throws IOException {
-        Metadata md = new Metadata();
-        md.set(Metadata.CONTENT_TYPE, "application/x-fictionbook+xml");
-
         var textHandler = new ToTextContentHandler();      // no length limit
         try (TikaInputStream in = TikaInputStream.get(filePath)) {
-            parser.parse(in, textHandler, md);
+            parser.parse(in, textHandler, metadata());
             return textHandler.toString();
         } catch (SAXException | TikaException e) {
             throw new IOException("Failed to parse FB2 file: " + filePath, e);
         }
     }
 
+    /**
+     * Streams the text while Tika's SAX parser produces it: the parser runs on a thread of a shared pool
+     * and writes into a pipe of {@link #PIPE_BUFFER_CHARS} characters, so at most that much text is
+     * buffered regardless of the book size.
+     * <p>
+     * When every parser thread is busy, the parse waits in the pool's queue and the returned reader blocks
+     * until it starts. It must never run on the caller's thread: nobody would drain the pipe.
+     */
+    @Override
+    public Reader openReader(Path filePath) throws IOException {
+        PipedReader pipe = new PipedReader(PIPE_BUFFER_CHARS);
+        PipedWriter writer = new PipedWriter(pipe);
+        ParsingPipeReader reader = new ParsingPipeReader(pipe, filePath);
+
+        parserExecutor.execute(() -> {
+            try (TikaInputStream in = TikaInputStream.get(filePath)) {
+                parser.parse(in, new ToTextContentHandler(writer), metadata());
+            } catch (IOException | SAXException | TikaException e) {
+                reader.failure = e;
+            } finally {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    // the reading side is gone, nothing left to signal
+                }
+            }
+        });
+        return reader;
+    }
+
     @Override
     public String getFileExtension() {
         return ".fb2";
     }
-}
\ No newline at end of file
+
+    @Override
+    public void destroy() {
+        parserExecutor.shutdown();
+    }
+
+    private static Metadata metadata() {
+        Metadata md = new Metadata();
+        md.set(Metadata.CONTENT_TYPE, "application/x-fictionbook+xml");
+        return md;
+    }
+
+    /**
+     * Reading end of the pipe; reports a parse failure instead of a silent end of stream.
+     */
+    private static class ParsingPipeReader extends FilterReader {
+
+        private final Path filePath;
+        private volatile Exception failure;
+
+        ParsingPipeReader(PipedReader pipe, Path filePath) {
+            super(pipe);
+            this.filePath = filePath;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return checkEnd(super.read());
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return checkEnd(super.read(cbuf, off, len));
+        }
+
+        private int checkEnd(int result) throws IOException {
+            if (result < 0 && failure != null) {
+                throw new IOException("Failed to parse FB2 file: " + filePath, failure);
+            }
+            return result;
+        }
+    }
+}
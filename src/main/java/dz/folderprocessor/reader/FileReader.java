@@ -1,7 +1,10 @@
 package dz.folderprocessor.reader;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.file.Path;
+import java.util.List;
 
 public interface FileReader {
 
@@ -13,6 +16,34 @@ public interface FileReader {
      */
     String readFile(Path filePath) throws IOException;
 
+    /**
+     * Opens the content of a file as a character stream, so it can be fed to the analyzer without
+     * holding the whole document in memory. The caller closes the returned reader.
+     * <p>
+     * The default implementation falls back to {@link #readFile(Path)}.
+     *
+     * @param filePath the path to the file to be read
+     * @return a reader over the content of the file
+     */
+    default Reader openReader(Path filePath) throws IOException {
+        return new StringReader(readFile(filePath));
+    }
+
+    /**
+     * Opens the content of a file as consecutive parts that can be analyzed independently. Parts are
+     * split only where a word boundary is guaranteed, so analyzing them one after another produces the
+     * same tokens as analyzing the whole file. The caller closes the returned readers.
+     * <p>
+     * The default implementation does not split the content.
+     *
+     * @param filePath  the path to the file to be read
+     * @param partBytes approximate size of one part in bytes
+     * @return readers over the parts, in document order
+     */
+    default List<Reader> openParts(Path filePath, long partBytes) throws IOException {
+        return List.of(openReader(filePath));
+    }
+
     /**
      * Returns the file extension for the reader.
      *
@@ -0,0 +1,112 @@
+package dz.folderprocessor.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes a UTF-8 file straight from memory-mapped windows of the file.
+ * <p>
+ * Only the caller's char buffer lives on the heap; the bytes are paged in by the OS. Files are mapped
+ * in windows of {@link #WINDOW_SIZE} bytes, so files larger than 2 GB are supported, and a multibyte
+ * sequence split by a window boundary is decoded from the start of the next window. A reader may also
+ * cover only a byte range of the file, which must start and end on character boundaries.
+ * <p>
+ * A supplementary character read into room for a single char is decoded into a scratch buffer; its high
+ * surrogate is returned right away and the low one by the next read.
+ */
+class MappedUtf8Reader extends Reader {
+
+    static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long size;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final char[] scratch = new char[2];
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean remap = true;
+    // low surrogate still owed to the caller, or 0
+    private char pending;
+
+    MappedUtf8Reader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.start = 0;
+        this.size = channel.size();
+    }
+
+    /**
+     * @param start first byte of the range
+     * @param end   byte after the last one of the range
+     */
+    MappedUtf8Reader(Path path, long start, long end) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.start = start;
+        this.size = end;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pending != 0) {
+            cbuf[off] = pending;
+            pending = 0;
+            return 1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            if (remap && !nextWindow()) {
+                return -1;
+            }
+
+            boolean lastWindow = windowStart + window.limit() == size;
+            CoderResult result = decoder.decode(window, out, lastWindow);
+            if (result.isOverflow()) {
+                if (out.position() == off) {
+                    // only a surrogate pair can overflow an empty buffer
+                    decoder.decode(window, CharBuffer.wrap(scratch), lastWindow);
+                    cbuf[off] = scratch[0];
+                    pending = scratch[1];
+                    return 1;
+                }
+                break;
+            }
+            // Underflow: the window is exhausted or ends inside a multibyte sequence
+            remap = true;
+        }
+        return out.position() - off;
+    }
+
+    private boolean nextWindow() throws IOException {
+        long next = window == null ? start : windowStart + window.position();
+        if (next >= size) {
+            return false;
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(WINDOW_SIZE, size - next));
+        windowStart = next;
+        remap = false;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -3,20 +3,93 @@ package dz.folderprocessor.reader;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 public class TxtReader implements FileReader {
 
+    private static final int BOUNDARY_SCAN_BYTES = 64 * 1024;
+
     @Override
     public String readFile(Path filePath) throws IOException {
         return Files.readString(filePath, StandardCharsets.UTF_8);
     }
 
+    @Override
+    public Reader openReader(Path filePath) throws IOException {
+        return new MappedUtf8Reader(filePath);
+    }
+
+    @Override
+    public List<Reader> openParts(Path filePath, long partBytes) throws IOException {
+        List<Reader> parts = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = size - start <= partBytes ? size : nextBoundary(channel, start + partBytes, size);
+                parts.add(new MappedUtf8Reader(filePath, start, end));
+                start = end;
+            }
+        } catch (IOException e) {
+            for (Reader part : parts) {
+                part.close();
+            }
+            throw e;
+        }
+        return parts;
+    }
+
     @Override
     public String getFileExtension() {
         return ".txt";
     }
+
+    /**
+     * Finds the first split point at or after {@code from}: right after a line feed, or, in text without
+     * line breaks, right after a space followed by an ASCII letter or digit. Unicode word segmentation
+     * always breaks there, and neither byte occurs inside a UTF-8 multibyte sequence.
+     *
+     * @return the split offset, or {@code size} if the rest of the file has no split point
+     */
+    private static long nextBoundary(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_BYTES);
+        long offset = from;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+
+            long spaceBoundary = -1;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return offset + i + 1;
+                }
+                if (spaceBoundary < 0 && b == ' ' && i + 1 < read && isAsciiLetterOrDigit(buffer.get(i + 1))) {
+                    spaceBoundary = offset + i + 1;
+                }
+            }
+            if (spaceBoundary >= 0) {
+                return spaceBoundary;
+            }
+            // a space can be the last byte read, so the next scan starts at it again
+            offset += Math.max(1, read - 1);
+        }
+        return size;
+    }
+
+    private static boolean isAsciiLetterOrDigit(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9');
+    }
 }
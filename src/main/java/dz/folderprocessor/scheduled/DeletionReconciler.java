@@ -0,0 +1,40 @@
+package dz.folderprocessor.scheduled;
+
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.indexing.IndexPublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Catches deletions the folder watcher missed, e.g. removed directories or events lost on overflow,
+ * by checking that every live document still exists on disk.
+ */
+@Slf4j
+@Component
+@EnableScheduling
+@RequiredArgsConstructor
+public class DeletionReconciler {
+
+    private final DocumentRegistry documentRegistry;
+    private final IndexPublisher indexPublisher;
+
+    @Scheduled(fixedDelayString = "${indexing.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        int removed = 0;
+        for (String path : documentRegistry.livePaths()) {
+            if (!Files.exists(Path.of(path)) && indexPublisher.delete(path)) {
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            log.info("Reconciliation removed {} deleted files from the index", removed);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package dz.folderprocessor.scheduled;
+
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.data.Dictionary;
+import dz.folderprocessor.data.DocumentLengths;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.data.InverseIndex;
+import dz.folderprocessor.indexing.CompactableIndex;
+import dz.folderprocessor.indexing.Deduplicator;
+import dz.folderprocessor.indexing.IndexPublisher;
+import dz.folderprocessor.indexing.VocabularyIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Background pass that reclaims postings of replaced and deleted documents.
+ * <p>
+ * Replacing or deleting a document only flips live-docs bits, so an edit costs as much as indexing that
+ * one file. The dead postings, incident bits and terms left without any document are removed here, in slices of {@code indexing.compaction-slice-size} keys; each slice
+ * runs with publishing paused and is followed by a short pause so ingestion keeps flowing. The whole pass
+ * runs as one maintenance pass, so a segment snapshot never sees postings purged halfway through.
+ */
+@Slf4j
+@Component
+@EnableScheduling
+@RequiredArgsConstructor
+public class IndexCompactor {
+
+    private final DocumentRegistry documentRegistry;
+    private final IndexPublisher indexPublisher;
+    private final List<CompactableIndex> indexes;
+    private final List<VocabularyIndex> vocabularyIndexes;
+    private final Dictionary dictionary;
+    private final InverseIndex inverseIndex;
+    private final IndexingProps indexingProps;
+    private final Deduplicator deduplicator;
+    private final DocumentLengths documentLengths;
+
+    @Scheduled(fixedDelayString = "${indexing.compaction-interval-ms:60000}")
+    public void compact() {
+        BitSet deleted = documentRegistry.deletedDocuments();
+        if (deleted.isEmpty()) {
+            return;
+        }
+        indexPublisher.runMaintenance(() -> purge(deleted));
+    }
+
+    private void purge(BitSet deleted) {
+        long start = System.currentTimeMillis();
+        long removed = 0;
+        try {
+            for (CompactableIndex index : indexes) {
+                removed += compact(index, deleted);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        documentRegistry.forgetPurged(deleted);
+        deduplicator.forgetPurged(deleted);
+        documentLengths.forgetPurged(deleted);
+        log.info("Compaction purged {} documents, {} postings in {} ms",
+                deleted.cardinality(), removed, System.currentTimeMillis() - start);
+    }
+
+    private long compact(CompactableIndex index, BitSet deleted) throws InterruptedException {
+        long[] keys = index.compactionKeys();
+        int sliceSize = indexingProps.compactionSliceSize();
+        long[] removed = new long[1];
+
+        for (int from = 0; from < keys.length; from += sliceSize) {
+            int sliceFrom = from;
+            int sliceTo = Math.min(from + sliceSize, keys.length);
+            indexPublisher.runExclusive(() -> {
+                for (int i = sliceFrom; i < sliceTo; i++) {
+                    long occurrences = index.compact(keys[i], deleted);
+                    // term frequencies and the vocabulary follow the positional index
+                    if (occurrences > 0 && index == inverseIndex) {
+                        int termId = (int) keys[i];
+                        dictionary.subtractFrequency(termId, occurrences);
+                        String term = dictionary.term(termId);
+                        if (term != null && !inverseIndex.containsTerm(termId)) {
+                            vocabularyIndexes.forEach(vocabulary -> vocabulary.removeTerm(termId, term));
+                        }
+                    }
+                    removed[0] += occurrences;
+                }
+            });
+            Thread.sleep(indexingProps.compactionPauseMs());
+        }
+        return removed[0];
+    }
+}
@@ -0,0 +1,41 @@
+package dz.folderprocessor.scheduled;
+
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.data.PrefixIndex;
+import dz.folderprocessor.data.SuffixIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Folds the terms buffered by the prefix and suffix indexes into new FSTs, so the vocabulary is compact
+ * whether or not segments are committed.
+ */
+@Slf4j
+@Component
+@EnableScheduling
+@RequiredArgsConstructor
+public class VocabularyFstBuilder {
+
+    private final PrefixIndex prefixIndex;
+    private final SuffixIndex suffixIndex;
+    private final IndexingProps indexingProps;
+
+    @Scheduled(fixedDelayString = "${indexing.fst-rebuild-interval-ms:10000}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            boolean prefixes = prefixIndex.rebuild(indexingProps.fstRebuildMinTerms());
+            boolean suffixes = suffixIndex.rebuild(indexingProps.fstRebuildMinTerms());
+            if (prefixes || suffixes) {
+                log.info("Rebuilt vocabulary FSTs in {} ms", System.currentTimeMillis() - start);
+            }
+        } catch (IOException e) {
+            log.error("Failed to rebuild vocabulary FSTs", e);
+        }
+    }
+}
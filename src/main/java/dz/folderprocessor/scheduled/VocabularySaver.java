@@ -8,36 +8,153 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 
+/**
+ * Keeps the vocabulary files in the vocabulary folder in step with the {@link Dictionary}.
+ * <p>
+ * {@code vocabulary.txt} holds the terms sorted, each with its collection frequency. Between rewrites a
+ * run appends to {@code vocabulary.log} only the terms the dictionary marked as changed, one term and
+ * frequency delta per line; a term removed by the compactor gets the delta that brings it to zero. Once the
+ * log has as many lines as the file has terms, the file is rewritten through a temporary file and an atomic
+ * rename and the log starts over. The first run after startup always rewrites, so the files never depend
+ * on a previous process.
+ */
 @Slf4j
 @Component
 @EnableScheduling
 @RequiredArgsConstructor
 public class VocabularySaver {
+
+    private static final String VOCABULARY_FILE = "vocabulary.txt";
+    private static final String LOG_FILE = "vocabulary.log";
+
     private final PathProps pathProps;
     private final Dictionary dictionary;
 
-    private int previousHash;
+    // terms and frequencies as they stand in the files, by term id
+    private String[] savedTerms = new String[0];
+    private long[] savedFrequencies = new long[0];
+    private int savedCount;
+    private long logLines;
+    private boolean rewritten;
 
     @Scheduled(fixedRate = 60000)
-    public void saveVocabularyToDisk() {
-        var words = dictionary.getVocabulary();
-        var currentHash = words.hashCode();
+    public synchronized void saveVocabularyToDisk() {
+        BitSet changed = dictionary.drainChanges();
+        try {
+            if (!rewritten || logLines + changed.cardinality() > savedCount) {
+                rewrite();
+            } else if (changed.isEmpty()) {
+                log.info("Vocabulary has not changed, skipping save.");
+            } else {
+                append(changed);
+            }
+        } catch (IOException e) {
+            // the drained changes are not in the files, so the next run starts from a full rewrite
+            rewritten = false;
+            log.error("Failed to save vocabulary", e);
+        }
+    }
+
+    private void append(BitSet changed) throws IOException {
+        grow(dictionary.maxTermId());
+        Path logFile = pathProps.vocabulary().resolve(LOG_FILE);
+        int lines = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (int termId = changed.nextSetBit(0); termId >= 0; termId = changed.nextSetBit(termId + 1)) {
+                String term = dictionary.term(termId);
+                if (term == null) {
+                    term = savedTerms[termId];
+                }
+                long frequency = dictionary.frequency(termId);
+                long delta = frequency - savedFrequencies[termId];
+                if (term == null || delta == 0) {
+                    continue;
+                }
 
-        if (currentHash == previousHash) {
-            log.info("Vocabulary has not changed, skipping save.");
-            return;
+                writer.write(term);
+                writer.write('\t');
+                writer.write(Long.toString(delta));
+                writer.newLine();
+                lines++;
+                save(termId, term, frequency);
+            }
         }
+        logLines += lines;
+        log.info("Appended {} vocabulary changes to {}", lines, logFile);
+    }
 
-        previousHash = currentHash;
-        try {
-            var filePath = pathProps.vocabulary().resolve("vocabulary.txt");
-            Files.write(filePath, words);
-            log.info("Vocabulary saved to {}", filePath);
-        } catch (Exception e) {
-            log.error("Failed to save vocabulary", e);
+    private void rewrite() throws IOException {
+        int count = dictionary.maxTermId();
+        savedTerms = new String[count];
+        savedFrequencies = new long[count];
+        savedCount = 0;
+        Integer[] order = new Integer[count];
+        int present = 0;
+        for (int termId = 0; termId < count; termId++) {
+            String term = dictionary.term(termId);
+            long frequency = dictionary.frequency(termId);
+            if (term != null && frequency > 0) {
+                save(termId, term, frequency);
+                order[present++] = termId;
+            }
+        }
+        Integer[] sorted = Arrays.copyOf(order, present);
+        Arrays.sort(sorted, Comparator.comparing(termId -> savedTerms[termId]));
+
+        Path directory = Files.createDirectories(pathProps.vocabulary());
+        Path file = directory.resolve(VOCABULARY_FILE);
+        Path temporary = directory.resolve(VOCABULARY_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel), StandardCharsets.UTF_8), 64 * 1024);
+            for (int termId : sorted) {
+                writer.write(savedTerms[termId]);
+                writer.write('\t');
+                writer.write(Long.toString(savedFrequencies[termId]));
+                writer.newLine();
+            }
+            writer.flush();
+            channel.force(true);
         }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(directory.resolve(LOG_FILE));
+
+        logLines = 0;
+        rewritten = true;
+        log.info("Vocabulary of {} terms saved to {}", present, file);
+    }
 
+    private void save(int termId, String term, long frequency) {
+        if (savedFrequencies[termId] == 0 && frequency != 0) {
+            savedCount++;
+        } else if (savedFrequencies[termId] != 0 && frequency == 0) {
+            savedCount--;
+        }
+        savedTerms[termId] = term;
+        savedFrequencies[termId] = frequency;
+    }
+
+    private void grow(int count) {
+        if (count > savedTerms.length) {
+            int capacity = Math.max(count, savedTerms.length * 2);
+            savedTerms = Arrays.copyOf(savedTerms, capacity);
+            savedFrequencies = Arrays.copyOf(savedFrequencies, capacity);
+        }
     }
 }
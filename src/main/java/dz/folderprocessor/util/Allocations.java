@@ -0,0 +1,25 @@
+package dz.folderprocessor.util;
+
+import java.lang.management.ManagementFactory;
+
+public class Allocations {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    /**
+     * Returns the number of bytes allocated on the heap by the current thread so far,
+     * or 0 if the JVM does not support allocation tracking.
+     */
+    public static long currentThread() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+}
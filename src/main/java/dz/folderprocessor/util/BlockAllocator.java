@@ -0,0 +1,57 @@
+package dz.folderprocessor.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of byte blocks for index structures that manage their own storage, such as compressed postings.
+ * <p>
+ * Blocks are allocated and freed by the single index writer and read concurrently by queries. A freed
+ * block may be handed out again, so readers must walk blocks inside {@link #enter()}: a block freed while
+ * any reader is inside is only reused after that reader has left.
+ */
+public interface BlockAllocator extends AutoCloseable {
+
+    /**
+     * Tag of blocks that belong to no allocator, such as data mapped from a segment file; they are never freed.
+     */
+    int FOREIGN_SLAB = -2;
+
+    /**
+     * A block of {@code capacity} bytes starting at {@code offset} in a buffer that may be shared with
+     * other blocks.
+     *
+     * @param slab allocator-specific tag of the buffer the block belongs to
+     */
+    record Block(ByteBuffer buffer, int offset, int capacity, int slab) {}
+
+    /**
+     * @param reservedBytes bytes held by the allocator, including free space in its slabs
+     * @param usedBytes     bytes in blocks handed out and not freed
+     * @param retiredBytes  bytes freed but waiting for running readers before they can be reused
+     */
+    record Usage(String storage, long reservedBytes, long usedBytes, long retiredBytes) {}
+
+    interface ReadGuard extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * @return a block of at least the given capacity; its content is undefined
+     */
+    Block allocate(int capacity);
+
+    void free(Block block);
+
+    /**
+     * Marks the start of a read; the blocks visible to the caller stay valid until the guard is closed.
+     */
+    ReadGuard enter();
+
+    Usage usage();
+
+    @Override
+    default void close() {
+    }
+}
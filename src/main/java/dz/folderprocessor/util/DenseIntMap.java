@@ -0,0 +1,83 @@
+package dz.folderprocessor.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Map from small non-negative {@code int} keys, such as term ids, to values, stored as a plain array
+ * indexed by the key instead of hash nodes with boxed keys.
+ * <p>
+ * Built for one writer at a time (the index publisher) and any number of concurrent readers: slots are
+ * read and written with volatile semantics and the array is replaced as a whole when it grows.
+ */
+public class DenseIntMap<V> {
+
+    private volatile AtomicReferenceArray<V> values = new AtomicReferenceArray<>(1024);
+    private int size;
+
+    /**
+     * @return the value for the key, or null if there is none
+     */
+    public V get(int key) {
+        AtomicReferenceArray<V> current = values;
+        return key < current.length() ? current.get(key) : null;
+    }
+
+    public void put(int key, V value) {
+        AtomicReferenceArray<V> current = values;
+        if (key >= current.length()) {
+            int capacity = current.length();
+            while (capacity <= key) {
+                capacity *= 2;
+            }
+            AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            values = grown;
+            current = grown;
+        }
+        if (current.getAndSet(key, value) == null) {
+            size++;
+        }
+    }
+
+    public void remove(int key) {
+        AtomicReferenceArray<V> current = values;
+        if (key < current.length() && current.getAndSet(key, null) != null) {
+            size--;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return number of keys with a value; only exact when read by the writer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a snapshot of the keys holding a value, in ascending order
+     */
+    public int[] keys() {
+        return keys(key -> true);
+    }
+
+    /**
+     * @return a snapshot of the matching keys holding a value, in ascending order
+     */
+    public int[] keys(IntPredicate filter) {
+        AtomicReferenceArray<V> current = values;
+        IntList result = new IntList();
+        for (int key = 0; key < current.length(); key++) {
+            if (current.get(key) != null && filter.test(key)) {
+                result.add(key);
+            }
+        }
+        return result.toArray();
+    }
+}
@@ -0,0 +1,83 @@
+package dz.folderprocessor.util;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys were seen recently, the history behind
+ * TinyLFU admission. Each key has one counter in each of four rows and its estimate is the smallest of
+ * them. After {@code 10 * width} increments every counter is halved, so old popularity fades.
+ * Not thread-safe.
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    // two counters per byte
+    private final byte[][] rows;
+    private final int mask;
+    private final int sampleSize;
+    private int increments;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public FrequencySketch(int width) {
+        int counters = Integer.highestOneBit((Math.max(16, width) - 1) << 1);
+        rows = new byte[DEPTH][counters / 2];
+        mask = counters - 1;
+        sampleSize = 10 * counters;
+    }
+
+    public void increment(Object key) {
+        long hash = key.hashCode();
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            int count = counter(row, index);
+            if (count < MAX_COUNT) {
+                set(row, index, count + 1);
+                added = true;
+            }
+        }
+        if (added && ++increments == sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * @return estimated recent occurrences of the key, at most 15
+     */
+    public int frequency(Object key) {
+        long hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counter(row, index(hash, row)));
+        }
+        return frequency;
+    }
+
+    private void age() {
+        for (byte[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                // halves both nibbles at once
+                row[i] = (byte) ((row[i] & 0xFF) >>> 1 & 0x77);
+            }
+        }
+        increments /= 2;
+    }
+
+    private int index(long hash, int row) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[row];
+        return (int) (mixed ^ mixed >>> 32) & mask;
+    }
+
+    private int counter(int row, int index) {
+        return rows[row][index >>> 1] >>> ((index & 1) << 2) & 0xF;
+    }
+
+    private void set(int row, int index, int count) {
+        int shift = (index & 1) << 2;
+        rows[row][index >>> 1] = (byte) (rows[row][index >>> 1] & ~(0xF << shift) | count << shift);
+    }
+}
@@ -0,0 +1,37 @@
+package dz.folderprocessor.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates every block as its own heap array; freed blocks are left to the garbage collector, which
+ * also keeps them alive for readers still holding them, so reads need no guard.
+ */
+public class HeapBlockAllocator implements BlockAllocator {
+
+    private static final ReadGuard NO_GUARD = () -> {};
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    @Override
+    public Block allocate(int capacity) {
+        usedBytes.addAndGet(capacity);
+        return new Block(ByteBuffer.wrap(new byte[capacity]), 0, capacity, -1);
+    }
+
+    @Override
+    public void free(Block block) {
+        usedBytes.addAndGet(-block.capacity());
+    }
+
+    @Override
+    public ReadGuard enter() {
+        return NO_GUARD;
+    }
+
+    @Override
+    public Usage usage() {
+        long used = usedBytes.get();
+        return new Usage("heap", used, used, 0);
+    }
+}
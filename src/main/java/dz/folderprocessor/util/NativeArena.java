@@ -0,0 +1,264 @@
+package dz.folderprocessor.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocates blocks from direct (off-heap) buffers, so the bulk of the index data is not traced or copied
+ * by the garbage collector; the heap keeps only the small {@link Block} handles.
+ * <p>
+ * Block sizes are rounded up to a power of two. Each size class carves its blocks out of slabs of
+ * {@code slabBytes}; blocks larger than a slab get a dedicated buffer. Freed blocks are reused by later
+ * allocations of the same class, and a slab whose blocks are all free is released to the operating system
+ * right away, without waiting for a garbage collection, as is every dedicated buffer.
+ * <p>
+ * Reuse is deferred with read epochs: a freed block is retired into the current epoch, and the epoch's
+ * blocks are only reclaimed once it is closed and every reader that entered it has left. Allocation and
+ * freeing come from the index writer; {@link #enter()} is lock-free.
+ */
+@Slf4j
+public class NativeArena implements BlockAllocator {
+
+    private static final int MIN_BLOCK_SHIFT = 4;
+    // retired blocks collected before the epoch is closed and their reclamation becomes possible
+    private static final int EPOCH_BLOCKS = 256;
+
+    // Unsafe.invokeCleaner bound to the Unsafe instance, looked up by name so javac does not see the internal API
+    private static final MethodHandle CLEANER = cleaner();
+
+    private final int slabBytes;
+    private final int maxBlockShift;
+    private final List<ArrayDeque<Slab>> available = new ArrayList<>();
+    private final List<Slab> slabs = new ArrayList<>();
+    private final IntList freeSlabIds = new IntList();
+
+    private volatile Epoch current = new Epoch();
+    private final ArrayDeque<Epoch> closed = new ArrayDeque<>();
+
+    private volatile long reservedBytes;
+    private volatile long usedBytes;
+    private volatile long retiredBytes;
+
+    private static final class Slab {
+        final int id;
+        final ByteBuffer buffer;
+        final int blockSize;
+        final int blocks;
+        final IntList freeOffsets = new IntList();
+        int nextFresh;
+        int inUse;
+
+        Slab(int id, ByteBuffer buffer, int blockSize) {
+            this.id = id;
+            this.buffer = buffer;
+            this.blockSize = blockSize;
+            this.blocks = buffer.capacity() / blockSize;
+        }
+
+        boolean isFull() {
+            return inUse == blocks;
+        }
+    }
+
+    private static final class Epoch {
+        final AtomicInteger readers = new AtomicInteger();
+        final List<Block> retired = new ArrayList<>();
+    }
+
+    /**
+     * @param slabBytes size of the buffers shared by small blocks, rounded up to a power of two
+     */
+    public NativeArena(int slabBytes) {
+        this.maxBlockShift = Math.max(MIN_BLOCK_SHIFT, 32 - Integer.numberOfLeadingZeros(slabBytes - 1));
+        this.slabBytes = 1 << maxBlockShift;
+        for (int shift = MIN_BLOCK_SHIFT; shift <= maxBlockShift; shift++) {
+            available.add(new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public synchronized Block allocate(int capacity) {
+        int shift = Math.max(MIN_BLOCK_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1));
+        if (shift > maxBlockShift) {
+            Slab dedicated = newSlab(capacity, capacity);
+            dedicated.inUse = 1;
+            usedBytes += capacity;
+            return new Block(dedicated.buffer, 0, capacity, dedicated.id);
+        }
+
+        ArrayDeque<Slab> candidates = available.get(shift - MIN_BLOCK_SHIFT);
+        if (candidates.isEmpty()) {
+            // retired blocks of this class may be reusable before a new slab is needed
+            closeEpoch();
+            reclaim();
+        }
+        Slab slab = candidates.peekFirst();
+        if (slab == null) {
+            slab = newSlab(slabBytes, 1 << shift);
+            candidates.addFirst(slab);
+        }
+
+        int offset;
+        if (!slab.freeOffsets.isEmpty()) {
+            offset = slab.freeOffsets.removeLast();
+        } else {
+            offset = slab.nextFresh;
+            slab.nextFresh += slab.blockSize;
+        }
+        slab.inUse++;
+        if (slab.isFull()) {
+            candidates.removeFirst();
+        }
+        usedBytes += slab.blockSize;
+        return new Block(slab.buffer, offset, slab.blockSize, slab.id);
+    }
+
+    @Override
+    public synchronized void free(Block block) {
+        Epoch epoch = current;
+        epoch.retired.add(block);
+        retiredBytes += block.capacity();
+        usedBytes -= block.capacity();
+        if (epoch.retired.size() >= EPOCH_BLOCKS) {
+            closeEpoch();
+        }
+        reclaim();
+    }
+
+    @Override
+    public ReadGuard enter() {
+        while (true) {
+            Epoch epoch = current;
+            epoch.readers.incrementAndGet();
+            // a reader that registered after the epoch was closed might be missed by the writer
+            if (epoch == current) {
+                return epoch.readers::decrementAndGet;
+            }
+            epoch.readers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Usage usage() {
+        return new Usage("off-heap", reservedBytes, usedBytes, retiredBytes);
+    }
+
+    /**
+     * Releases all native memory. Only safe once no index uses the arena any more.
+     */
+    @Override
+    public synchronized void close() {
+        for (Slab slab : slabs) {
+            if (slab != null) {
+                release(slab.buffer);
+            }
+        }
+        slabs.clear();
+        freeSlabIds.clear();
+        available.forEach(ArrayDeque::clear);
+        closed.clear();
+        current = new Epoch();
+        reservedBytes = 0;
+        usedBytes = 0;
+        retiredBytes = 0;
+    }
+
+    private void closeEpoch() {
+        Epoch epoch = current;
+        if (!epoch.retired.isEmpty()) {
+            current = new Epoch();
+            closed.addLast(epoch);
+        }
+    }
+
+    /**
+     * Returns the blocks of closed epochs without readers to their slabs, oldest epoch first.
+     */
+    private void reclaim() {
+        while (!closed.isEmpty() && closed.peekFirst().readers.get() == 0) {
+            for (Block block : closed.removeFirst().retired) {
+                retiredBytes -= block.capacity();
+                reuse(block);
+            }
+        }
+    }
+
+    private void reuse(Block block) {
+        Slab slab = slabs.get(block.slab());
+        slab.inUse--;
+        if (slab.blocks == 1) {
+            dropSlab(slab, null);
+            return;
+        }
+
+        ArrayDeque<Slab> candidates = available.get(Integer.numberOfTrailingZeros(slab.blockSize) - MIN_BLOCK_SHIFT);
+        boolean wasFull = slab.inUse + 1 == slab.blocks;
+        if (slab.inUse == 0 && (candidates.size() > (wasFull ? 0 : 1))) {
+            // another slab of the class has room, so the empty one goes back to the system
+            dropSlab(slab, wasFull ? null : candidates);
+            return;
+        }
+        slab.freeOffsets.add(block.offset());
+        if (wasFull) {
+            candidates.addLast(slab);
+        }
+    }
+
+    private Slab newSlab(int bytes, int blockSize) {
+        int id;
+        if (freeSlabIds.isEmpty()) {
+            id = slabs.size();
+            slabs.add(null);
+        } else {
+            id = freeSlabIds.removeLast();
+        }
+        Slab slab = new Slab(id, ByteBuffer.allocateDirect(bytes), blockSize);
+        slabs.set(id, slab);
+        reservedBytes += bytes;
+        return slab;
+    }
+
+    private void dropSlab(Slab slab, ArrayDeque<Slab> candidates) {
+        if (candidates != null) {
+            candidates.remove(slab);
+        }
+        slabs.set(slab.id, null);
+        freeSlabIds.add(slab.id);
+        reservedBytes -= slab.buffer.capacity();
+        release(slab.buffer);
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (CLEANER == null) {
+            return;
+        }
+        try {
+            CLEANER.invokeExact(buffer);
+        } catch (Throwable e) {
+            log.warn("Direct buffer not released explicitly, native memory is freed by the GC: {}", e.toString());
+        }
+    }
+
+    private static MethodHandle cleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Direct buffers cannot be released explicitly, native memory is freed by the GC: {}", e.toString());
+            return null;
+        }
+    }
+}
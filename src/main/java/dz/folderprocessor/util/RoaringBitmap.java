@@ -0,0 +1,906 @@
+package dz.folderprocessor.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable compressed set of non-negative {@code int} values in the Roaring layout.
+ * <p>
+ * Values are split by their upper 16 bits into chunks of 65536; each non-empty chunk is a container that
+ * holds the lower 16 bits in whichever form is smallest: a sorted {@code char} array for sparse chunks
+ * (at most {@value #ARRAY_MAX} values), a 1024-word bitmap for dense ones, or a list of runs for long
+ * stretches of consecutive values. A term found in a handful of documents therefore costs a few bytes
+ * instead of a bitset as wide as the largest document id.
+ * <p>
+ * Set operations return new bitmaps and never modify their operands, so indexes can hand out the stored
+ * instance without cloning it. Results may share containers with the operands.
+ * <p>
+ * {@link #append(int)} is the one exception to full immutability: for the single writer building a
+ * bitmap in ascending order, it reuses the spare capacity of the last container. Older versions never
+ * read past their own length, except that bitmap and run containers are extended in place, so an older
+ * version may already report the value being appended. Indexes only append documents that are not yet
+ * live, and every query masks its result with the live documents.
+ */
+public final class RoaringBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int RUN_MAX = 2048;
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int size;
+
+    private RoaringBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static RoaringBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Converts a bitset chunk by chunk, choosing the smallest container for each.
+     */
+    public static RoaringBitmap of(BitSet bits) {
+        long[] words = bits.toLongArray();
+        int chunks = (words.length + BITMAP_WORDS - 1) / BITMAP_WORDS;
+        char[] keys = new char[chunks];
+        Container[] containers = new Container[chunks];
+        int size = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = chunk * BITMAP_WORDS;
+            long[] chunkWords = Arrays.copyOfRange(words, from, from + BITMAP_WORDS);
+            Container container = fromWords(chunkWords);
+            if (container != null) {
+                keys[size] = (char) chunk;
+                containers[size++] = optimize(container);
+            }
+        }
+        return new RoaringBitmap(keys, containers, size);
+    }
+
+    /**
+     * Returns this set with a value larger than or equal to every value in it added. Only the single
+     * writer that owns the bitmap may call this, and only on the latest version.
+     *
+     * @throws IllegalArgumentException if the value is smaller than the largest one in the set
+     */
+    public RoaringBitmap append(int value) {
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+
+        if (size > 0 && keys[size - 1] == high) {
+            Container last = containers[size - 1];
+            if (last.last() >= low) {
+                if (last.last() == low) {
+                    return this;
+                }
+                throw new IllegalArgumentException("Value " + value + " is not after " + last());
+            }
+            Container[] copy = Arrays.copyOf(containers, size);
+            copy[size - 1] = last.append(low);
+            return new RoaringBitmap(keys, copy, size);
+        }
+
+        if (size > 0 && keys[size - 1] > high) {
+            throw new IllegalArgumentException("Value " + value + " is not after " + last());
+        }
+        char[] grownKeys = Arrays.copyOf(keys, size + 1);
+        Container[] grown = Arrays.copyOf(containers, size + 1);
+        grownKeys[size] = high;
+        char[] values = new char[4];
+        values[0] = low;
+        grown[size] = new ArrayContainer(values, 1);
+        return new RoaringBitmap(grownKeys, grown, size + 1);
+    }
+
+    /**
+     * Returns this set with the value added. Only the container the value falls into is copied, so a
+     * set changed one value at a time costs a container per change rather than a copy of all of it.
+     */
+    public RoaringBitmap with(int value) {
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+        int index = Arrays.binarySearch(keys, 0, size, high);
+        if (index >= 0) {
+            if (containers[index].contains(low)) {
+                return this;
+            }
+            Container[] copy = Arrays.copyOf(containers, size);
+            copy[index] = with(containers[index], low);
+            return new RoaringBitmap(keys, copy, size);
+        }
+
+        int insert = -index - 1;
+        char[] grownKeys = new char[size + 1];
+        Container[] grown = new Container[size + 1];
+        System.arraycopy(keys, 0, grownKeys, 0, insert);
+        System.arraycopy(containers, 0, grown, 0, insert);
+        grownKeys[insert] = high;
+        grown[insert] = singleton(low);
+        System.arraycopy(keys, insert, grownKeys, insert + 1, size - insert);
+        System.arraycopy(containers, insert, grown, insert + 1, size - insert);
+        return new RoaringBitmap(grownKeys, grown, size + 1);
+    }
+
+    /**
+     * Returns this set without the value, copying only the container it falls into.
+     */
+    public RoaringBitmap without(int value) {
+        char low = (char) value;
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (index < 0 || !containers[index].contains(low)) {
+            return this;
+        }
+
+        Container container = without(containers[index], low);
+        if (container != null) {
+            Container[] copy = Arrays.copyOf(containers, size);
+            copy[index] = container;
+            return new RoaringBitmap(keys, copy, size);
+        }
+        if (size == 1) {
+            return EMPTY;
+        }
+        char[] shrunkKeys = new char[size - 1];
+        Container[] shrunk = new Container[size - 1];
+        System.arraycopy(keys, 0, shrunkKeys, 0, index);
+        System.arraycopy(containers, 0, shrunk, 0, index);
+        System.arraycopy(keys, index + 1, shrunkKeys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, shrunk, index, size - index - 1);
+        return new RoaringBitmap(shrunkKeys, shrunk, size - 1);
+    }
+
+    public RoaringBitmap and(RoaringBitmap other) {
+        char[] resultKeys = new char[Math.min(size, other.size)];
+        Container[] result = new Container[resultKeys.length];
+        int count = 0;
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = and(containers[i], other.containers[j]);
+                if (container != null) {
+                    resultKeys[count] = keys[i];
+                    result[count++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return count == 0 ? EMPTY : new RoaringBitmap(resultKeys, result, count);
+    }
+
+    public RoaringBitmap or(RoaringBitmap other) {
+        char[] resultKeys = new char[size + other.size];
+        Container[] result = new Container[resultKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                resultKeys[count] = keys[i];
+                result[count++] = containers[i++];
+            } else if (i == size || keys[i] > other.keys[j]) {
+                resultKeys[count] = other.keys[j];
+                result[count++] = other.containers[j++];
+            } else {
+                resultKeys[count] = keys[i];
+                result[count++] = or(containers[i++], other.containers[j++]);
+            }
+        }
+        return count == 0 ? EMPTY : new RoaringBitmap(resultKeys, result, count);
+    }
+
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        char[] resultKeys = new char[size];
+        Container[] result = new Container[size];
+        int count = 0;
+        for (int i = 0, j = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? andNot(containers[i], other.containers[j])
+                    : containers[i];
+            if (container != null) {
+                resultKeys[count] = keys[i];
+                result[count++] = container;
+            }
+        }
+        return count == 0 ? EMPTY : new RoaringBitmap(resultKeys, result, count);
+    }
+
+    /**
+     * Returns this set without the given values, with every container rebuilt in its smallest form.
+     */
+    public RoaringBitmap without(BitSet removed) {
+        List<Character> resultKeys = new ArrayList<>();
+        List<Container> result = new ArrayList<>();
+        char[] values = new char[ARRAY_MAX];
+        for (int i = 0; i < size; i++) {
+            int base = keys[i] << 16;
+            long[] words = null;
+            int count = 0;
+            for (PrimitiveIterator.OfInt it = containers[i].stream().iterator(); it.hasNext(); ) {
+                int low = it.nextInt();
+                if (removed.get(base | low)) {
+                    continue;
+                }
+                if (words != null) {
+                    words[low >>> 6] |= 1L << low;
+                } else if (count < ARRAY_MAX) {
+                    values[count++] = (char) low;
+                } else {
+                    words = new long[BITMAP_WORDS];
+                    for (int k = 0; k < count; k++) {
+                        words[values[k] >>> 6] |= 1L << values[k];
+                    }
+                    words[low >>> 6] |= 1L << low;
+                }
+            }
+            Container container = words != null ? fromWords(words)
+                    : count > 0 ? new ArrayContainer(Arrays.copyOf(values, count), count) : null;
+            if (container != null) {
+                resultKeys.add(keys[i]);
+                result.add(optimize(container));
+            }
+        }
+
+        char[] keyArray = new char[resultKeys.size()];
+        for (int i = 0; i < keyArray.length; i++) {
+            keyArray[i] = resultKeys.get(i);
+        }
+        return keyArray.length == 0 ? EMPTY : new RoaringBitmap(keyArray, result.toArray(Container[]::new), keyArray.length);
+    }
+
+    /**
+     * Returns the values up to and including {@code max}. Safe to call on a version the writer is still
+     * appending to, as long as it only appends values above {@code max}: the only container such appends
+     * can reach is copied, unless it is an array container, whose appends stay past its cardinality.
+     */
+    public RoaringBitmap upTo(int max) {
+        if (max < 0) {
+            return EMPTY;
+        }
+        char high = (char) (max >>> 16);
+        char low = (char) max;
+
+        int count = 0;
+        while (count < size && keys[count] < high) {
+            count++;
+        }
+        char[] resultKeys = Arrays.copyOf(keys, count + 1);
+        Container[] result = Arrays.copyOf(containers, count + 1);
+        if (count < size && keys[count] == high) {
+            Container head = containers[count];
+            if (!(head instanceof ArrayContainer) || head.last() > low) {
+                head = headOf(head, low);
+            }
+            if (head != null) {
+                resultKeys[count] = high;
+                result[count++] = head;
+            }
+        }
+        return count == 0 ? EMPTY : new RoaringBitmap(resultKeys, result, count);
+    }
+
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Compares the containers of matching chunks without building the intersection, stopping at the
+     * first common value.
+     *
+     * @return true if the sets have a value in common
+     */
+    public boolean intersects(RoaringBitmap other) {
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else if (intersects(containers[i++], other.containers[j++])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the largest value, or -1 for an empty set
+     */
+    public int last() {
+        return size == 0 ? -1 : keys[size - 1] << 16 | containers[size - 1].last();
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public IntStream stream() {
+        return IntStream.range(0, size).flatMap(i -> {
+            int base = keys[i] << 16;
+            return containers[i].stream().map(low -> base | low);
+        });
+    }
+
+    /**
+     * @return the values from {@code from} on in ascending order; containers below it are not visited
+     */
+    public IntStream stream(int from) {
+        if (from <= 0) {
+            return stream();
+        }
+        char high = (char) (from >>> 16);
+        int first = Arrays.binarySearch(keys, 0, size, high);
+        return IntStream.range(first >= 0 ? first : -first - 1, size).flatMap(i -> {
+            int base = keys[i] << 16;
+            IntStream values = containers[i].stream().map(low -> base | low);
+            return keys[i] == high ? values.dropWhile(value -> value < from) : values;
+        });
+    }
+
+    /**
+     * @return a modifiable bitset of the values
+     */
+    public BitSet toBitSet() {
+        BitSet bits = new BitSet(last() + 1);
+        stream().forEach(bits::set);
+        return bits;
+    }
+
+    /**
+     * @return approximate heap size of the containers and their keys
+     */
+    public long sizeInBytes() {
+        long bytes = 2L * size;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the containers as they are, so {@link #readFrom(DataInput)} restores the same layout.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            switch (containers[i]) {
+                case ArrayContainer array -> {
+                    out.writeByte(0);
+                    out.writeInt(array.cardinality());
+                    for (int k = 0; k < array.cardinality(); k++) {
+                        out.writeChar(array.values()[k]);
+                    }
+                }
+                case BitmapContainer bitmap -> {
+                    out.writeByte(1);
+                    out.writeInt(bitmap.cardinality());
+                    for (long word : bitmap.bits()) {
+                        out.writeLong(word);
+                    }
+                }
+                case RunContainer run -> {
+                    out.writeByte(2);
+                    out.writeInt(run.runCount());
+                    for (int k = 0; k < 2 * run.runCount(); k++) {
+                        out.writeChar(run.runs()[k]);
+                    }
+                }
+            }
+        }
+    }
+
+    public static RoaringBitmap readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        char[] keys = new char[size];
+        Container[] containers = new Container[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = in.readChar();
+            byte type = in.readByte();
+            int count = in.readInt();
+            containers[i] = switch (type) {
+                case 0 -> new ArrayContainer(readChars(in, count), count);
+                case 1 -> {
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int k = 0; k < BITMAP_WORDS; k++) {
+                        words[k] = in.readLong();
+                    }
+                    yield new BitmapContainer(words, count);
+                }
+                case 2 -> new RunContainer(readChars(in, 2 * count), count);
+                default -> throw new IOException("Unknown container type " + type);
+            };
+        }
+        return size == 0 ? EMPTY : new RoaringBitmap(keys, containers, size);
+    }
+
+    private static char[] readChars(DataInput in, int count) throws IOException {
+        char[] values = new char[count];
+        for (int k = 0; k < count; k++) {
+            values[k] = in.readChar();
+        }
+        return values;
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer array) {
+            return filter(array, b, true);
+        }
+        if (b instanceof ArrayContainer array) {
+            return filter(array, a, true);
+        }
+        long[] words = a.words();
+        long[] other = b.words();
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            words[i] &= other[i];
+        }
+        return fromWords(words);
+    }
+
+    private static boolean intersects(Container a, Container b) {
+        if (a instanceof ArrayContainer array) {
+            return containsAny(array, b);
+        }
+        if (b instanceof ArrayContainer array) {
+            return containsAny(array, a);
+        }
+        if (a instanceof RunContainer run) {
+            return overlaps(run, b);
+        }
+        if (b instanceof RunContainer run) {
+            return overlaps(run, a);
+        }
+        long[] words = ((BitmapContainer) a).bits();
+        long[] other = ((BitmapContainer) b).bits();
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            if ((words[i] & other[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAny(ArrayContainer array, Container other) {
+        for (int i = 0; i < array.cardinality(); i++) {
+            if (other.contains(array.values()[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param other a bitmap or run container
+     */
+    private static boolean overlaps(RunContainer run, Container other) {
+        char[] runs = run.runs();
+        if (other instanceof RunContainer that) {
+            char[] otherRuns = that.runs();
+            for (int i = 0, j = 0; i < run.runCount() && j < that.runCount(); ) {
+                int end = runs[2 * i] + runs[2 * i + 1];
+                int otherEnd = otherRuns[2 * j] + otherRuns[2 * j + 1];
+                if (end < otherRuns[2 * j]) {
+                    i++;
+                } else if (otherEnd < runs[2 * i]) {
+                    j++;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long[] bits = ((BitmapContainer) other).bits();
+        for (int r = 0; r < run.runCount(); r++) {
+            int start = runs[2 * r];
+            int end = start + runs[2 * r + 1];
+            for (int w = start >>> 6; w <= end >>> 6; w++) {
+                long mask = -1L;
+                if (w == start >>> 6) {
+                    mask &= -1L << start;
+                }
+                if (w == end >>> 6) {
+                    mask &= -1L >>> 63 - (end & 63);
+                }
+                if ((bits[w] & mask) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer x && b instanceof ArrayContainer y
+                && x.cardinality() + y.cardinality() <= ARRAY_MAX) {
+            return union(x, y);
+        }
+        long[] words = a.words();
+        long[] other = b.words();
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            words[i] |= other[i];
+        }
+        return fromWords(words);
+    }
+
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer array) {
+            return filter(array, b, false);
+        }
+        long[] words = a.words();
+        long[] other = b.words();
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            words[i] &= ~other[i];
+        }
+        return fromWords(words);
+    }
+
+    /**
+     * Keeps the values of the array that are ({@code keep == true}) or are not contained in the other container.
+     */
+    private static Container filter(ArrayContainer array, Container other, boolean keep) {
+        char[] values = new char[array.cardinality()];
+        int count = 0;
+        for (int i = 0; i < array.cardinality(); i++) {
+            char value = array.values()[i];
+            if (other.contains(value) == keep) {
+                values[count++] = value;
+            }
+        }
+        return count == 0 ? null : new ArrayContainer(values, count);
+    }
+
+    private static Container union(ArrayContainer a, ArrayContainer b) {
+        char[] values = new char[a.cardinality() + b.cardinality()];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.cardinality() || j < b.cardinality()) {
+            if (j == b.cardinality() || (i < a.cardinality() && a.values()[i] < b.values()[j])) {
+                values[count++] = a.values()[i++];
+            } else if (i == a.cardinality() || a.values()[i] > b.values()[j]) {
+                values[count++] = b.values()[j++];
+            } else {
+                values[count++] = a.values()[i++];
+                j++;
+            }
+        }
+        return new ArrayContainer(values, count);
+    }
+
+    private static Container singleton(char value) {
+        return new ArrayContainer(new char[]{value}, 1);
+    }
+
+    /**
+     * @param value a value not in the container
+     */
+    private static Container with(Container container, char value) {
+        if (container instanceof BitmapContainer bitmap) {
+            long[] words = bitmap.words();
+            words[value >>> 6] |= 1L << value;
+            return new BitmapContainer(words, bitmap.cardinality() + 1);
+        }
+        return or(container, singleton(value));
+    }
+
+    /**
+     * @param value a value in the container
+     * @return the container without the value, or null if it held only the value
+     */
+    private static Container without(Container container, char value) {
+        if (container instanceof BitmapContainer bitmap && bitmap.cardinality() > ARRAY_MAX + 1) {
+            long[] words = bitmap.words();
+            words[value >>> 6] &= ~(1L << value);
+            return new BitmapContainer(words, bitmap.cardinality() - 1);
+        }
+        return andNot(container, singleton(value));
+    }
+
+    /**
+     * @return a copy of the container's values up to {@code max}, or null if there are none
+     */
+    private static Container headOf(Container container, char max) {
+        int[] values = container.stream().takeWhile(value -> value <= max).toArray();
+        if (values.length == 0) {
+            return null;
+        }
+        if (values.length <= ARRAY_MAX) {
+            char[] chars = new char[values.length];
+            for (int i = 0; i < values.length; i++) {
+                chars[i] = (char) values[i];
+            }
+            return optimize(new ArrayContainer(chars, chars.length));
+        }
+        long[] words = new long[BITMAP_WORDS];
+        for (int value : values) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return optimize(new BitmapContainer(words, values.length));
+    }
+
+    /**
+     * @return the smallest container for the words, or null if no bit is set
+     */
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_MAX) {
+            return new BitmapContainer(words, cardinality);
+        }
+
+        char[] values = new char[cardinality];
+        int count = 0;
+        for (int i = 0; i < words.length; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                values[count++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+            }
+        }
+        return new ArrayContainer(values, cardinality);
+    }
+
+    /**
+     * Re-encodes the container as runs when that is smaller than its current form.
+     */
+    private static Container optimize(Container container) {
+        if (container instanceof RunContainer) {
+            return container;
+        }
+
+        int runs = 0;
+        int previous = -2;
+        for (PrimitiveIterator.OfInt it = container.stream().iterator(); it.hasNext(); ) {
+            int value = it.nextInt();
+            if (value != previous + 1) {
+                runs++;
+            }
+            previous = value;
+        }
+        if (runs > RUN_MAX || 4L * runs >= container.sizeInBytes()) {
+            return container;
+        }
+
+        char[] pairs = new char[2 * runs];
+        int run = -1;
+        previous = -2;
+        for (PrimitiveIterator.OfInt it = container.stream().iterator(); it.hasNext(); ) {
+            int value = it.nextInt();
+            if (value != previous + 1) {
+                run++;
+                pairs[2 * run] = (char) value;
+            }
+            pairs[2 * run + 1] = (char) (value - pairs[2 * run]);
+            previous = value;
+        }
+        return new RunContainer(pairs, runs);
+    }
+
+    /**
+     * Lower 16 bits of the values of one chunk; values are passed and returned as {@code char}.
+     */
+    private sealed interface Container permits ArrayContainer, BitmapContainer, RunContainer {
+
+        int cardinality();
+
+        char last();
+
+        boolean contains(char value);
+
+        /**
+         * @param value a value larger than {@link #last()}
+         */
+        Container append(char value);
+
+        IntStream stream();
+
+        /**
+         * @return a fresh bitmap of the values
+         */
+        long[] words();
+
+        long sizeInBytes();
+    }
+
+    /**
+     * Sorted values; slots past the cardinality are spare capacity for {@link #append(char)}.
+     */
+    private record ArrayContainer(char[] values, int cardinality) implements Container {
+
+        @Override
+        public char last() {
+            return values[cardinality - 1];
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public Container append(char value) {
+            if (cardinality == ARRAY_MAX) {
+                long[] words = words();
+                words[value >>> 6] |= 1L << value;
+                return new BitmapContainer(words, cardinality + 1);
+            }
+            char[] target = cardinality == values.length
+                    ? Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2))
+                    : values;
+            target[cardinality] = value;
+            return new ArrayContainer(target, cardinality + 1);
+        }
+
+        @Override
+        public IntStream stream() {
+            return IntStream.range(0, cardinality).map(i -> values[i]);
+        }
+
+        @Override
+        public long[] words() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return 2L * cardinality;
+        }
+    }
+
+    private record BitmapContainer(long[] bits, int cardinality) implements Container {
+
+        @Override
+        public char last() {
+            for (int i = BITMAP_WORDS - 1; ; i--) {
+                if (bits[i] != 0) {
+                    return (char) (i << 6 | 63 - Long.numberOfLeadingZeros(bits[i]));
+                }
+            }
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (bits[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        public Container append(char value) {
+            bits[value >>> 6] |= 1L << value;
+            return new BitmapContainer(bits, cardinality + 1);
+        }
+
+        @Override
+        public IntStream stream() {
+            return IntStream.range(0, BITMAP_WORDS)
+                    .filter(i -> bits[i] != 0)
+                    .flatMap(i -> {
+                        long word = bits[i];
+                        int[] values = new int[Long.bitCount(word)];
+                        for (int k = 0; word != 0; word &= word - 1) {
+                            values[k++] = i << 6 | Long.numberOfTrailingZeros(word);
+                        }
+                        return IntStream.of(values);
+                    });
+        }
+
+        @Override
+        public long[] words() {
+            return bits.clone();
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return 8L * BITMAP_WORDS;
+        }
+    }
+
+    /**
+     * Runs as pairs of start and length minus one; pairs past the run count are spare capacity.
+     */
+    private record RunContainer(char[] runs, int runCount) implements Container {
+
+        @Override
+        public int cardinality() {
+            int cardinality = 0;
+            for (int r = 0; r < runCount; r++) {
+                cardinality += runs[2 * r + 1] + 1;
+            }
+            return cardinality;
+        }
+
+        @Override
+        public char last() {
+            return (char) (runs[2 * runCount - 2] + runs[2 * runCount - 1]);
+        }
+
+        @Override
+        public boolean contains(char value) {
+            // last run starting at or before the value
+            int lo = 0;
+            int hi = runCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi >= 0 && value - runs[2 * hi] <= runs[2 * hi + 1];
+        }
+
+        @Override
+        public Container append(char value) {
+            if (value == last() + 1) {
+                runs[2 * runCount - 1]++;
+                return new RunContainer(runs, runCount);
+            }
+            if (runCount == RUN_MAX) {
+                long[] words = words();
+                words[value >>> 6] |= 1L << value;
+                return new BitmapContainer(words, cardinality() + 1);
+            }
+            char[] target = 2 * runCount == runs.length ? Arrays.copyOf(runs, 4 * runCount) : runs;
+            target[2 * runCount] = value;
+            target[2 * runCount + 1] = 0;
+            return new RunContainer(target, runCount + 1);
+        }
+
+        @Override
+        public IntStream stream() {
+            return IntStream.range(0, runCount)
+                    .flatMap(r -> IntStream.rangeClosed(runs[2 * r], runs[2 * r] + runs[2 * r + 1]));
+        }
+
+        @Override
+        public long[] words() {
+            long[] words = new long[BITMAP_WORDS];
+            stream().forEach(value -> words[value >>> 6] |= 1L << value);
+            return words;
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return 4L * runCount;
+        }
+    }
+}
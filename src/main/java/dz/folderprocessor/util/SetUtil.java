@@ -1,12 +1,84 @@
 package dz.folderprocessor.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
 
 public class SetUtil {
 
+    /**
+     * Returns the intersection of ascending {@code int} arrays without modifying them. Starts from the
+     * shortest array and narrows it in place against the others, finding each value with a galloping
+     * search from the previous match, so a short array costs little against a long one.
+     *
+     * @param sets arrays of distinct values in ascending order
+     * @return a new ascending array of the values present in all arrays, empty if there are none
+     */
+    public static int[] intersection(List<int[]> sets) {
+        if (sets.isEmpty()) {
+            return new int[0];
+        }
+
+        List<int[]> sorted = new ArrayList<>(sets);
+        sorted.sort(Comparator.comparingInt(set -> set.length));
+        int[] result = sorted.getFirst().clone();
+        int size = result.length;
+        for (int i = 1; i < sorted.size() && size > 0; i++) {
+            int[] other = sorted.get(i);
+            int kept = 0;
+            int from = 0;
+            for (int k = 0; k < size && from < other.length; k++) {
+                from = gallop(other, from, other.length, result[k]);
+                if (from < other.length && other[from] == result[k]) {
+                    result[kept++] = result[k];
+                }
+            }
+            size = kept;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Finds the first value at least {@code target} in an ascending range by probing {@code from + 1, 2, 4...}
+     * and binary searching the last step, which costs the logarithm of the distance moved rather than of
+     * the range.
+     *
+     * @return index of the first value in {@code [from, to)} at least {@code target}, or {@code to}
+     */
+    public static int gallop(int[] values, int from, int to, int target) {
+        int low = from;
+        int step = 1;
+        while (low < to && values[low] < target) {
+            int probe = low + step;
+            if (probe >= to || values[probe] >= target) {
+                return binarySearch(values, low + 1, Math.min(probe, to), target);
+            }
+            low = probe + 1;
+            step <<= 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first value in {@code [low, high)} at least {@code target}, or {@code high}
+     */
+    private static int binarySearch(int[] values, int low, int high, int target) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
     /**
      * Returns the intersection of two sets without modifying the original sets.
      * 
@@ -24,6 +96,7 @@ public class SetUtil {
 
     /**
      * Returns the intersection of a collection of sets without modifying the original sets.
+     * Copies only the smallest set and retains into it, so the result never grows past it.
      * Returns an empty set if the collection is empty or if any set is empty.
      * 
      * @param <T> the type of elements in the sets
@@ -34,21 +107,13 @@ public class SetUtil {
         if (sets.isEmpty()) {
             return new HashSet<>();
         }
-        
-        Set<T> result = null;
-        for (Set<T> set : sets) {
-            if (set.isEmpty()) {
-                return new HashSet<>(); // Any empty set makes intersection empty
-            }
-            
-            if (result == null) {
-                result = new HashSet<>(set);
-            } else {
-                result.retainAll(set);
-                if (result.isEmpty()) {
-                    return result; // Early exit if intersection becomes empty
-                }
-            }
+
+        List<Set<T>> sorted = new ArrayList<>(sets);
+        sorted.sort(Comparator.comparingInt(Set::size));
+        Set<T> result = new HashSet<>(sorted.getFirst());
+        for (int i = 1; i < sorted.size() && !result.isEmpty(); i++) {
+            Set<T> set = sorted.get(i);
+            result.removeIf(element -> !set.contains(element));
         }
         
         return result;
@@ -56,16 +121,14 @@ public class SetUtil {
 
     /**
      * Returns the intersection of a stream of sets without modifying the original sets.
-     * Uses stream reduce with pair intersection for functional approach.
      * Returns an empty set if the stream is empty.
      * 
      * @param <T> the type of elements in the sets
      * @param setsStream the stream of sets to intersect
      * @return a new set containing elements that are in all sets
+     * @see #intersection(Collection)
      */
     public static <T> Set<T> intersection(Stream<Set<T>> setsStream) {
-        return setsStream
-                .reduce(SetUtil::intersection)
-                .orElse(new HashSet<>());
+        return intersection(setsStream.toList());
     }
 }
\ No newline at end of file
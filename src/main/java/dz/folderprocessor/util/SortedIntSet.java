@@ -0,0 +1,152 @@
+package dz.folderprocessor.util;
+
+import dz.folderprocessor.util.BlockAllocator.Block;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Set of {@code int} values kept as one ascending array, for small id sets such as the terms sharing
+ * a trigram.
+ * <p>
+ * Built for one writer and concurrent readers: every change publishes a new immutable view in a single
+ * volatile write. Appending a value larger than all others, the usual case for freshly assigned ids,
+ * reuses the spare capacity of the array instead of copying it.
+ * <p>
+ * The array lives in a block of a {@link BlockAllocator}, on or off the heap; reads enter the allocator's
+ * read guard themselves, so callers only ever see copies.
+ */
+public class SortedIntSet {
+
+    private static final Block NO_BLOCK = new Block(ByteBuffer.allocate(0), 0, 0, -1);
+
+    private record View(Block block, int size) {
+
+        int get(int index) {
+            return block.buffer().getInt(block.offset() + 4 * index);
+        }
+
+        /**
+         * @return index of the value, or {@code -(insertion point) - 1} like {@link java.util.Arrays#binarySearch}
+         */
+        int indexOf(int value) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int midValue = get(mid);
+                if (midValue < value) {
+                    lo = mid + 1;
+                } else if (midValue > value) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+    }
+
+    private final BlockAllocator allocator;
+
+    private volatile View view = new View(NO_BLOCK, 0);
+
+    public SortedIntSet(BlockAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * @return false if the value was already present
+     */
+    public boolean add(int value) {
+        View current = view;
+        int size = current.size();
+
+        if (size > 0 && current.get(size - 1) >= value) {
+            int index = current.indexOf(value);
+            if (index >= 0) {
+                return false;
+            }
+            int insertAt = -index - 1;
+            Block copy = allocator.allocate(4 * Math.max(4, size * 2));
+            copy(current, 0, copy, 0, insertAt);
+            copy.buffer().putInt(copy.offset() + 4 * insertAt, value);
+            copy(current, insertAt, copy, insertAt + 1, size - insertAt);
+            publish(new View(copy, size + 1), current);
+            return true;
+        }
+
+        Block block = current.block();
+        if (4 * (size + 1) > block.capacity()) {
+            block = allocator.allocate(4 * Math.max(4, size * 2));
+            copy(current, 0, block, 0, size);
+        }
+        // slots past the published size are not visible to readers, so this write is safe
+        block.buffer().putInt(block.offset() + 4 * size, value);
+        publish(new View(block, size + 1), current);
+        return true;
+    }
+
+    /**
+     * @return false if the value was not present
+     */
+    public boolean remove(int value) {
+        View current = view;
+        int index = current.indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        int size = current.size();
+        Block copy = size == 1 ? NO_BLOCK : allocator.allocate(current.block().capacity());
+        copy(current, 0, copy, 0, index);
+        copy(current, index + 1, copy, index, size - index - 1);
+        publish(new View(copy, size - 1), current);
+        return true;
+    }
+
+    public boolean contains(int value) {
+        try (BlockAllocator.ReadGuard guard = allocator.enter()) {
+            return view.indexOf(value) >= 0;
+        }
+    }
+
+    public int size() {
+        return view.size();
+    }
+
+    public boolean isEmpty() {
+        return view.size() == 0;
+    }
+
+    /**
+     * @return a copy of the values in ascending order
+     */
+    public int[] toArray() {
+        try (BlockAllocator.ReadGuard guard = allocator.enter()) {
+            View current = view;
+            int[] values = new int[current.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = current.get(i);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Empties the set and returns its storage to the allocator; called when the set is dropped.
+     */
+    public void release() {
+        publish(new View(NO_BLOCK, 0), view);
+    }
+
+    private void publish(View next, View previous) {
+        view = next;
+        if (previous.block() != next.block() && previous.block() != NO_BLOCK) {
+            allocator.free(previous.block());
+        }
+    }
+
+    private static void copy(View from, int fromIndex, Block to, int toIndex, int count) {
+        Block source = from.block();
+        to.buffer().put(to.offset() + 4 * toIndex, source.buffer(), source.offset() + 4 * fromIndex, 4 * count);
+    }
+}
@@ -0,0 +1,24 @@
+package dz.folderprocessor.web.controller;
+
+import dz.folderprocessor.persistence.SegmentStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RequestMapping("/admin")
+@RestController
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final SegmentStore segmentStore;
+
+    /**
+     * Commits a segment now instead of waiting for the scheduled commit.
+     */
+    @PostMapping("/snapshot")
+    public SegmentStore.Status snapshot() {
+        segmentStore.commit();
+        return segmentStore.status();
+    }
+}
@@ -1,52 +1,383 @@
 package dz.folderprocessor.web.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dz.folderprocessor.config.QueryProps;
+import dz.folderprocessor.data.DocumentRegistry;
 import dz.folderprocessor.query.BooleanQueryProcessor;
+import dz.folderprocessor.query.DocumentMatches;
 import dz.folderprocessor.query.PhrasalQueryProcessor;
+import dz.folderprocessor.query.QueryResultCache;
+import dz.folderprocessor.query.RankedQueryProcessor;
+import dz.folderprocessor.query.TermMatches;
 import dz.folderprocessor.query.WildcardQueryProcessor;
+import dz.folderprocessor.util.IntList;
 import dz.folderprocessor.web.dto.QueryRequest;
+import dz.folderprocessor.web.dto.RankedQueryRequest;
+import dz.folderprocessor.web.dto.ResultPage;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+/**
+ * Query endpoints. Each query returns all of its results as a JSON array. Its {@code /page} endpoint
+ * returns them in pages of {@code limit} documents, or terms for wildcard queries, in doc id or term
+ * order; the {@code nextCursor} of a page is the first document or term of the next one, so a cursor
+ * stays valid while documents are added or deleted. Requests accepting {@code application/x-ndjson}
+ * get all the results from the cursor and offset on, up to the limit if one is set, as one JSON string
+ * per line, written as the matches are found. Results of repeated
+ * queries come from the {@link QueryResultCache} unless the request bypasses it.
+ */
 @RequestMapping("/query")
 @RestController
 @RequiredArgsConstructor
 public class QueryController {
 
+    private static final int STREAM_BATCH = 1024;
+
     private final BooleanQueryProcessor booleanQueryProcessor;
     private final PhrasalQueryProcessor phrasalQueryProcessor;
     private final WildcardQueryProcessor wildcardQueryProcessor;
+    private final RankedQueryProcessor rankedQueryProcessor;
+    private final DocumentRegistry documentRegistry;
+    private final QueryProps queryProps;
+    private final ObjectMapper objectMapper;
+    private final QueryResultCache queryResultCache;
 
     @PostMapping("/bool")
     public List<String> booleanQuery(@RequestBody QueryRequest request) {
-        return booleanQueryProcessor.processQuery(request.getQuery());
+        return paths(booleanMatches(request));
+    }
+
+    @PostMapping("/bool/page")
+    public ResultPage booleanQueryPage(@RequestBody QueryRequest request) {
+        return page(booleanMatches(request), request);
+    }
+
+    @PostMapping(value = "/bool", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> booleanQueryStream(@RequestBody QueryRequest request) {
+        return stream(booleanMatches(request), request);
+    }
+
+    @PostMapping("/bool/explain")
+    public BooleanQueryProcessor.Explanation booleanQueryExplain(@RequestBody QueryRequest request) {
+        return booleanQueryProcessor.explain(request.getQuery());
+    }
+
+    @PostMapping("/ranked")
+    public List<RankedQueryProcessor.ScoredDocument> rankedQuery(@RequestBody RankedQueryRequest request) {
+        return rankedQueryProcessor.search(request.getQuery(), request.getLimit());
     }
 
     @PostMapping("/phrase/coordinate")
     public List<String> phrasalQueryCoordinate(@RequestBody QueryRequest request) {
-        return phrasalQueryProcessor.containsPhraseCoordinateIndex(request.getQuery());
+        return paths(coordinateMatches(request));
+    }
+
+    @PostMapping("/phrase/coordinate/page")
+    public ResultPage phrasalQueryCoordinatePage(@RequestBody QueryRequest request) {
+        return page(coordinateMatches(request), request);
+    }
+
+    @PostMapping(value = "/phrase/coordinate", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> phrasalQueryCoordinateStream(@RequestBody QueryRequest request) {
+        return stream(coordinateMatches(request), request);
     }
 
     @PostMapping("/phrase/pair")
     public List<String> phrasalQueryPair(@RequestBody QueryRequest request) {
-        return phrasalQueryProcessor.containsPhrasePairIndex(request.getQuery());
+        return paths(pairMatches(request));
+    }
+
+    @PostMapping("/phrase/pair/page")
+    public ResultPage phrasalQueryPairPage(@RequestBody QueryRequest request) {
+        return page(pairMatches(request), request);
+    }
+
+    @PostMapping(value = "/phrase/pair", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> phrasalQueryPairStream(@RequestBody QueryRequest request) {
+        return stream(pairMatches(request), request);
     }
 
     @PostMapping("/wildcard/permutation")
-    public Set<String> wildcardPermutationQuery(@RequestBody QueryRequest request) {
-        return wildcardQueryProcessor.queryPermutationIndex(request.getQuery());
+    public List<String> wildcardPermutationQuery(@RequestBody QueryRequest request) {
+        return permutationTerms(request).all();
+    }
+
+    @PostMapping("/wildcard/permutation/page")
+    public ResultPage wildcardPermutationQueryPage(@RequestBody QueryRequest request) {
+        return page(permutationTerms(request), request);
+    }
+
+    @PostMapping(value = "/wildcard/permutation", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> wildcardPermutationQueryStream(@RequestBody QueryRequest request) {
+        return stream(permutationTerms(request), request);
     }
 
     @PostMapping("/wildcard/trigram")
-    public Set<String> wildcardTrigramQuery(@RequestBody QueryRequest request) {
-        return wildcardQueryProcessor.queryTrigramIndex(request.getQuery());
+    public List<String> wildcardTrigramQuery(@RequestBody QueryRequest request) {
+        return trigramTerms(request).all();
+    }
+
+    @PostMapping("/wildcard/trigram/page")
+    public ResultPage wildcardTrigramQueryPage(@RequestBody QueryRequest request) {
+        return page(trigramTerms(request), request);
+    }
+
+    @PostMapping(value = "/wildcard/trigram", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> wildcardTrigramQueryStream(@RequestBody QueryRequest request) {
+        return stream(trigramTerms(request), request);
     }
 
     @PostMapping("/wildcard/prefix-suffix")
-    public Set<String> wildcardPrefixSuffixQuery(@RequestBody QueryRequest request) {
-        return wildcardQueryProcessor.queryPrefixSuffixIndex(request.getQuery());
+    public List<String> wildcardPrefixSuffixQuery(@RequestBody QueryRequest request) {
+        return prefixSuffixTerms(request).all();
+    }
+
+    @PostMapping("/wildcard/prefix-suffix/page")
+    public ResultPage wildcardPrefixSuffixQueryPage(@RequestBody QueryRequest request) {
+        return page(prefixSuffixTerms(request), request);
+    }
+
+    @PostMapping(value = "/wildcard/prefix-suffix", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> wildcardPrefixSuffixQueryStream(@RequestBody QueryRequest request) {
+        return stream(prefixSuffixTerms(request), request);
+    }
+
+    private DocumentMatches booleanMatches(QueryRequest request) {
+        return documents("bool", request, booleanQueryProcessor::normalize, booleanQueryProcessor::matches);
+    }
+
+    private DocumentMatches coordinateMatches(QueryRequest request) {
+        return documents("phrase/coordinate", request,
+                phrasalQueryProcessor::normalize, phrasalQueryProcessor::coordinateMatches);
+    }
+
+    private DocumentMatches pairMatches(QueryRequest request) {
+        return documents("phrase/pair", request,
+                phrasalQueryProcessor::normalize, phrasalQueryProcessor::pairMatches);
+    }
+
+    private DocumentMatches documents(String kind, QueryRequest request, UnaryOperator<String> normalize,
+                                      Function<String, DocumentMatches> search) {
+        String query = request.getQuery();
+        if (request.isBypassCache()) {
+            return search.apply(query);
+        }
+        return queryResultCache.documents(kind, normalize.apply(query), () -> search.apply(query));
+    }
+
+    private TermMatches permutationTerms(QueryRequest request) {
+        return wildcardTerms("wildcard/permutation", request, wildcardQueryProcessor::permutationMatches);
+    }
+
+    private TermMatches trigramTerms(QueryRequest request) {
+        return wildcardTerms("wildcard/trigram", request, wildcardQueryProcessor::trigramMatches);
+    }
+
+    private TermMatches prefixSuffixTerms(QueryRequest request) {
+        return wildcardTerms("wildcard/prefix-suffix", request, wildcardQueryProcessor::prefixSuffixMatches);
+    }
+
+    private TermMatches wildcardTerms(String kind, QueryRequest request, Function<String, TermMatches> search) {
+        String query = request.getQuery();
+        if (request.isBypassCache()) {
+            return search.apply(query);
+        }
+        return queryResultCache.terms(kind, wildcardQueryProcessor.normalize(query), () -> search.apply(query));
+    }
+
+    /**
+     * @return the paths of all the matches
+     */
+    private List<String> paths(DocumentMatches matches) {
+        IntList docIds = matches.next(0, Integer.MAX_VALUE);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < docIds.size(); i++) {
+            paths.addAll(documentRegistry.getDocumentPaths(docIds.get(i)));
+        }
+        return paths;
+    }
+
+    /**
+     * Reads one document past the page to tell whether there is a next page and where it starts.
+     */
+    private ResultPage page(DocumentMatches matches, QueryRequest request) {
+        int limit = limit(request, queryProps.pageDefaultLimit(), queryProps.pageMaxLimit());
+        IntList docIds = matches.next(skip(matches, docCursor(request), offset(request)), limit + 1);
+
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, docIds.size()); i++) {
+            paths.addAll(documentRegistry.getDocumentPaths(docIds.get(i)));
+        }
+        return new ResultPage(paths, docIds.size() > limit ? Integer.toString(docIds.get(limit)) : null);
+    }
+
+    private ResultPage page(TermMatches matches, QueryRequest request) {
+        int limit = limit(request, queryProps.pageDefaultLimit(), queryProps.pageMaxLimit());
+        String from = skip(matches, termCursor(request), offset(request));
+        List<String> terms = from == null ? List.of() : matches.next(from, limit + 1);
+
+        return new ResultPage(List.copyOf(terms.subList(0, Math.min(limit, terms.size()))),
+                terms.size() > limit ? terms.get(limit) : null);
+    }
+
+    /**
+     * The matches are read a batch at a time on the response thread, each batch written and flushed
+     * before the next one is searched for.
+     */
+    private ResponseEntity<StreamingResponseBody> stream(DocumentMatches matches, QueryRequest request) {
+        int limit = limit(request, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        int cursor = docCursor(request);
+        int offset = offset(request);
+
+        return ndjson(out -> {
+            int from = skip(matches, cursor, offset);
+            int remaining = limit;
+            while (remaining > 0) {
+                int batch = Math.min(STREAM_BATCH, remaining);
+                IntList docIds = matches.next(from, batch);
+                for (int i = 0; i < docIds.size(); i++) {
+                    for (String path : documentRegistry.getDocumentPaths(docIds.get(i))) {
+                        writeLine(out, path);
+                    }
+                }
+                out.flush();
+                if (docIds.size() < batch) {
+                    break;
+                }
+                remaining -= batch;
+                from = docIds.get(batch - 1) + 1;
+            }
+        });
+    }
+
+    /**
+     * Like the document stream, but the batches double in size: a batch of terms selected among unsorted
+     * candidates takes a pass over all of them, so a long stream makes only a few passes.
+     */
+    private ResponseEntity<StreamingResponseBody> stream(TermMatches matches, QueryRequest request) {
+        int limit = limit(request, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        String cursor = termCursor(request);
+        int offset = offset(request);
+
+        return ndjson(out -> {
+            String from = skip(matches, cursor, offset);
+            int remaining = limit;
+            int batch = STREAM_BATCH;
+            while (from != null && remaining > 0) {
+                batch = Math.min(batch, remaining);
+                List<String> terms = matches.next(from, batch);
+                for (String term : terms) {
+                    writeLine(out, term);
+                }
+                out.flush();
+                if (terms.size() < batch) {
+                    break;
+                }
+                remaining -= batch;
+                from = after(terms.getLast());
+                batch = (int) Math.min(Integer.MAX_VALUE, 2L * batch);
+            }
+        });
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, String value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
+    /**
+     * Passes over {@code offset} matches from the cursor in bounded batches.
+     *
+     * @return the doc id to read the first result from
+     */
+    private static int skip(DocumentMatches matches, int from, int offset) {
+        while (offset > 0) {
+            int batch = Math.min(STREAM_BATCH, offset);
+            IntList docIds = matches.next(from, batch);
+            if (docIds.size() < batch) {
+                return Integer.MAX_VALUE;
+            }
+            offset -= batch;
+            from = docIds.get(batch - 1) + 1;
+        }
+        return from;
+    }
+
+    /**
+     * Passes over {@code offset} terms from the cursor in bounded batches.
+     *
+     * @return the term to read the first result from, or null if there are no more
+     */
+    private static String skip(TermMatches matches, String from, int offset) {
+        while (offset > 0) {
+            int batch = Math.min(STREAM_BATCH, offset);
+            List<String> terms = matches.next(from, batch);
+            if (terms.size() < batch) {
+                return null;
+            }
+            offset -= batch;
+            from = after(terms.getLast());
+        }
+        return from;
     }
 
+    /**
+     * @return the smallest string sorting after the term
+     */
+    private static String after(String term) {
+        return term + '\0';
+    }
+
+    private static int limit(QueryRequest request, int defaultLimit, int max) {
+        if (request.getLimit() == null) {
+            return defaultLimit;
+        }
+        if (request.getLimit() < 1 || request.getLimit() > max) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + max);
+        }
+        return request.getLimit();
+    }
+
+    private static int offset(QueryRequest request) {
+        if (request.getOffset() == null) {
+            return 0;
+        }
+        if (request.getOffset() < 0) {
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        return request.getOffset();
+    }
+
+    private static String termCursor(QueryRequest request) {
+        return request.getCursor() == null ? "" : request.getCursor();
+    }
+
+    private static int docCursor(QueryRequest request) {
+        if (request.getCursor() == null) {
+            return 0;
+        }
+        try {
+            int docId = Integer.parseInt(request.getCursor());
+            if (docId >= 0) {
+                return docId;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + request.getCursor());
+    }
 }
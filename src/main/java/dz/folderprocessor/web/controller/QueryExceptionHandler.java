@@ -0,0 +1,22 @@
+package dz.folderprocessor.web.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Turns the {@link IllegalArgumentException}s the query endpoints throw for malformed queries and invalid
+ * paging input into 400 responses that carry the message, instead of a 500.
+ */
+@Slf4j
+@RestControllerAdvice(assignableTypes = QueryController.class)
+public class QueryExceptionHandler {
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ProblemDetail handleInvalidQuery(IllegalArgumentException e) {
+        log.debug("Rejected query: {}", e.getMessage());
+        return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+}
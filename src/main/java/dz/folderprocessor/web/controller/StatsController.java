@@ -0,0 +1,84 @@
+package dz.folderprocessor.web.controller;
+
+import dz.folderprocessor.data.IncidentMatrix;
+import dz.folderprocessor.data.FstTermSet;
+import dz.folderprocessor.data.InverseIndex;
+import dz.folderprocessor.data.PostingsStats;
+import dz.folderprocessor.data.PrefixIndex;
+import dz.folderprocessor.data.SuffixIndex;
+import dz.folderprocessor.data.WordPairIndex;
+import dz.folderprocessor.indexing.BootstrapLoader;
+import dz.folderprocessor.indexing.IngestMetrics;
+import dz.folderprocessor.persistence.SegmentStore;
+import dz.folderprocessor.persistence.WriteAheadLog;
+import dz.folderprocessor.query.QueryResultCache;
+import dz.folderprocessor.util.BlockAllocator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RequestMapping("/stats")
+@RestController
+@RequiredArgsConstructor
+public class StatsController {
+
+    private final IngestMetrics ingestMetrics;
+    private final BootstrapLoader bootstrapLoader;
+    private final InverseIndex inverseIndex;
+    private final WordPairIndex wordPairIndex;
+    private final IncidentMatrix incidentMatrix;
+    private final PrefixIndex prefixIndex;
+    private final SuffixIndex suffixIndex;
+    private final BlockAllocator postingsAllocator;
+    private final SegmentStore segmentStore;
+    private final WriteAheadLog writeAheadLog;
+    private final QueryResultCache queryResultCache;
+
+    @GetMapping("/ingest")
+    public IngestMetrics.Snapshot ingest() {
+        return ingestMetrics.snapshot();
+    }
+
+    @GetMapping("/postings")
+    public Map<String, PostingsStats> postings() {
+        return Map.of("terms", inverseIndex.stats(), "wordPairs", wordPairIndex.stats());
+    }
+
+    @GetMapping("/incidence")
+    public IncidentMatrix.Stats incidence() {
+        return incidentMatrix.stats();
+    }
+
+    @GetMapping("/vocabulary")
+    public Map<String, FstTermSet.Stats> vocabulary() {
+        return Map.of("prefixes", prefixIndex.stats(), "suffixes", suffixIndex.stats());
+    }
+
+    @GetMapping("/memory")
+    public BlockAllocator.Usage memory() {
+        return postingsAllocator.usage();
+    }
+
+    @GetMapping("/segment")
+    public SegmentStore.Status segment() {
+        return segmentStore.status();
+    }
+
+    @GetMapping("/wal")
+    public WriteAheadLog.Status wal() {
+        return writeAheadLog.status();
+    }
+
+    @GetMapping("/query-cache")
+    public QueryResultCache.Stats queryCache() {
+        return queryResultCache.stats();
+    }
+
+    @GetMapping("/bootstrap")
+    public BootstrapLoader.Status bootstrap() {
+        return bootstrapLoader.status();
+    }
+}
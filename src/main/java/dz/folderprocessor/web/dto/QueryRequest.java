@@ -5,4 +5,13 @@ import lombok.Data;
 @Data
 public class QueryRequest {
     private String query;
+    // the paging fields apply to the /page endpoints and to NDJSON streams
+    // page size in documents (terms for wildcard queries); all paths of a document come in the same page
+    private Integer limit;
+    // results to skip after the cursor, or from the start without one
+    private Integer offset;
+    // nextCursor of the previous page
+    private String cursor;
+    // computes the results afresh, neither reading nor filling the query result cache
+    private boolean bypassCache;
 }
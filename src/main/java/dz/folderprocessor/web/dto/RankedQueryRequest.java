@@ -0,0 +1,9 @@
+package dz.folderprocessor.web.dto;
+
+import lombok.Data;
+
+@Data
+public class RankedQueryRequest {
+    private String query;
+    private Integer limit;
+}
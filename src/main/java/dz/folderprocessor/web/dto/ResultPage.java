@@ -0,0 +1,10 @@
+package dz.folderprocessor.web.dto;
+
+import java.util.List;
+
+/**
+ * One page of query results.
+ *
+ * @param nextCursor where the next page starts, null on the last page
+ */
+public record ResultPage(List<String> results, String nextCursor) {}
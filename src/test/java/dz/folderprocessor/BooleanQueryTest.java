@@ -0,0 +1,167 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.analysis.AnalysisChain;
+import dz.folderprocessor.data.Dictionary;
+import dz.folderprocessor.query.BooleanQueryProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class BooleanQueryTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private BooleanQueryProcessor booleanQueryProcessor;
+
+    @Autowired
+    private AnalysisChain analysisChain;
+
+    @Autowired
+    private Dictionary dictionary;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @TempDir
+    Path tempDir;
+
+    private Path all;
+    private Path two;
+    private Path one;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+        all = write("all.txt", "ocelot caracal ibis");
+        two = write("two.txt", "ocelot caracal");
+        one = write("one.txt", "ocelot");
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = tempDir.resolve("test-input/" + name);
+        Files.write(file, content.getBytes());
+        fileProcessor.processFile(file);
+        return file;
+    }
+
+    @Test
+    void testOperatorsMatchDocuments() {
+        List<String> andNot = booleanQueryProcessor.processQuery("ocelot caracal AND ibis NOT AND");
+        assertTrue(andNot.contains(two.toString()));
+        assertFalse(andNot.contains(all.toString()));
+        assertFalse(andNot.contains(one.toString()));
+
+        List<String> union = booleanQueryProcessor.processQuery("caracal ibis OR");
+        assertTrue(union.containsAll(List.of(all.toString(), two.toString())));
+        assertFalse(union.contains(one.toString()));
+
+        List<String> complement = booleanQueryProcessor.processQuery("caracal NOT");
+        assertTrue(complement.contains(one.toString()));
+        assertFalse(complement.contains(two.toString()));
+
+        List<String> doubleNegation = booleanQueryProcessor.processQuery("ibis NOT NOT");
+        assertTrue(doubleNegation.contains(all.toString()));
+        assertFalse(doubleNegation.contains(two.toString()));
+    }
+
+    @Test
+    void testQueryTermsAreAnalyzedLikeDocuments() throws IOException {
+        String text = "MARGAY's den, under Tussock-Grass.";
+        Path analyzed = write("analyzed.txt", text);
+
+        // the query side of the chain yields exactly the terms the document was indexed under
+        List<String> terms = analysisChain.tokenize(text);
+        assertEquals(List.of("margay's", "den", "under", "tussock", "grass"), terms);
+        for (String term : terms) {
+            assertTrue(dictionary.termId(term) >= 0, "Vocabulary should hold " + term);
+        }
+
+        assertTrue(booleanQueryProcessor.processQuery("Margay's").contains(analyzed.toString()));
+        assertTrue(booleanQueryProcessor.processQuery("MARGAY'S").contains(analyzed.toString()));
+        assertTrue(booleanQueryProcessor.processQuery("tussock-GRASS").contains(analyzed.toString()));
+        assertEquals(booleanQueryProcessor.normalize("margay's tussock-grass AND"),
+                booleanQueryProcessor.normalize("MARGAY's Tussock-Grass AND"));
+    }
+
+    @Test
+    void testPlanOrdersAndFlattensClauses() {
+        BooleanQueryProcessor.Explanation plan = booleanQueryProcessor.explain("ocelot caracal ibis AND AND");
+
+        assertEquals("AND", plan.operator());
+        assertEquals(List.of("ibis", "caracal", "ocelot"), plan.clauses().stream().map(BooleanQueryProcessor.Explanation::term).toList(),
+                "Clauses should be flattened and ordered by document frequency");
+        assertEquals(plan.clauses().getFirst().estimate(), plan.estimate());
+
+        BooleanQueryProcessor.Explanation union = booleanQueryProcessor.explain("ibis caracal OR ocelot OR");
+        assertEquals("OR", union.operator());
+        assertEquals(3, union.clauses().size());
+    }
+
+    @Test
+    void testNegatedClauseBecomesExclusion() {
+        BooleanQueryProcessor.Explanation plan = booleanQueryProcessor.explain("ibis NOT ocelot AND");
+
+        assertEquals("AND", plan.operator());
+        assertEquals("ocelot", plan.clauses().get(0).term());
+        assertEquals("AND_NOT", plan.clauses().get(1).operator());
+        assertEquals("ibis", plan.clauses().get(1).clauses().getFirst().term());
+    }
+
+    @Test
+    void testEmptyClauseShortCircuits() {
+        BooleanQueryProcessor.Explanation plan = booleanQueryProcessor.explain("ocelot zzyzzyva AND");
+
+        assertEquals(0, plan.estimate());
+        assertTrue(booleanQueryProcessor.processQuery("ocelot zzyzzyva AND").isEmpty());
+    }
+
+    @Test
+    void testMalformedQueryIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> booleanQueryProcessor.processQuery("ocelot AND"));
+        assertThrows(IllegalArgumentException.class, () -> booleanQueryProcessor.processQuery("ocelot caracal"));
+        assertThrows(IllegalArgumentException.class, () -> booleanQueryProcessor.processQuery(" "));
+    }
+
+    @Test
+    void testMalformedQueryIsABadRequest() throws Exception {
+        mockMvc.perform(post("/query/bool")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"ocelot AND\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detail").value("Operator without enough operands: ocelot AND"));
+
+        mockMvc.perform(post("/query/bool/page")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"ocelot caracal\"}"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/query/bool")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest());
+    }
+}
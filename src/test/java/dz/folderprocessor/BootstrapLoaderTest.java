@@ -0,0 +1,86 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.indexing.BootstrapLoader;
+import dz.folderprocessor.query.BooleanQueryProcessor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.vocabulary=test-processed",
+    "indexing.bootstrap-threads=1"
+})
+class BootstrapLoaderTest {
+
+    private static Path scan;
+    private static Path small;
+    private static Path medium;
+    private static Path large;
+
+    @Autowired
+    private BootstrapLoader bootstrapLoader;
+
+    @Autowired
+    private DocumentRegistry documentRegistry;
+
+    @Autowired
+    private BooleanQueryProcessor booleanQueryProcessor;
+
+    /**
+     * The files have to be in the scan folder before the context starts, since the bootstrap runs once
+     * the application is ready.
+     */
+    @DynamicPropertySource
+    static void scanFolder(DynamicPropertyRegistry registry) throws IOException {
+        scan = Files.createTempDirectory("bootstrap-input");
+        Files.createDirectories(scan.resolve("nested/deeper"));
+        small = write(scan.resolve("small.txt"), "bittern", 10);
+        large = write(scan.resolve("nested/large.txt"), "bittern curlew", 2000);
+        medium = write(scan.resolve("nested/deeper/medium.txt"), "curlew", 200);
+        registry.add("path.scan", scan::toString);
+    }
+
+    private static Path write(Path file, String words, int times) throws IOException {
+        Files.writeString(file, (words + " " + file.getFileName() + " ").repeat(times));
+        return file;
+    }
+
+    @Test
+    void testExistingFilesAreIndexedLargestFirst() throws Exception {
+        for (int i = 0; i < 100 && bootstrapLoader.status().state() != BootstrapLoader.State.DONE; i++) {
+            Thread.sleep(100);
+        }
+
+        BootstrapLoader.Status status = bootstrapLoader.status();
+        assertEquals(BootstrapLoader.State.DONE, status.state());
+        assertEquals(3, status.totalFiles(), "Files in nested folders should be found too");
+        assertEquals(3, status.doneFiles());
+        assertEquals(0, status.failedFiles());
+        assertEquals(Files.size(small) + Files.size(medium) + Files.size(large), status.totalBytes());
+
+        // ids are assigned in publish order, and a single worker takes the files in submission order
+        int largeId = documentRegistry.getDocumentId(large.toString());
+        int mediumId = documentRegistry.getDocumentId(medium.toString());
+        int smallId = documentRegistry.getDocumentId(small.toString());
+        assertTrue(largeId >= 0 && largeId < mediumId && mediumId < smallId,
+                "Expected largest first, got ids " + List.of(largeId, mediumId, smallId));
+
+        // the vocabulary folder may still hold documents of earlier runs
+        List<String> matches = booleanQueryProcessor.processQuery("bittern").stream()
+                .filter(path -> path.startsWith(scan.toString()))
+                .toList();
+        assertEquals(List.of(large.toString(), small.toString()), matches);
+    }
+}
@@ -2,6 +2,8 @@ package dz.folderprocessor;
 
 import dz.folderprocessor.data.InverseIndex;
 import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.query.PhrasalQueryProcessor;
+import dz.folderprocessor.util.Allocations;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -12,6 +14,7 @@ import org.springframework.test.context.TestPropertySource;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +36,9 @@ class CoordinateIndexTest {
     
     @Autowired
     private DocumentRegistry documentRegistry;
+
+    @Autowired
+    private PhrasalQueryProcessor phrasalQueryProcessor;
     
     @TempDir
     Path tempDir;
@@ -100,4 +106,42 @@ class CoordinateIndexTest {
         System.out.println("=== Position Accuracy Test Results ===");
         System.out.println("Term 'second' positions: " + secondPositions);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPhraseOverPostingsWithSkips() throws IOException {
+        // the common term spans several skip blocks, the rare one only a few of its documents
+        List<Path> expected = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            Path file = tempDir.resolve("test-input/heron" + i + ".txt");
+            Files.write(file, (i % 37 == 5 ? "grey heron wades" : "heron wades").getBytes());
+            fileProcessor.processFile(file);
+            if (i % 37 == 5) {
+                expected.add(file);
+            }
+        }
+
+        List<String> results = phrasalQueryProcessor.containsPhraseCoordinateIndex("grey heron");
+
+        assertThat(results).containsAll(expected.stream().map(Path::toString).toList());
+        assertThat(results).doesNotContain(tempDir.resolve("test-input/heron6.txt").toString());
+    }
+
+    @Test
+    void testPhraseAllocationIndependentOfPositions() throws IOException {
+        Path file = tempDir.resolve("test-input/grebes.txt");
+        Files.write(file, ("grebe ".repeat(50000) + "little grebe dives deep").getBytes());
+        fileProcessor.processFile(file);
+
+        assertThat(phrasalQueryProcessor.containsPhraseCoordinateIndex("little grebe dives")).contains(file.toString());
+        assertThat(phrasalQueryProcessor.containsPhrasePairIndex("little grebe dives deep")).contains(file.toString());
+        assertThat(phrasalQueryProcessor.containsPhrasePairIndex("grebe little dives deep")).doesNotContain(file.toString());
+
+        long allocatedBefore = Allocations.currentThread();
+        List<String> results = phrasalQueryProcessor.containsPhraseCoordinateIndex("grebe grebe little grebe");
+        long allocated = Allocations.currentThread() - allocatedBefore;
+
+        assertThat(results).contains(file.toString());
+        // copying the 50000 positions of 'grebe' alone would take 200 KB
+        assertThat(allocated).isLessThan(64 * 1024);
+    }
+}
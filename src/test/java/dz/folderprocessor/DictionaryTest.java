@@ -0,0 +1,104 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.data.Dictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Works on a dictionary of its own rather than the shared bean, so thousands of terms can be added and
+ * removed without touching the other tests.
+ */
+class DictionaryTest {
+
+    @Test
+    void testIdsAreDenseAndStable() {
+        Dictionary dictionary = new Dictionary();
+        // enough terms to grow the id array and rehash the table several times
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, dictionary.addTerm("gannet" + i));
+        }
+        assertEquals(count, dictionary.maxTermId());
+        assertEquals(count, dictionary.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, dictionary.termId("gannet" + i));
+            assertEquals(i, dictionary.addTerm("gannet" + i), "Adding a known term should keep its id");
+            assertEquals("gannet" + i, dictionary.term(i));
+        }
+        assertEquals(-1, dictionary.termId("gannet" + count));
+
+        for (int i = 0; i < count; i += 3) {
+            dictionary.removeTerm(i, "gannet" + i);
+        }
+        for (int i = 0; i < count; i++) {
+            if (i % 3 == 0) {
+                assertEquals(-1, dictionary.termId("gannet" + i));
+                assertNull(dictionary.term(i));
+            } else {
+                assertEquals(i, dictionary.termId("gannet" + i), "Removing other terms should not move an id");
+            }
+        }
+
+        // ids are never reused, so a removed term comes back under a new one
+        assertEquals(count, dictionary.addTerm("gannet0"));
+        assertEquals(count + 1, dictionary.addTerm("booby"));
+        assertEquals(count + 2, dictionary.maxTermId());
+        assertEquals(count - (count + 2) / 3 + 2, dictionary.size());
+    }
+
+    @Test
+    void testLookupsDuringConcurrentInserts() throws InterruptedException {
+        Dictionary dictionary = new Dictionary();
+        int count = 200_000;
+        // terms below this count are fully added; set by the writer after each addTerm returns
+        AtomicInteger published = new AtomicInteger();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                dictionary.addTerm("shag" + i);
+                published.set(i + 1);
+            }
+        });
+
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (published.get() < count && failure.get() == null) {
+                    int known = published.get();
+                    if (known == 0) {
+                        continue;
+                    }
+                    int i = random.nextInt(known);
+                    if (dictionary.termId("shag" + i) != i || !("shag" + i).equals(dictionary.term(i))) {
+                        failure.compareAndSet(null, "Lost term " + i + " with " + known + " added");
+                    }
+                    if (dictionary.termId("cormorant" + i) != -1) {
+                        failure.compareAndSet(null, "Found a term that was never added");
+                    }
+                }
+            });
+        }
+
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(count, dictionary.maxTermId());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, dictionary.termId("shag" + i));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.data.InverseIndex;
+import dz.folderprocessor.data.PrefixIndex;
+import dz.folderprocessor.query.BooleanQueryProcessor;
+import dz.folderprocessor.query.PhrasalQueryProcessor;
+import dz.folderprocessor.scheduled.IndexCompactor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class DocumentUpdateTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private BooleanQueryProcessor booleanQueryProcessor;
+
+    @Autowired
+    private PhrasalQueryProcessor phrasalQueryProcessor;
+
+    @Autowired
+    private InverseIndex inverseIndex;
+
+    @Autowired
+    private PrefixIndex prefixIndex;
+
+    @Autowired
+    private IndexCompactor indexCompactor;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    @Test
+    void testModifiedFileReplacesPreviousVersion() throws IOException {
+        Path file = tempDir.resolve("test-input/edited.txt");
+
+        Files.write(file, "zebra crossing ahead".getBytes());
+        fileProcessor.processFile(file);
+        assertEquals(List.of(file.toString()), booleanQueryProcessor.processQuery("zebra"));
+
+        Files.write(file, "giraffe crossing ahead".getBytes());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        fileProcessor.processFile(file);
+
+        assertTrue(booleanQueryProcessor.processQuery("zebra").isEmpty(), "Old version should not match");
+        assertEquals(List.of(file.toString()), booleanQueryProcessor.processQuery("giraffe"));
+        assertEquals(List.of(file.toString()), booleanQueryProcessor.processQuery("crossing"),
+                "Shared terms should match the file once");
+        assertEquals(List.of(file.toString()), phrasalQueryProcessor.containsPhraseCoordinateIndex("crossing ahead"));
+
+        indexCompactor.compact();
+
+        assertTrue(inverseIndex.getDocumentsWithPositions("zebra").isEmpty(), "Dead postings should be purged");
+        assertEquals(1, inverseIndex.getDocumentsWithPositions("giraffe").size(), "New version keeps its postings");
+    }
+
+    @Test
+    void testDeletedFileIsRemovedFromResults() throws IOException {
+        Path kept = tempDir.resolve("test-input/kept.txt");
+        Path removed = tempDir.resolve("test-input/removed.txt");
+
+        Files.write(kept, "okapi habitat".getBytes());
+        Files.write(removed, "okapi quokkaland".getBytes());
+        fileProcessor.processFile(kept);
+        fileProcessor.processFile(removed);
+
+        Files.delete(removed);
+        fileProcessor.handleFileEvent(removed);
+
+        assertEquals(List.of(kept.toString()), booleanQueryProcessor.processQuery("okapi"));
+        assertFalse(booleanQueryProcessor.processQuery("okapi NOT").contains(removed.toString()),
+                "NOT must not resurrect deleted documents");
+        assertTrue(booleanQueryProcessor.processQuery("quokkaland").isEmpty());
+
+        indexCompactor.compact();
+
+        assertTrue(prefixIndex.termsStartWith("quokkaland").isEmpty(), "Orphaned terms should be purged");
+        assertFalse(prefixIndex.termsStartWith("okapi").isEmpty(), "Terms of live documents stay");
+    }
+
+    @Test
+    void testDuplicateFileSharesPostingsOfOriginal() throws IOException {
+        Path original = tempDir.resolve("test-input/original.txt");
+        Path copy = tempDir.resolve("test-input/copy.txt");
+
+        Files.write(original, "narwhal tusk ivory".getBytes());
+        Files.write(copy, "narwhal tusk ivory".getBytes());
+        fileProcessor.processFile(original);
+        fileProcessor.processFile(copy);
+
+        assertEquals(1, inverseIndex.getDocumentsWithPositions("narwhal").size(), "Copy should not be indexed again");
+        assertEquals(List.of(original.toString(), copy.toString()), booleanQueryProcessor.processQuery("narwhal"));
+        assertEquals(List.of(original.toString(), copy.toString()),
+                phrasalQueryProcessor.containsPhraseCoordinateIndex("narwhal tusk"));
+
+        Files.delete(original);
+        fileProcessor.handleFileEvent(original);
+        indexCompactor.compact();
+
+        assertEquals(List.of(copy.toString()), booleanQueryProcessor.processQuery("narwhal"),
+                "Postings stay while a copy is left");
+    }
+}
@@ -0,0 +1,167 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.IndexingSink;
+import dz.folderprocessor.query.BooleanQueryProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class IndexPublisherTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private DocumentRegistry documentRegistry;
+
+    @Autowired
+    private BooleanQueryProcessor booleanQueryProcessor;
+
+    @Autowired
+    private ProbeSink probeSink;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Records the batches it gets, looks at what queries see while the publish step merges a document, and
+     * fails on request.
+     */
+    static class ProbeSink implements IndexingSink {
+
+        private final DocumentRegistry documentRegistry;
+        private final BooleanQueryProcessor booleanQueryProcessor;
+
+        volatile boolean liveWhileIndexed;
+        volatile List<String> matchesWhileIndexed;
+        volatile int failedDocId = -1;
+        final List<DocumentSegment> batches = new CopyOnWriteArrayList<>();
+
+        ProbeSink(DocumentRegistry documentRegistry, BooleanQueryProcessor booleanQueryProcessor) {
+            this.documentRegistry = documentRegistry;
+            this.booleanQueryProcessor = booleanQueryProcessor;
+        }
+
+        @Override
+        public void index(int docId, DocumentSegment segment) {
+            if (segment.path().contains("batched")) {
+                batches.add(segment);
+            }
+            if (segment.path().contains("observed")) {
+                liveWhileIndexed = documentRegistry.isLive(docId);
+                matchesWhileIndexed = booleanQueryProcessor.processQuery("avocet");
+            }
+            if (segment.path().contains("poison")) {
+                failedDocId = docId;
+                throw new IllegalStateException("Sink failed on " + segment.path());
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class ProbeConfig {
+
+        // after the dictionary, so a query could already find the postings of the document
+        @Bean
+        @Order(Ordered.LOWEST_PRECEDENCE)
+        ProbeSink probeSink(DocumentRegistry documentRegistry, @Lazy BooleanQueryProcessor booleanQueryProcessor) {
+            return new ProbeSink(documentRegistry, booleanQueryProcessor);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = tempDir.resolve("test-input/" + name);
+        Files.write(file, content.getBytes());
+        return file;
+    }
+
+    @Test
+    void testEachDocumentArrivesAsOneBatch() throws IOException {
+        Path file = write("batched.txt", "Godwit knot godwit knot GODWIT");
+
+        fileProcessor.processFile(file);
+
+        assertEquals(1, probeSink.batches.size(), "Every sink should get the document in one call");
+        DocumentSegment segment = probeSink.batches.get(0);
+        assertEquals(file.toString(), segment.path());
+        assertEquals(5, segment.tokenCount());
+        assertEquals(2, segment.termCount(), "Repeated terms should be grouped");
+
+        Map<String, int[]> terms = new HashMap<>();
+        for (int ord = 0; ord < segment.termCount(); ord++) {
+            terms.put(segment.term(ord), segment.positions(ord));
+        }
+        assertArrayEquals(new int[] {0, 2, 4}, terms.get("godwit"));
+        assertArrayEquals(new int[] {1, 3}, terms.get("knot"));
+
+        Map<String, int[]> bigrams = new HashMap<>();
+        for (int ord = 0; ord < segment.bigramCount(); ord++) {
+            bigrams.put(segment.bigram(ord), segment.bigramPositions(ord));
+        }
+        assertEquals(2, bigrams.size());
+        assertArrayEquals(new int[] {0, 2}, bigrams.get("godwit knot"));
+        assertArrayEquals(new int[] {1, 3}, bigrams.get("knot godwit"));
+    }
+
+    @Test
+    void testDocumentIsInvisibleUntilPublished() throws IOException {
+        Path file = write("observed.txt", "avocet sweeps the mud");
+
+        fileProcessor.processFile(file);
+
+        assertFalse(probeSink.liveWhileIndexed, "The id must not be live while the sinks merge it");
+        assertFalse(probeSink.matchesWhileIndexed.contains(file.toString()),
+                "Queries must not see a document before every sink has it");
+        assertTrue(documentRegistry.isLive(documentRegistry.getDocumentId(file.toString())));
+        assertTrue(booleanQueryProcessor.processQuery("avocet").contains(file.toString()));
+    }
+
+    @Test
+    void testFailingSinkDiscardsTheId() throws IOException {
+        Path poisoned = write("poison.txt", "stilt wades poisonously");
+
+        assertThrows(IllegalStateException.class, () -> fileProcessor.processFile(poisoned));
+
+        int docId = probeSink.failedDocId;
+        assertTrue(docId >= 0);
+        assertFalse(documentRegistry.isLive(docId));
+        assertEquals(-1, documentRegistry.getDocumentId(poisoned.toString()));
+        // retired for the compactor, unless it already purged it
+        assertTrue(documentRegistry.deletedDocuments().get(docId) || documentRegistry.getDocumentPath(docId) == null);
+        assertTrue(booleanQueryProcessor.processQuery("poisonously").isEmpty());
+
+        Path healthy = write("healthy.txt", "stilt wades on");
+        fileProcessor.processFile(healthy);
+        assertEquals(List.of(healthy.toString()), booleanQueryProcessor.processQuery("stilt"));
+    }
+}
@@ -0,0 +1,92 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.data.InverseIndex;
+import dz.folderprocessor.data.TrigramIndex;
+import dz.folderprocessor.query.PhrasalQueryProcessor;
+import dz.folderprocessor.scheduled.IndexCompactor;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.NativeArena;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed",
+    "indexing.postings-storage=off-heap",
+    "indexing.off-heap-slab-bytes=65536"
+})
+class OffHeapStorageTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private PhrasalQueryProcessor phrasalQueryProcessor;
+
+    @Autowired
+    private InverseIndex inverseIndex;
+
+    @Autowired
+    private TrigramIndex trigramIndex;
+
+    @Autowired
+    private IndexCompactor indexCompactor;
+
+    @Autowired
+    private BlockAllocator postingsAllocator;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    @Test
+    void testPostingsLiveInNativeMemory() throws IOException {
+        assertInstanceOf(NativeArena.class, postingsAllocator);
+
+        Path first = tempDir.resolve("test-input/first.txt");
+        Path second = tempDir.resolve("test-input/second.txt");
+        Files.write(first, "purple elephant dances at midnight".getBytes());
+        Files.write(second, "a purple elephant never forgets".getBytes());
+        fileProcessor.processFile(first);
+        fileProcessor.processFile(second);
+
+        assertEquals(List.of(first.toString(), second.toString()),
+                phrasalQueryProcessor.containsPhraseCoordinateIndex("purple elephant"));
+        assertEquals(List.of(first.toString(), second.toString()),
+                phrasalQueryProcessor.containsPhrasePairIndex("purple elephant"));
+        assertTrue(trigramIndex.contains("pha").contains("elephant"));
+        assertTrue(postingsAllocator.usage().usedBytes() > 0, "Postings should be allocated off-heap");
+    }
+
+    @Test
+    void testCompactionFreesNativeBlocks() throws IOException {
+        Path file = tempDir.resolve("test-input/rewritten.txt");
+        Files.write(file, "ephemeral walrus ".repeat(200).getBytes());
+        fileProcessor.processFile(file);
+        assertEquals(1, inverseIndex.getDocumentsWithPositions("walrus").size());
+
+        Files.delete(file);
+        fileProcessor.handleFileEvent(file);
+        long usedBefore = postingsAllocator.usage().usedBytes();
+        indexCompactor.compact();
+
+        assertTrue(inverseIndex.getDocumentsWithPositions("walrus").isEmpty());
+        assertTrue(postingsAllocator.usage().usedBytes() < usedBefore, "Purged postings should free their blocks");
+    }
+}
@@ -121,6 +121,35 @@ class PermutationIndexTest {
         assertTrue(results.isEmpty(), "Should return empty set for multiple wildcards");
     }
 
+    @Test
+    void testSearchAcrossMergedRotations() {
+        // enough rotations to flush the unsorted buffer into the levels more than once
+        for (int i = 0; i < 2000; i++) {
+            permutationIndex.handleTermRead(new TermReadEvent(this, "quokka" + i + "x", "test6.txt", 6, i));
+        }
+
+        Set<String> results = permutationIndex.searchByPattern("quokka19*x");
+
+        assertEquals(111, results.size(), "Should find quokka19x and quokka190x to quokka1999x");
+        assertTrue(results.contains("quokka1999x"), "Should contain 'quokka1999x'");
+        assertEquals(Set.of("quokka1234x"), permutationIndex.getAllTermsContaining("a1234"));
+        assertTrue(permutationIndex.searchByPattern("hel*").contains("hello"), "Earlier terms should stay searchable");
+    }
+
+    @Test
+    void testManyDistinctTerms() {
+        // carries the rotations through several levels of sorted runs
+        for (int i = 0; i < 20000; i++) {
+            permutationIndex.handleTermRead(new TermReadEvent(this, "wombat" + i + "y", "test7.txt", 7, i));
+        }
+
+        assertEquals(11111, permutationIndex.searchByPattern("wombat1*y").size(),
+                "Should find wombat1y and wombat10y to wombat19999y");
+        assertEquals(Set.of("wombat12345y"), permutationIndex.getAllTermsContaining("t12345y"));
+        assertEquals(Set.of("wombat0y"), permutationIndex.searchByPattern("wombat0*"));
+        assertTrue(permutationIndex.searchByPattern("hel*").contains("hello"), "Earlier terms should stay searchable");
+    }
+
     // WildcardQueryProcessor Tests
     
     @Test
@@ -0,0 +1,135 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.data.Postings;
+import dz.folderprocessor.data.PostingsIterator;
+import dz.folderprocessor.util.BlockAllocator;
+import dz.folderprocessor.util.HeapBlockAllocator;
+import dz.folderprocessor.util.NativeArena;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the encoding and the skip entries of {@link Postings} against the documents appended to it.
+ */
+class PostingsTest {
+
+    private static final int SKIP_INTERVAL = 32;
+
+    @Test
+    void testLargeGapsRoundTrip() {
+        // gaps needing one to five bytes each, then the largest id below NO_MORE_DOCS
+        int[] gaps = {1, 1 << 7, 1 << 14, 1 << 21, 1 << 28};
+        int[] docIds = new int[gaps.length + 1];
+        for (int i = 0, docId = -1; i < gaps.length; i++) {
+            docId += gaps[i];
+            docIds[i] = docId;
+        }
+        docIds[gaps.length] = Integer.MAX_VALUE - 1;
+        int[][] positions = {
+            {0},
+            {127, 128},
+            {0, 16_383, 16_384},
+            {1 << 21, (1 << 28) + 5},
+            {Integer.MAX_VALUE},
+            {0, Integer.MAX_VALUE - 1},
+        };
+
+        for (BlockAllocator allocator : List.of(new HeapBlockAllocator(), new NativeArena(1 << 16))) {
+            try (allocator) {
+                Postings postings = new Postings(allocator);
+                Map<Integer, List<Integer>> expected = new LinkedHashMap<>();
+                long positionCount = 0;
+                for (int i = 0; i < docIds.length; i++) {
+                    postings.append(docIds[i], positions[i], positions[i].length);
+                    expected.put(docIds[i], Arrays.stream(positions[i]).boxed().toList());
+                    positionCount += positions[i].length;
+                }
+
+                try (BlockAllocator.ReadGuard ignored = allocator.enter()) {
+                    assertEquals(expected, Postings.toMap(postings.iterator()));
+
+                    PostingsIterator iterator = postings.iterator();
+                    assertEquals(Integer.MAX_VALUE - 1, iterator.advance(docIds[gaps.length - 1] + 1));
+                    assertArrayEquals(new int[] {0, Integer.MAX_VALUE - 1}, iterator.positions());
+                    assertEquals(PostingsIterator.NO_MORE_DOCS, iterator.nextDoc());
+                }
+                assertEquals(docIds.length, postings.docCount());
+                assertEquals(positionCount, postings.positionCount());
+                assertThrows(IllegalArgumentException.class, () -> postings.append(5, new int[] {1}, 1));
+                postings.release();
+            }
+        }
+    }
+
+    @Test
+    void testAdvanceLandsOnSkipBoundaries() {
+        HeapBlockAllocator allocator = new HeapBlockAllocator();
+        Postings postings = new Postings(allocator);
+        // ten full blocks, so the last document closes a block without starting a skip entry for the next
+        int docs = 10 * SKIP_INTERVAL;
+        for (int i = 0; i < docs; i++) {
+            postings.append(docId(i), positionsOf(i), 2);
+        }
+
+        assertAdvances(postings, docs);
+
+        // removing re-encodes the list, so its skip entries are built again
+        BitSet deleted = new BitSet();
+        for (int i = 0; i < docs; i += 2) {
+            deleted.set(docId(i));
+        }
+        postings.remove(deleted);
+        assertEquals(docs / 2, postings.docCount());
+
+        PostingsIterator iterator = postings.iterator();
+        for (int i = 1; i < docs; i += 2) {
+            // every other document is gone, so a target on a removed one lands on the next survivor
+            assertEquals(docId(i), iterator.advance(docId(i - 1)));
+            assertArrayEquals(positionsOf(i), iterator.positions());
+        }
+        assertEquals(PostingsIterator.NO_MORE_DOCS, iterator.advance(docId(docs)));
+    }
+
+    /**
+     * Advances a fresh iterator to each document around a block boundary, exactly and from between two
+     * documents, then walks the boundaries with one iterator as an intersection would.
+     */
+    private static void assertAdvances(Postings postings, int docs) {
+        for (int boundary = SKIP_INTERVAL; boundary <= docs; boundary += SKIP_INTERVAL) {
+            for (int i = boundary - 1; i <= Math.min(boundary, docs - 1); i++) {
+                PostingsIterator exact = postings.iterator();
+                assertEquals(docId(i), exact.advance(docId(i)), "advance to document " + i);
+                assertEquals(2, exact.freq());
+                assertArrayEquals(positionsOf(i), exact.positions());
+                assertEquals(i + 1 < docs ? docId(i + 1) : PostingsIterator.NO_MORE_DOCS, exact.nextDoc());
+
+                PostingsIterator between = postings.iterator();
+                assertEquals(docId(i), between.advance(docId(i) - 1), "advance to just before document " + i);
+            }
+        }
+
+        PostingsIterator iterator = postings.iterator();
+        for (int boundary = SKIP_INTERVAL; boundary < docs; boundary += SKIP_INTERVAL) {
+            assertEquals(docId(boundary - 1), iterator.advance(docId(boundary - 1)));
+            assertEquals(docId(boundary - 1), iterator.advance(docId(boundary - 1)), "advance must not move back");
+            assertEquals(docId(boundary), iterator.advance(docId(boundary)));
+            assertArrayEquals(positionsOf(boundary), iterator.positions());
+        }
+        assertEquals(PostingsIterator.NO_MORE_DOCS, iterator.advance(docId(docs)));
+    }
+
+    private static int docId(int index) {
+        return 3 * index + 1;
+    }
+
+    private static int[] positionsOf(int index) {
+        return new int[] {index % 7, index % 7 + 200 + index};
+    }
+}
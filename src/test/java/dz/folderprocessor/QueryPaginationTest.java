@@ -0,0 +1,200 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.query.WildcardQueryProcessor;
+import dz.folderprocessor.web.controller.QueryController;
+import dz.folderprocessor.web.dto.QueryRequest;
+import dz.folderprocessor.web.dto.ResultPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class QueryPaginationTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private QueryController queryController;
+
+    @Autowired
+    private WildcardQueryProcessor wildcardQueryProcessor;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    private List<String> write(String word, int count) throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = tempDir.resolve("test-input/" + word + i + ".txt");
+            Files.write(file, ("the " + word + " number " + i + " sings at dawn").getBytes());
+            fileProcessor.processFile(file);
+            paths.add(file.toString());
+        }
+        return paths;
+    }
+
+    private QueryRequest request(String query, Integer limit, Integer offset, String cursor) {
+        QueryRequest request = new QueryRequest();
+        request.setQuery(query);
+        request.setLimit(limit);
+        request.setOffset(offset);
+        request.setCursor(cursor);
+        return request;
+    }
+
+    @Test
+    void testCursorWalksEveryDocumentOnce() throws IOException {
+        List<String> expected = write("warbler", 25);
+
+        List<String> walked = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ResultPage page = queryController.booleanQueryPage(request("warbler", 4, null, cursor));
+            assertTrue(page.results().size() <= 4);
+            walked.addAll(page.results());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(7, pages);
+        assertEquals(expected, walked);
+    }
+
+    @Test
+    void testArrayResponseIsNotPaged() throws IOException {
+        List<String> expected = write("ortolan", 105);
+
+        assertEquals(expected, queryController.booleanQuery(request("ortolan", null, null, null)));
+
+        ResultPage page = queryController.booleanQueryPage(request("ortolan", null, null, null));
+        assertEquals(expected.subList(0, 100), page.results());
+        assertNotNull(page.nextCursor());
+    }
+
+    @Test
+    void testOffsetAndPhrasePages() throws IOException {
+        List<String> expected = write("wren", 12);
+
+        ResultPage page = queryController.phrasalQueryCoordinatePage(request("wren number", 5, 3, null));
+
+        assertEquals(expected.subList(3, 8), page.results());
+        assertNotNull(page.nextCursor());
+
+        ResultPage next = queryController.phrasalQueryCoordinatePage(request("wren number", 5, null, page.nextCursor()));
+        assertEquals(expected.subList(8, 12), next.results());
+        assertNull(next.nextCursor());
+    }
+
+    @Test
+    void testStreamWritesOneLinePerPath() throws IOException {
+        List<String> expected = write("siskin", 30);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        queryController.booleanQueryStream(request("siskin", null, 10, null)).getBody().writeTo(out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(20, lines.size());
+        assertTrue(lines.getFirst().startsWith("\"") && lines.getFirst().endsWith("\""));
+        assertTrue(lines.getFirst().contains("siskin10.txt"));
+        assertTrue(lines.getLast().contains(Path.of(expected.getLast()).getFileName().toString()));
+    }
+
+    @Test
+    void testWildcardTermsArePagedInOrder() throws IOException {
+        write("linnet", 1);
+        write("linnetling", 1);
+
+        ResultPage first = queryController.wildcardPermutationQueryPage(request("linnet*", 1, null, null));
+        ResultPage second = queryController.wildcardPermutationQueryPage(request("linnet*", 1, null, first.nextCursor()));
+
+        assertEquals(List.of("linnet"), first.results());
+        assertEquals(List.of("linnetling"), second.results());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void testWildcardPagesWalkEveryTermOnce() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append("dunlin").append((char) ('a' + i / 676)).append((char) ('a' + i / 26 % 26))
+                    .append((char) ('a' + i % 26)).append("ka ");
+        }
+        Path file = tempDir.resolve("test-input/dunlins.txt");
+        Files.writeString(file, text);
+        fileProcessor.processFile(file);
+
+        for (String pattern : List.of("dunlin*ka", "*ka", "dun*b*ka")) {
+            List<String> walked = new ArrayList<>();
+            String cursor = null;
+            do {
+                ResultPage page = queryController.wildcardPrefixSuffixQueryPage(request(pattern, 7, null, cursor));
+                assertTrue(page.results().size() <= 7);
+                walked.addAll(page.results());
+                cursor = page.nextCursor();
+            } while (cursor != null);
+
+            assertEquals(List.copyOf(new TreeSet<>(wildcardQueryProcessor.queryPrefixSuffixIndex(pattern))), walked,
+                    "Pages of " + pattern);
+        }
+        assertEquals(300, wildcardQueryProcessor.queryPrefixSuffixIndex("dunlin*ka").size());
+    }
+
+    @Test
+    void testInvalidPagingIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> queryController.booleanQueryPage(request("warbler", 0, null, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> queryController.booleanQueryPage(request("warbler", null, -1, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> queryController.booleanQueryPage(request("warbler", null, null, "not-a-cursor")));
+    }
+
+    @Test
+    void testBadPagingInputIsABadRequest() throws Exception {
+        mockMvc.perform(post("/query/bool/page")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"warbler\", \"cursor\": \"not-a-cursor\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detail").value("Invalid cursor: not-a-cursor"));
+
+        mockMvc.perform(post("/query/wildcard/trigram/page")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"warbl*\", \"limit\": 0}"))
+                .andExpect(status().isBadRequest());
+    }
+}
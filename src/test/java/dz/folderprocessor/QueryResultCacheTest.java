@@ -0,0 +1,134 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.query.QueryResultCache;
+import dz.folderprocessor.web.controller.QueryController;
+import dz.folderprocessor.web.dto.QueryRequest;
+import dz.folderprocessor.web.dto.ResultPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class QueryResultCacheTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private QueryController queryController;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    private String write(String name, String content) throws IOException {
+        Path file = tempDir.resolve("test-input/" + name);
+        Files.write(file, content.getBytes());
+        fileProcessor.processFile(file);
+        return file.toString();
+    }
+
+    private QueryRequest request(String query, boolean bypassCache) {
+        QueryRequest request = new QueryRequest();
+        request.setQuery(query);
+        request.setBypassCache(bypassCache);
+        return request;
+    }
+
+    @Test
+    void testRepeatedQueryIsServedFromCache() throws IOException {
+        String first = write("plover1.txt", "plover on the shore");
+        String second = write("plover2.txt", "plover and dunlin");
+
+        List<String> computed = queryController.booleanQuery(request("plover", false));
+        long hits = queryResultCache.stats().hits();
+        // normalized to the same query
+        List<String> cached = queryController.booleanQuery(request("  PLOVER ", false));
+
+        assertEquals(List.of(first, second), computed);
+        assertEquals(computed, cached);
+        assertEquals(hits + 1, queryResultCache.stats().hits());
+    }
+
+    @Test
+    void testPublishInvalidatesCachedResults() throws IOException {
+        String first = write("sanderling1.txt", "sanderling runs");
+        assertEquals(List.of(first), queryController.phrasalQueryCoordinate(request("sanderling runs", false)));
+        assertEquals(List.of("sanderling"), queryController.wildcardPrefixSuffixQuery(request("sanderl*", false)));
+
+        String second = write("sanderling2.txt", "sanderling runs sanderlings rest");
+
+        assertEquals(List.of(first, second),
+                queryController.phrasalQueryCoordinate(request("sanderling runs", false)));
+        assertEquals(List.of("sanderling", "sanderlings"),
+                queryController.wildcardPrefixSuffixQuery(request("sanderl*", false)));
+        assertTrue(queryResultCache.stats().invalidations() > 0);
+    }
+
+    @Test
+    void testPartlyReadPhraseResultsAreNotCached() throws IOException {
+        for (int i = 0; i < 12; i++) {
+            write("dotterel" + i + ".txt", "dotterel runs far");
+        }
+        QueryRequest firstPage = request("dotterel runs", false);
+        firstPage.setLimit(5);
+
+        queryController.phrasalQueryCoordinatePage(firstPage);
+        long hits = queryResultCache.stats().hits();
+        queryController.phrasalQueryCoordinatePage(firstPage);
+        assertEquals(hits, queryResultCache.stats().hits(), "A page reads only its part of a phrase result");
+
+        assertEquals(12, queryController.phrasalQueryCoordinate(request("dotterel runs", false)).size());
+        ResultPage cached = queryController.phrasalQueryCoordinatePage(firstPage);
+        assertEquals(hits + 1, queryResultCache.stats().hits(), "A result read in full is cached");
+        assertEquals(5, cached.results().size());
+        assertNotNull(cached.nextCursor());
+    }
+
+    @Test
+    void testBypassNeitherReadsNorFillsTheCache() throws IOException {
+        String path = write("turnstone1.txt", "turnstone flips stones");
+
+        QueryResultCache.Stats before = queryResultCache.stats();
+        List<String> results = queryController.booleanQuery(request("turnstone", true));
+        queryController.booleanQuery(request("turnstone", true));
+        QueryResultCache.Stats after = queryResultCache.stats();
+
+        assertEquals(List.of(path), results);
+        assertEquals(before.hits(), after.hits());
+        assertEquals(before.misses(), after.misses());
+    }
+
+    @Test
+    void testCacheStaysWithinItsWeight() throws IOException {
+        write("godwit1.txt", "godwit wades");
+        for (int i = 0; i < 50; i++) {
+            queryController.booleanQuery(request("godwit" + i + " godwit OR", false));
+        }
+
+        QueryResultCache.Stats stats = queryResultCache.stats();
+        assertTrue(stats.weightBytes() <= stats.maxWeightBytes());
+        assertTrue(stats.entries() > 0);
+    }
+}
@@ -0,0 +1,109 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.query.RankedQueryProcessor;
+import dz.folderprocessor.query.RankedQueryProcessor.ScoredDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class RankedQueryTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private RankedQueryProcessor rankedQueryProcessor;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = tempDir.resolve("test-input/" + name);
+        Files.write(file, content.getBytes());
+        fileProcessor.processFile(file);
+        return file;
+    }
+
+    @Test
+    void testRanksByTermFrequencyAndLength() throws IOException {
+        Path focused = write("focused.txt", "kestrel kestrel kestrel hovers");
+        Path diluted = write("diluted.txt", "kestrel hovers over the long meadow near the slow river on a windy day");
+        Path unrelated = write("unrelated.txt", "merlin hovers");
+
+        List<ScoredDocument> results = rankedQueryProcessor.search("kestrel hovers", 3);
+
+        assertEquals(focused.toString(), results.get(0).path());
+        assertEquals(diluted.toString(), results.get(1).path());
+        assertEquals(unrelated.toString(), results.get(2).path());
+        assertTrue(results.get(0).score() > results.get(1).score());
+        assertTrue(results.get(1).score() > results.get(2).score());
+    }
+
+    @Test
+    void testReturnsOnlyTopDocuments() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            write("bittern" + i + ".txt", "egret " + "bittern ".repeat(i) + "pond");
+        }
+        Path best = write("best.txt", "egret egret egret egret egret egret");
+
+        List<ScoredDocument> top = rankedQueryProcessor.search("egret bittern", 5);
+        List<ScoredDocument> all = rankedQueryProcessor.search("egret bittern", 100);
+
+        assertEquals(5, top.size());
+        assertEquals(all.subList(0, 5).stream().map(ScoredDocument::path).toList(),
+                top.stream().map(ScoredDocument::path).toList(),
+                "Skipped documents should not change the top of the ranking");
+        assertTrue(all.stream().anyMatch(document -> document.path().equals(best.toString())));
+    }
+
+    @Test
+    void testLimitIsValidated() {
+        assertThrows(IllegalArgumentException.class, () -> rankedQueryProcessor.search("kestrel", 0));
+        assertThrows(IllegalArgumentException.class, () -> rankedQueryProcessor.search("kestrel", 100_000));
+        assertTrue(rankedQueryProcessor.search("unheardofword", null).isEmpty());
+    }
+
+    @Test
+    void testInvalidRequestIsABadRequest() throws Exception {
+        mockMvc.perform(post("/query/ranked")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"kestrel\", \"limit\": 0}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detail").value("Limit must be between 1 and 1000"));
+
+        mockMvc.perform(post("/query/ranked")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"limit\": 5}"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,265 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.util.RoaringBitmap;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks every operation against a {@link BitSet} holding the same values.
+ */
+class RoaringBitmapTest {
+
+    private static final int CHUNK = 1 << 16;
+
+    @Test
+    void testArrayAndBitmapContainersAtTheBoundary() {
+        // every other value, so the chunk never turns into runs
+        BitSet oracle = new BitSet();
+        for (int i = 0; i <= 4096; i++) {
+            oracle.set(2 * i);
+        }
+        RoaringBitmap bitmap = RoaringBitmap.of(oracle);
+        assertMatches(oracle, bitmap);
+        assertEquals(2 + 8192, bitmap.sizeInBytes(), "4097 values should need a bitmap container");
+
+        bitmap = bitmap.without(0);
+        oracle.clear(0);
+        assertMatches(oracle, bitmap);
+        bitmap = bitmap.without(2);
+        oracle.clear(2);
+        assertMatches(oracle, bitmap);
+        assertEquals(2 + 2 * 4095, bitmap.sizeInBytes(), "4095 values should fit an array container");
+
+        bitmap = bitmap.with(2).with(0);
+        oracle.set(0);
+        oracle.set(2);
+        assertMatches(oracle, bitmap);
+        assertEquals(2 + 8192, bitmap.sizeInBytes());
+    }
+
+    @Test
+    void testAppendCrossesContainers() {
+        BitSet oracle = new BitSet();
+        RoaringBitmap bitmap = RoaringBitmap.empty();
+        for (int value = 0; value < 3 * CHUNK; value += 7) {
+            bitmap = bitmap.append(value);
+            oracle.set(value);
+        }
+        RoaringBitmap before = bitmap;
+        int last = bitmap.last();
+
+        assertMatches(oracle, bitmap);
+        assertSame(bitmap, bitmap.append(last), "Appending the last value again should change nothing");
+        assertThrows(IllegalArgumentException.class, () -> before.append(last - 1));
+        assertThrows(IllegalArgumentException.class, () -> before.append(5));
+
+        bitmap = bitmap.append(5 * CHUNK + 1);
+        assertTrue(bitmap.contains(5 * CHUNK + 1));
+        assertEquals(oracle.cardinality() + 1, bitmap.cardinality());
+        assertEquals(5 * CHUNK + 1, bitmap.last());
+        assertEquals(oracle.cardinality(), before.cardinality(), "Older version should keep its values");
+    }
+
+    @Test
+    void testRunContainers() {
+        BitSet oracle = new BitSet();
+        oracle.set(100, 60_000);
+        oracle.set(CHUNK + 10, CHUNK + 20);
+        oracle.set(CHUNK + 40_000, CHUNK + 50_000);
+        RoaringBitmap bitmap = RoaringBitmap.of(oracle);
+
+        assertMatches(oracle, bitmap);
+        assertEquals(2 * 2 + 4 * 3, bitmap.sizeInBytes(), "Three runs in two chunks");
+        assertFalse(bitmap.contains(99));
+        assertTrue(bitmap.contains(100));
+        assertTrue(bitmap.contains(59_999));
+        assertFalse(bitmap.contains(60_000));
+
+        BitSet holes = new BitSet();
+        holes.set(50, 150);
+        holes.set(30_000);
+        holes.set(CHUNK + 15, CHUNK + 45_000);
+        RoaringBitmap other = RoaringBitmap.of(holes);
+
+        assertMatches(and(oracle, holes), bitmap.and(other));
+        assertMatches(or(oracle, holes), bitmap.or(other));
+        assertMatches(andNot(oracle, holes), bitmap.andNot(other));
+        assertMatches(andNot(holes, oracle), other.andNot(bitmap));
+        assertTrue(bitmap.intersects(other));
+
+        oracle.clear(30_000);
+        oracle.set(60_000);
+        assertMatches(oracle, bitmap.without(30_000).with(60_000));
+    }
+
+    @Test
+    void testAndNotAcrossContainerKinds() {
+        BitSet sparse = new BitSet();
+        BitSet dense = new BitSet();
+        BitSet runs = new BitSet();
+        for (int chunk = 0; chunk < 4; chunk++) {
+            int base = chunk * CHUNK;
+            for (int i = 0; i < 100; i++) {
+                sparse.set(base + i * 613);
+            }
+            for (int i = 0; i < CHUNK; i += 3) {
+                dense.set(base + i);
+            }
+            runs.set(base + 1_000, base + 9_000);
+        }
+
+        BitSet[] sets = {sparse, dense, runs, new BitSet()};
+        for (BitSet a : sets) {
+            for (BitSet b : sets) {
+                RoaringBitmap x = RoaringBitmap.of(a);
+                RoaringBitmap y = RoaringBitmap.of(b);
+                assertMatches(andNot(a, b), x.andNot(y));
+                assertEquals(a.intersects(b), x.intersects(y));
+            }
+        }
+        assertTrue(RoaringBitmap.of(dense).andNot(RoaringBitmap.of(dense)).isEmpty());
+    }
+
+    @Test
+    void testRandomSetOperations() {
+        Random random = new Random(12);
+        for (int round = 0; round < 200; round++) {
+            BitSet a = randomSet(random);
+            BitSet b = randomSet(random);
+            RoaringBitmap x = RoaringBitmap.of(a);
+            RoaringBitmap y = RoaringBitmap.of(b);
+
+            assertMatches(a, x);
+            assertMatches(and(a, b), x.and(y));
+            assertMatches(or(a, b), x.or(y));
+            assertMatches(andNot(a, b), x.andNot(y));
+            assertMatches(andNot(a, b), x.without(b));
+            assertEquals(a.intersects(b), x.intersects(y));
+            assertEquals(a.length() - 1, x.last());
+        }
+    }
+
+    @Test
+    void testStreamFrom() {
+        Random random = new Random(34);
+        BitSet oracle = randomSet(random);
+        oracle.set(3 * CHUNK + 5);
+        RoaringBitmap bitmap = RoaringBitmap.of(oracle);
+
+        int[] starts = {-1, 0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 2 * CHUNK + 12_345, 3 * CHUNK + 5, 3 * CHUNK + 6};
+        for (int from : starts) {
+            int[] expected = oracle.stream().filter(value -> value >= from).toArray();
+            assertArrayEquals(expected, bitmap.stream(from).toArray(), "Values from " + from);
+        }
+        assertArrayEquals(oracle.stream().toArray(), bitmap.stream().toArray());
+    }
+
+    @Test
+    void testWithAndWithoutSingleValues() {
+        Random random = new Random(56);
+        BitSet oracle = new BitSet();
+        RoaringBitmap bitmap = RoaringBitmap.empty();
+        for (int i = 0; i < 50_000; i++) {
+            int value = random.nextInt(3 * CHUNK);
+            if (random.nextInt(3) > 0) {
+                oracle.set(value);
+                bitmap = bitmap.with(value);
+            } else {
+                oracle.clear(value);
+                bitmap = bitmap.without(value);
+            }
+        }
+        assertMatches(oracle, bitmap);
+
+        RoaringBitmap snapshot = bitmap;
+        for (int value = oracle.nextSetBit(0); value >= 0; value = oracle.nextSetBit(value + 1)) {
+            bitmap = bitmap.without(value);
+        }
+        assertTrue(bitmap.isEmpty());
+        assertMatches(oracle, snapshot);
+    }
+
+    @Test
+    void testSerializationKeepsTheLayout() throws IOException {
+        Random random = new Random(78);
+        for (int round = 0; round < 20; round++) {
+            BitSet oracle = randomSet(random);
+            RoaringBitmap bitmap = RoaringBitmap.of(oracle);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bitmap.writeTo(new DataOutputStream(bytes));
+            RoaringBitmap read = RoaringBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+            assertMatches(oracle, read);
+            assertEquals(bitmap.sizeInBytes(), read.sizeInBytes());
+        }
+    }
+
+    /**
+     * Up to four chunks, each empty, sparse, dense or made of runs.
+     */
+    private static BitSet randomSet(Random random) {
+        BitSet bits = new BitSet();
+        for (int chunk = 0; chunk < 4; chunk++) {
+            int base = chunk * CHUNK;
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    int count = random.nextInt(5000);
+                    for (int i = 0; i < count; i++) {
+                        bits.set(base + random.nextInt(CHUNK));
+                    }
+                }
+                case 1 -> {
+                    for (int i = 0; i < CHUNK; i++) {
+                        if (random.nextInt(4) == 0) {
+                            bits.set(base + i);
+                        }
+                    }
+                }
+                case 2 -> {
+                    int count = 1 + random.nextInt(30);
+                    for (int i = 0; i < count; i++) {
+                        int start = random.nextInt(CHUNK - 2000);
+                        bits.set(base + start, base + start + 1 + random.nextInt(2000));
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static void assertMatches(BitSet expected, RoaringBitmap actual) {
+        assertEquals(expected, actual.toBitSet());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+    }
+
+    private static BitSet and(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        result.and(b);
+        return result;
+    }
+
+    private static BitSet or(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        result.or(b);
+        return result;
+    }
+
+    private static BitSet andNot(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        result.andNot(b);
+        return result;
+    }
+}
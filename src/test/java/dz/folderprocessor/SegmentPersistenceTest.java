@@ -0,0 +1,180 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.config.IndexingProps;
+import dz.folderprocessor.config.PathProps;
+import dz.folderprocessor.data.Dictionary;
+import dz.folderprocessor.data.DocumentRegistry;
+import dz.folderprocessor.data.InverseIndex;
+import dz.folderprocessor.data.SuffixIndex;
+import dz.folderprocessor.indexing.IndexPublisher;
+import dz.folderprocessor.persistence.SegmentStore;
+import dz.folderprocessor.persistence.WriteAheadLog;
+import dz.folderprocessor.util.HeapBlockAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed",
+    "path.index=build/test-index"
+})
+class SegmentPersistenceTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private SegmentStore segmentStore;
+
+    @Autowired
+    private PathProps pathProps;
+
+    @Autowired
+    private IndexingProps indexingProps;
+
+    @Autowired
+    private IndexPublisher indexPublisher;
+
+    @Autowired
+    private InverseIndex inverseIndex;
+
+    @Autowired
+    private DocumentRegistry documentRegistry;
+
+    @Autowired
+    private SuffixIndex suffixIndex;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    @Test
+    void testCommittedSegmentRestoresIndexes() throws IOException {
+        Path file = tempDir.resolve("test-input/persisted.txt");
+        Files.write(file, "durable narwhal swims durable seas".getBytes());
+        fileProcessor.processFile(file);
+
+        segmentStore.commit();
+        assertTrue(Files.exists(pathProps.index().resolve("index.seg")));
+        assertEquals(documentRegistry.generation(), segmentStore.status().committedGeneration());
+
+        // load the segment into fresh, empty indexes
+        Dictionary dictionary = new Dictionary();
+        DocumentRegistry registry = new DocumentRegistry();
+        InverseIndex restored = new InverseIndex(dictionary, new HeapBlockAllocator());
+        SuffixIndex restoredSuffixes = new SuffixIndex();
+        SegmentStore store = new SegmentStore(pathProps, indexPublisher, registry,
+                List.of(dictionary, registry, restored, restoredSuffixes));
+        store.load();
+
+        int docId = documentRegistry.getDocumentId(file.toString());
+        assertEquals(docId, registry.getDocumentId(file.toString()));
+        assertTrue(registry.isLive(docId));
+        assertTrue(registry.isUpToDate(file.toString(), Files.getLastModifiedTime(file).toMillis()));
+        assertEquals(inverseIndex.getDocumentsWithPositions("durable"), restored.getDocumentsWithPositions("durable"));
+        assertTrue(restored.getDocumentsWithPositions("narwhal").containsKey(docId));
+        assertTrue(restoredSuffixes.endsWith("whal").contains("narwhal"));
+        assertTrue(suffixIndex.endsWith("whal").contains("narwhal"), "Live index should keep the term in its new FST");
+    }
+
+    @Test
+    void testWriteAheadLogKeepsOperationsSinceCommit() throws IOException {
+        segmentStore.commit();
+        Path file = tempDir.resolve("test-input/logged.txt");
+        Files.write(file, "restless kraken sleeps".getBytes());
+        fileProcessor.processFile(file);
+
+        // replay a copy of the segment and the log, with a torn record at the end of the last log file
+        Path copy = Files.createDirectories(tempDir.resolve("index"));
+        Files.copy(pathProps.index().resolve("index.seg"), copy.resolve("index.seg"));
+        List<Path> logFiles;
+        try (Stream<Path> listing = Files.list(pathProps.index())) {
+            logFiles = listing.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().toList();
+        }
+        for (Path logFile : logFiles) {
+            Files.copy(logFile, copy.resolve(logFile.getFileName()));
+        }
+        Path lastLog = copy.resolve(logFiles.getLast().getFileName());
+        long logBytes = Files.size(lastLog);
+        Files.write(lastLog, new byte[]{0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+
+        PathProps copyProps = new PathProps(pathProps.scan(), pathProps.vocabulary(), copy);
+        WriteAheadLog log = new WriteAheadLog(copyProps, indexingProps);
+        new SegmentStore(copyProps, indexPublisher, new DocumentRegistry(), List.of(log)).load();
+        List<WriteAheadLog.Operation> operations = new ArrayList<>();
+        log.replay(operations::add);
+        log.destroy();
+
+        assertEquals(1, operations.size());
+        WriteAheadLog.Publish publish = assertInstanceOf(WriteAheadLog.Publish.class, operations.getFirst());
+        assertEquals(file.toString(), publish.segment().path());
+        assertEquals(3, publish.segment().tokenCount());
+        assertEquals(logBytes, Files.size(lastLog), "Torn record should be cut off");
+    }
+
+    @Test
+    void testSnapshotDuringIngestionIsConsistent() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Path file = tempDir.resolve("test-input/busy" + i + ".txt");
+            Files.write(file, ("busy beaver " + i + " builds dams").getBytes());
+            files.add(file);
+        }
+        int firstDocId = documentRegistry.maxFileId() + 1;
+        Thread ingestion = new Thread(() -> {
+            for (Path file : files) {
+                try {
+                    fileProcessor.processFile(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        ingestion.start();
+        segmentStore.commit();
+        ingestion.join();
+        assertTrue(segmentStore.status().lastPauseMicros() >= 0);
+
+        Dictionary dictionary = new Dictionary();
+        DocumentRegistry registry = new DocumentRegistry();
+        InverseIndex restored = new InverseIndex(dictionary, new HeapBlockAllocator());
+        new SegmentStore(pathProps, indexPublisher, registry, List.of(dictionary, registry, restored)).load();
+
+        // every restored posting belongs to a restored document and matches the live index
+        Map<Integer, List<Integer>> live = inverseIndex.getDocumentsWithPositions("beaver");
+        Map<Integer, List<Integer>> snapshot = restored.getDocumentsWithPositions("beaver");
+        for (int docId : snapshot.keySet()) {
+            assertNotNull(registry.getDocumentPath(docId));
+            if (docId >= firstDocId) {
+                assertEquals(live.get(docId), snapshot.get(docId));
+            }
+        }
+        for (Path file : files) {
+            int docId = registry.getDocumentId(file.toString());
+            if (docId >= 0) {
+                assertTrue(snapshot.containsKey(docId), "Document in the snapshot should have its postings");
+            }
+        }
+    }
+}
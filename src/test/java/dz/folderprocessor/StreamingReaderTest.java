@@ -0,0 +1,131 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.analysis.AnalysisChain;
+import dz.folderprocessor.indexing.DocumentSegment;
+import dz.folderprocessor.indexing.DocumentTokens;
+import dz.folderprocessor.indexing.ParallelAnalyzer;
+import dz.folderprocessor.reader.TxtReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class StreamingReaderTest {
+
+    @Autowired
+    private TxtReader txtReader;
+
+    @Autowired
+    private AnalysisChain analysisChain;
+
+    @Autowired
+    private ParallelAnalyzer parallelAnalyzer;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamedTextMatchesFullRead() throws IOException {
+        Path file = tempDir.resolve("multibyte.txt");
+        String content = "Привіт світ 😀 hello ёжик ".repeat(5000);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        assertEquals(txtReader.readFile(file), readAll(file, 3), "Tiny buffers must not split characters");
+        assertEquals(content, readAll(file, 8192), "Streamed text should match the file content");
+    }
+
+    @Test
+    void testSingleCharReadsSplitSurrogatePairs() throws IOException {
+        Path file = tempDir.resolve("emoji.txt");
+        String content = "a😀😀b 🦔 ёж".repeat(100);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[1];
+        try (Reader reader = txtReader.openReader(file)) {
+            int read;
+            while ((read = reader.read(buffer, 0, 1)) != -1) {
+                assertEquals(1, read, "A single char read should never come back empty");
+                result.append(buffer[0]);
+            }
+        }
+        assertEquals(content, result.toString(), "Single char reads should return both surrogates");
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path file = tempDir.resolve("empty.txt");
+        Files.createFile(file);
+
+        assertEquals("", readAll(file, 16), "Empty file should produce no text");
+    }
+
+    @Test
+    void testPartsAnalyzeLikeWholeFile() throws IOException {
+        Path file = tempDir.resolve("parts.txt");
+        String content = "Привіт світ hello ёжик\nthe quick brown fox jumps ".repeat(500);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        StringBuilder joined = new StringBuilder();
+        for (Reader part : txtReader.openParts(file, 100)) {
+            try (part) {
+                char[] buffer = new char[64];
+                int read;
+                while ((read = part.read(buffer, 0, buffer.length)) != -1) {
+                    joined.append(buffer, 0, read);
+                }
+            }
+        }
+        assertEquals(content, joined.toString(), "Parts should cover the file without gaps or overlaps");
+
+        DocumentTokens sequential = new DocumentTokens();
+        try (Reader reader = txtReader.openReader(file)) {
+            analysisChain.analyze(reader, sequential::add);
+        }
+        List<Reader> parts = txtReader.openParts(file, 100);
+        assertTrue(parts.size() > 1, "File should be split");
+        DocumentTokens parallel = parallelAnalyzer.analyze(parts);
+
+        DocumentSegment expected = sequential.toSegment(file.toString(), 0);
+        DocumentSegment actual = parallel.toSegment(file.toString(), 0);
+        assertEquals(expected.tokenCount(), actual.tokenCount());
+        assertEquals(expected.termCount(), actual.termCount());
+        for (int ord = 0; ord < expected.termCount(); ord++) {
+            assertEquals(expected.term(ord), actual.term(ord));
+            assertArrayEquals(expected.positions(ord), actual.positions(ord), "Positions of " + expected.term(ord));
+        }
+        assertEquals(expected.bigramCount(), actual.bigramCount());
+        for (int ord = 0; ord < expected.bigramCount(); ord++) {
+            assertEquals(expected.bigram(ord), actual.bigram(ord));
+            assertArrayEquals(expected.bigramPositions(ord), actual.bigramPositions(ord),
+                    "Positions of " + expected.bigram(ord));
+        }
+    }
+
+    private String readAll(Path file, int bufferSize) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        try (Reader reader = txtReader.openReader(file)) {
+            int read;
+            while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+                result.append(buffer, 0, read);
+            }
+        }
+        return result.toString();
+    }
+}
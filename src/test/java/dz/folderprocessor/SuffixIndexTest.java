@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 
+import java.io.IOException;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -137,4 +138,20 @@ class SuffixIndexTest {
         System.out.println("=== Empty Suffix Results ===");
         System.out.println("Found terms: " + results);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRebuildWithoutPersistence() throws IOException {
+        // no path.index here, so no segment commit ever builds the FST
+        suffixIndex.handleTermRead(new TermReadEvent(this, "gliding", "test5.txt", 5, 0));
+
+        assertTrue(suffixIndex.rebuild(1), "Buffered terms should be folded into a new FST");
+        assertEquals(0, suffixIndex.stats().bufferedTerms());
+        assertTrue(suffixIndex.stats().fstBytes() > 0);
+        assertTrue(suffixIndex.endsWith("ding").contains("gliding"));
+        assertTrue(suffixIndex.endsWith("ing").contains("programming"));
+
+        suffixIndex.removeTerm(-1, "gliding");
+        assertFalse(suffixIndex.endsWith("ding").contains("gliding"), "Removed terms should stay hidden in the FST");
+        assertFalse(suffixIndex.rebuild(1), "Nothing should be left to fold in");
+    }
+}
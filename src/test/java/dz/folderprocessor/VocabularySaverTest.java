@@ -0,0 +1,99 @@
+package dz.folderprocessor;
+
+import dz.folderprocessor.config.PathProps;
+import dz.folderprocessor.data.Dictionary;
+import dz.folderprocessor.scheduled.VocabularySaver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "path.scan=test-input",
+    "path.vocabulary=test-processed"
+})
+class VocabularySaverTest {
+
+    @Autowired
+    private FileProcessor fileProcessor;
+
+    @Autowired
+    private VocabularySaver vocabularySaver;
+
+    @Autowired
+    private Dictionary dictionary;
+
+    @Autowired
+    private PathProps pathProps;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("test-input"));
+    }
+
+    @Test
+    void testSavedFilesReproduceFrequencies() throws IOException {
+        Path first = tempDir.resolve("test-input/lexicon1.txt");
+        Files.write(first, "marmoset marmoset tapir".getBytes());
+        fileProcessor.processFile(first);
+        vocabularySaver.saveVocabularyToDisk();
+
+        Path second = tempDir.resolve("test-input/lexicon2.txt");
+        Files.write(second, "tapir okapi".getBytes());
+        fileProcessor.processFile(second);
+        vocabularySaver.saveVocabularyToDisk();
+
+        Map<String, Long> saved = readVocabulary();
+        for (String term : List.of("marmoset", "tapir", "okapi")) {
+            assertEquals(dictionary.frequency(dictionary.termId(term)), saved.get(term), term);
+        }
+    }
+
+    @Test
+    void testUnchangedVocabularyLeavesFilesAlone() throws IOException {
+        vocabularySaver.saveVocabularyToDisk();
+        Path file = pathProps.vocabulary().resolve("vocabulary.txt");
+        Path log = pathProps.vocabulary().resolve("vocabulary.log");
+        long fileModified = Files.getLastModifiedTime(file).toMillis();
+        long logBytes = Files.exists(log) ? Files.size(log) : 0;
+
+        vocabularySaver.saveVocabularyToDisk();
+
+        assertEquals(fileModified, Files.getLastModifiedTime(file).toMillis());
+        assertEquals(logBytes, Files.exists(log) ? Files.size(log) : 0);
+    }
+
+    /**
+     * Applies the logged deltas on top of the sorted file.
+     */
+    private Map<String, Long> readVocabulary() throws IOException {
+        Map<String, Long> frequencies = new HashMap<>();
+        for (String line : Files.readAllLines(pathProps.vocabulary().resolve("vocabulary.txt"))) {
+            String[] fields = line.split("\t");
+            frequencies.put(fields[0], Long.parseLong(fields[1]));
+        }
+        Path log = pathProps.vocabulary().resolve("vocabulary.log");
+        if (Files.exists(log)) {
+            for (String line : Files.readAllLines(log)) {
+                String[] fields = line.split("\t");
+                frequencies.merge(fields[0], Long.parseLong(fields[1]), Long::sum);
+            }
+        }
+        return frequencies;
+    }
+}